@@ -0,0 +1,991 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
+
+// Works out stats from the score history kept on this computer (or copied from several kiosks):
+// rounds played and won, attempts (mean, percentiles, and how many rounds took 1, 2, 3... tries),
+// round time percentiles and how many cups were right per submit, grouped by day, difficulty
+// and kiosk. It reads:
+//   rounds.log      (RoundLog) every round, won or not, with the correct count of every submit
+//   scores.journal  (ScoreJournal) won rounds only, without the correct counts of earlier submits
+//   *.cupa          rounds this tool exported before (see below)
+// Each log or journal is one kiosk, named after its folder (or name it with kiosk=path).
+//
+// Files are memory mapped and read in 32 MB chunks on every core. A chunk finds the first whole
+// record in it, reads every record that starts inside it and adds up its own stats; then the
+// chunks' stats are added together. Memory use depends on the number of groups and threads,
+// never on the number of rounds.
+//
+// --csv writes the stats table as CSV. --export writes every round to a compact columnar file:
+//   header: magic "CUPA" (4 bytes), version (4), kiosk count (varint), each kiosk name (varint length + UTF-8)
+//   block:  magic "CUPB" (4), rows (4), body length (4), CRC32C of the body (4), body
+//   body:   one column after another, each a varint byte length and then the column's values:
+//           start time (ms since 1970, as the difference from the row before, zigzag varint),
+//           kiosk, cups, shuffles, reveal ms, seed (8 bytes), outcome (1 byte), round time ms,
+//           attempts, known correct counts, and then every row's known correct counts, in order
+// Numbers are big-endian and everything not marked is a varint, as in the round log.
+//
+// Run with: java Analytics [--by day,difficulty,kiosk] [--csv out.csv] [--export out.cupa]
+//                          [--threads N] [kiosk=]file...
+public class Analytics {
+
+    public static final int COLUMNS_MAGIC = 0x43555041; // "CUPA"
+    public static final int BLOCK_MAGIC = 0x43555042;   // "CUPB"
+    public static final int VERSION = 1;
+    private static final int BLOCK_HEADER = 16;
+    private static final int COLUMNS = 11;
+
+    // How a round ended
+    public static final int WON = 0;
+    public static final int RESET = 1;
+    public static final int QUIT = 2;
+    private static final String[] OUTCOMES = {"won", "reset", "quit"};
+
+    // What the stats can be grouped by
+    public static final int BY_DAY = 1;
+    public static final int BY_DIFFICULTY = 2;
+    public static final int BY_KIOSK = 4;
+
+    // Bytes of file per chunk, and how far past its end a chunk maps to finish its last record
+    private static final long CHUNK_BYTES = 32L << 20;
+    private static final long SLACK_BYTES = 1L << 20;
+
+    // Smallest and largest round log rounds (as RoundReplay), anything else is damage
+    private static final int MIN_ROUND = 1 + 8 + 3 + 1 + 1;
+    private static final int MAX_ROUND = 64 * 1024 * 1024;
+
+    // Kinds of input file
+    private static final int ROUND_LOG = 0;
+    private static final int JOURNAL = 1;
+    private static final int EXPORT = 2;
+
+    // Attempt counts that get their own column in the CSV (more go in the last one)
+    private static final int ATTEMPT_COLUMNS = 9;
+
+    // One round (readers reuse one for every round, so copy what you need to keep)
+    public static final class Round {
+        public long startMillis;    // When the round started (ms since 1970)
+        public int kiosk;           // Which kiosk played it (index into the kiosk names)
+        public int cups;            // Difficulty it was played at
+        public int shuffles;
+        public int revealMillis;
+        public long seed;
+        public int outcome;         // WON, RESET or QUIT
+        public long elapsedMillis;  // Round time (for rounds not won, how long until they ended)
+        public int attempts;        // Submits
+        public int[] correct = new int[16]; // Cups right on each submit whose count is known
+        public int correctCount;
+
+        void clearCorrect() {
+            correctCount = 0;
+        }
+
+        void addCorrect(int value) {
+            if (correctCount == correct.length) correct = Arrays.copyOf(correct, correct.length * 2);
+            correct[correctCount++] = value;
+        }
+    }
+
+    // The stats of one group of rounds
+    public static final class Group {
+        public long rounds;
+        public final long[] outcomes = new long[OUTCOMES.length];
+        public long attemptSum;                                   // Over won rounds
+        public final LogHistogram attempts = new LogHistogram();  // Won rounds
+        public final LogHistogram timeMillis = new LogHistogram(); // Won rounds
+        public long submits;          // Submits whose correct count is known
+        public long correctSum;
+        public long firstSubmits;     // Rounds whose first submit's correct count is known
+        public long firstCorrectSum;
+
+        void add(Round round) {
+            rounds++;
+            outcomes[round.outcome]++;
+            if (round.outcome == WON) {
+                attemptSum += round.attempts;
+                attempts.record(round.attempts);
+                timeMillis.record(round.elapsedMillis);
+            }
+            for (int i = 0; i < round.correctCount; i++) {
+                correctSum += round.correct[i];
+            }
+            submits += round.correctCount;
+            // Only rounds with every submit known say for sure which count came first
+            if (round.correctCount > 0 && round.correctCount == round.attempts) {
+                firstSubmits++;
+                firstCorrectSum += round.correct[0];
+            }
+        }
+
+        void add(Group other) {
+            rounds += other.rounds;
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] += other.outcomes[i];
+            }
+            attemptSum += other.attemptSum;
+            attempts.add(other.attempts);
+            timeMillis.add(other.timeMillis);
+            submits += other.submits;
+            correctSum += other.correctSum;
+            firstSubmits += other.firstSubmits;
+            firstCorrectSum += other.firstCorrectSum;
+        }
+
+        public double meanAttempts() {
+            return outcomes[WON] == 0 ? 0 : (double) attemptSum / outcomes[WON];
+        }
+
+        public double meanCorrect() {
+            return submits == 0 ? 0 : (double) correctSum / submits;
+        }
+
+        public double meanFirstCorrect() {
+            return firstSubmits == 0 ? 0 : (double) firstCorrectSum / firstSubmits;
+        }
+    }
+
+    // An input file
+    private static final class Source {
+        final Path path;
+        final int kind;
+        final int kiosk;      // Kiosk of every round in a log or journal
+        final int[] kiosks;   // Kiosk numbers of an export's own kiosk list (null for logs and journals)
+        final long dataStart; // Where records start
+
+        Source(Path path, int kind, int kiosk, int[] kiosks, long dataStart) {
+            this.path = path;
+            this.kind = kind;
+            this.kiosk = kiosk;
+            this.kiosks = kiosks;
+            this.dataStart = dataStart;
+        }
+    }
+
+    // A piece of a file: the records that start in [from, to)
+    private static final class Chunk {
+        final Source source;
+        final long from;
+        final long to;
+
+        Chunk(Source source, long from, long to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    // What reading one chunk came to
+    private static final class ChunkResult {
+        final Map<Long, Group> groups = new HashMap<>();
+        long rounds;
+        long damagedBytes;
+        byte[] block; // The chunk's rounds as an export block (null unless exporting)
+    }
+
+    private final int groupBy;
+    private final boolean export;
+
+    // Kiosk names, and the difficulties seen so far (packed settings -> number, and back)
+    private final List<String> kiosks = new ArrayList<>();
+    private final Map<Long, Integer> difficultyNumbers = new HashMap<>();
+    private final List<Long> difficultySettings = new ArrayList<>();
+
+    private final ZoneRules zone = ZoneId.systemDefault().getRules();
+
+    // groupBy is any of BY_DAY, BY_DIFFICULTY and BY_KIOSK added together;
+    // export makes every chunk keep its rounds as a block for --export
+    public Analytics(int groupBy, boolean export) {
+        this.groupBy = groupBy;
+        this.export = export;
+    }
+
+    // Read every file on the pool; exported blocks go to exportTo (may be null) in file order
+    // totals gets the rounds read and the damaged bytes skipped
+    // Returns the stats of every group, by group key (see key())
+    public Map<Long, Group> run(ForkJoinPool pool, List<String> files, long[] totals, OutputStream exportTo)
+            throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        for (String file : files) {
+            split(openSource(file), chunks);
+        }
+        if (exportTo != null) writeExportHeader(exportTo);
+
+        // Keep a few chunks per thread on the go and add their results up in order
+        // (so exported blocks come out in file order and finished chunks don't pile up)
+        Map<Long, Group> groups = new HashMap<>();
+        ArrayDeque<ForkJoinTask<ChunkResult>> running = new ArrayDeque<>();
+        int next = 0;
+        while (next < chunks.size() || !running.isEmpty()) {
+            while (next < chunks.size() && running.size() < pool.getParallelism() * 2) {
+                Chunk chunk = chunks.get(next++);
+                running.add(pool.submit(() -> read(chunk)));
+            }
+            ChunkResult result = running.poll().join();
+            for (Map.Entry<Long, Group> entry : result.groups.entrySet()) {
+                Group group = groups.get(entry.getKey());
+                if (group == null) {
+                    groups.put(entry.getKey(), entry.getValue());
+                } else {
+                    group.add(entry.getValue());
+                }
+            }
+            totals[0] += result.rounds;
+            totals[1] += result.damagedBytes;
+            if (exportTo != null && result.block != null) exportTo.write(result.block);
+        }
+        return groups;
+    }
+
+    // Open an input file ("kiosk=path" names its kiosk) and work out what kind it is
+    private Source openSource(String arg) throws IOException {
+        int equals = arg.indexOf('=');
+        Path path = Paths.get(equals > 0 ? arg.substring(equals + 1) : arg);
+        String kiosk = equals > 0 ? arg.substring(0, equals) : kioskName(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            int magic = header.position() >= 4 ? header.getInt(0) : 0;
+            if (magic == RoundLog.FILE_MAGIC) {
+                return new Source(path, ROUND_LOG, kioskNumber(kiosk), null, RoundLog.HEADER_SIZE);
+            }
+            if (magic == ScoreJournal.FILE_MAGIC) {
+                return new Source(path, JOURNAL, kioskNumber(kiosk), null, ScoreJournal.HEADER_SIZE);
+            }
+            if (magic == COLUMNS_MAGIC) {
+                // Exports bring their own kiosk names
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), SLACK_BYTES));
+                Cursor in = new Cursor(map, 8, map.limit());
+                int[] numbers = new int[(int) in.varLong()];
+                for (int i = 0; i < numbers.length; i++) {
+                    int length = (int) in.varLong();
+                    if (in.bad || in.p + length > in.end) throw new IOException("Damaged export header: " + path);
+                    byte[] name = new byte[length];
+                    map.get(in.p, name);
+                    in.p += length;
+                    numbers[i] = kioskNumber(new String(name, StandardCharsets.UTF_8));
+                }
+                if (in.bad) throw new IOException("Damaged export header: " + path);
+                return new Source(path, EXPORT, -1, numbers, in.p);
+            }
+        }
+        throw new IOException("Not a round log, score journal or export: " + path);
+    }
+
+    // A kiosk's name from its file: the folder the file is in
+    private static String kioskName(Path path) {
+        Path folder = path.toAbsolutePath().normalize().getParent();
+        return folder == null || folder.getFileName() == null ? "local" : folder.getFileName().toString();
+    }
+
+    private int kioskNumber(String name) {
+        int number = kiosks.indexOf(name);
+        if (number >= 0) return number;
+        kiosks.add(name);
+        return kiosks.size() - 1;
+    }
+
+    // Cut a file into chunks (exports are cut between blocks, found by hopping over their headers)
+    private static void split(Source source, List<Chunk> chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (source.kind != EXPORT) {
+                for (long from = source.dataStart; from < size; from += CHUNK_BYTES) {
+                    chunks.add(new Chunk(source, from, Math.min(size, from + CHUNK_BYTES)));
+                }
+                return;
+            }
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+            long chunkStart = source.dataStart;
+            long position = chunkStart;
+            while (position + BLOCK_HEADER <= size) {
+                header.clear();
+                channel.read(header, position);
+                if (header.getInt(0) != BLOCK_MAGIC) break; // Damaged from here on: the reader counts it
+                long next = position + BLOCK_HEADER + (header.getInt(8) & 0xFFFFFFFFL);
+                if (next > size) break;
+                position = next;
+                if (position - chunkStart >= CHUNK_BYTES) {
+                    chunks.add(new Chunk(source, chunkStart, position));
+                    chunkStart = position;
+                }
+            }
+            if (size > chunkStart) chunks.add(new Chunk(source, chunkStart, size));
+        }
+    }
+
+    // Read one chunk (on a pool thread)
+    private ChunkResult read(Chunk chunk) {
+        ChunkResult result = new ChunkResult();
+        Reader reader = new Reader(result);
+        try (FileChannel channel = FileChannel.open(chunk.source.path, StandardOpenOption.READ)) {
+            if (chunk.source.kind == ROUND_LOG) {
+                reader.readRoundLog(channel, chunk);
+            } else if (chunk.source.kind == JOURNAL) {
+                reader.readJournal(channel, chunk);
+            } else {
+                reader.readExport(channel, chunk);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (export) result.block = reader.columns.finish();
+        return result;
+    }
+
+    // Group key of a round: its day, kiosk and difficulty number, each 0 if not grouped by
+    private long key(long day, int kiosk, int difficulty) {
+        long key = 0;
+        if ((groupBy & BY_DAY) != 0) key |= (day + (1L << 23)) << 40;
+        if ((groupBy & BY_KIOSK) != 0) key |= (long) kiosk << 24;
+        if ((groupBy & BY_DIFFICULTY) != 0) key |= difficulty;
+        return key;
+    }
+
+    static long dayOfKey(long key) {
+        return (key >>> 40) - (1L << 23);
+    }
+
+    static int kioskOfKey(long key) {
+        return (int) ((key >>> 24) & 0xFFFF);
+    }
+
+    static int difficultyOfKey(long key) {
+        return (int) (key & 0xFFFFFF);
+    }
+
+    // The number of a difficulty (the same on every thread, in the order they're first seen)
+    private synchronized int difficultyNumber(int cups, int shuffles, int reveal) {
+        long settings = ((long) cups << 44) | ((long) shuffles << 24) | reveal;
+        Integer number = difficultyNumbers.get(settings);
+        if (number == null) {
+            number = difficultySettings.size();
+            difficultyNumbers.put(settings, number);
+            difficultySettings.add(settings);
+        }
+        return number;
+    }
+
+    // Name of a difficulty number: the preset's name, or its id for custom ones
+    synchronized String difficultyName(int number) {
+        long settings = difficultySettings.get(number);
+        int cups = (int) (settings >>> 44);
+        int shuffles = (int) ((settings >>> 24) & 0xFFFFF);
+        int reveal = (int) (settings & 0xFFFFFF);
+        for (Difficulty preset : Difficulty.PRESETS) {
+            if (preset.sameSettings(cups, shuffles, reveal)) return preset.getName();
+        }
+        return cups + "c-" + shuffles + "s-" + reveal + "ms";
+    }
+
+    // Sort key of a difficulty number: by cups, then shuffles, then reveal time
+    synchronized long difficultyOrder(int number) {
+        return difficultySettings.get(number);
+    }
+
+    String kioskName(int number) {
+        return kiosks.get(number);
+    }
+
+    // Put the kiosk names at the start of an export
+    private void writeExportHeader(OutputStream out) throws IOException {
+        Bytes header = new Bytes();
+        header.putInt(COLUMNS_MAGIC);
+        header.putInt(VERSION);
+        header.putVarLong(kiosks.size());
+        for (String kiosk : kiosks) {
+            byte[] name = kiosk.getBytes(StandardCharsets.UTF_8);
+            header.putVarLong(name.length);
+            header.put(name, 0, name.length);
+        }
+        out.write(header.data, 0, header.size);
+    }
+
+    // Reads the records of one chunk and adds them to its result (one per chunk, one thread each)
+    private final class Reader {
+        final ChunkResult result;
+        final Round round = new Round();
+        final CRC32C crc = new CRC32C();
+        final Columns columns = export ? new Columns() : null;
+
+        // The last group used (rounds next to each other are usually in the same one)
+        long lastKey = -1;
+        Group lastGroup;
+        long lastSettings = -1;
+        int lastDifficulty;
+
+        // The local time offset for times in [offsetFrom, offsetTo)
+        long offsetFrom = 1;
+        long offsetTo = 0;
+        long offsetMillis;
+
+        Reader(ChunkResult result) {
+            this.result = result;
+        }
+
+        // Count a round in its group (and keep it for the export)
+        void accept(Round round) {
+            result.rounds++;
+            long settings = ((long) round.cups << 44) | ((long) round.shuffles << 24) | round.revealMillis;
+            if (settings != lastSettings) {
+                lastSettings = settings;
+                lastDifficulty = difficultyNumber(round.cups, round.shuffles, round.revealMillis);
+            }
+            long key = key(day(round.startMillis), round.kiosk, lastDifficulty);
+            if (key != lastKey) {
+                lastKey = key;
+                lastGroup = result.groups.get(key);
+                if (lastGroup == null) {
+                    lastGroup = new Group();
+                    result.groups.put(key, lastGroup);
+                }
+            }
+            lastGroup.add(round);
+            if (columns != null) columns.add(round);
+        }
+
+        // The local day a time falls on (days since 1970), looking the time zone up once an hour
+        long day(long millis) {
+            if (millis < offsetFrom || millis >= offsetTo) {
+                offsetFrom = Math.floorDiv(millis, 3_600_000L) * 3_600_000L;
+                offsetTo = offsetFrom + 3_600_000L;
+                offsetMillis = zone.getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds() * 1000L;
+            }
+            return Math.floorDiv(millis + offsetMillis, 86_400_000L);
+        }
+
+        // Rounds from a round log: varint length, events, CRC32C
+        void readRoundLog(FileChannel channel, Chunk chunk) throws IOException {
+            long size = channel.size();
+            long base = chunk.from;
+            MappedByteBuffer map = map(channel, base, Math.min(size, chunk.to + SLACK_BYTES));
+            boolean synced = chunk.from == chunk.source.dataStart; // Later chunks start mid-round
+            Cursor in = new Cursor(map, 0, map.limit());
+            int pos = 0;
+            while (base + pos < chunk.to) {
+                in.reset(pos, map.limit());
+                long length = in.varLong();
+                int body = in.p;
+                if (in.bad || length < MIN_ROUND || length > MAX_ROUND || body >= map.limit()
+                        || map.get(body) != RoundLog.START) {
+                    pos++;
+                    if (synced) result.damagedBytes++;
+                    continue;
+                }
+                long roundEnd = body + length;
+                if (roundEnd + 4 > map.limit()) {
+                    if (base + roundEnd + 4 <= size) {
+                        // The round runs past the mapped part: map again from where it starts
+                        base += pos;
+                        map = map(channel, base, Math.min(size, base + Math.max(roundEnd + 4 - pos,
+                            CHUNK_BYTES + SLACK_BYTES)));
+                        in = new Cursor(map, 0, map.limit());
+                        pos = 0;
+                        continue;
+                    }
+                    pos++;
+                    if (synced) result.damagedBytes++;
+                    continue;
+                }
+                int end = (int) roundEnd;
+                crc.reset();
+                ByteBuffer covered = map.duplicate();
+                covered.limit(end).position(body);
+                crc.update(covered);
+                if ((int) crc.getValue() != map.getInt(end) || !parseRound(in, body, end, chunk.source.kiosk)) {
+                    pos++;
+                    if (synced) result.damagedBytes++;
+                    continue;
+                }
+                synced = true;
+                accept(round);
+                pos = end + 4;
+            }
+        }
+
+        // One round log round in [p, end) into `round`, returns false if it doesn't make sense
+        boolean parseRound(Cursor in, int p, int end, int kiosk) {
+            ByteBuffer map = in.buffer;
+            round.seed = map.getLong(p + 1);
+            in.reset(p + 9, end);
+            round.cups = (int) in.varLong();
+            round.shuffles = (int) in.varLong();
+            round.revealMillis = (int) in.varLong();
+            if (in.bad || in.p >= end) return false;
+            in.p += 1 + (map.get(in.p) & 0xFF); // Algorithm name, not needed for stats
+            round.startMillis = in.varLong();
+            round.kiosk = kiosk;
+            round.attempts = 0;
+            round.clearCorrect();
+            long micros = 0;
+            while (in.p < end && !in.bad) {
+                byte tag = map.get(in.p++);
+                micros += in.varLong();
+                long value = tag == RoundLog.ADD || tag == RoundLog.SUBMIT || tag == RoundLog.WIN ? in.varLong() : -1;
+                if (in.bad) return false;
+                switch (tag) {
+                    case RoundLog.SUBMIT:
+                        round.attempts++;
+                        round.addCorrect((int) value);
+                        break;
+                    case RoundLog.WIN:
+                        round.outcome = WON;
+                        round.elapsedMillis = value;
+                        return in.p == end;
+                    case RoundLog.RESET:
+                    case RoundLog.QUIT:
+                        round.outcome = tag == RoundLog.RESET ? RESET : QUIT;
+                        round.elapsedMillis = micros / 1000;
+                        return in.p == end;
+                    default:
+                        if (tag < RoundLog.SHUFFLE || tag > RoundLog.RESUME) return false;
+                }
+            }
+            return false; // No end event
+        }
+
+        // Won rounds from a score journal: "CUPR", payload length, payload, CRC32C
+        void readJournal(FileChannel channel, Chunk chunk) throws IOException {
+            MappedByteBuffer map = map(channel, chunk.from, Math.min(channel.size(), chunk.to + SLACK_BYTES));
+            ScoreJournal.Entry entry = new ScoreJournal.Entry();
+            boolean synced = chunk.from == chunk.source.dataStart;
+            int limit = map.limit();
+            int pos = 0;
+            while (chunk.from + pos < chunk.to && pos + ScoreJournal.RECORD_OVERHEAD <= limit) {
+                int length = ScoreJournal.readRecord(map, pos, entry, crc);
+                if (length < 0) {
+                    pos++;
+                    if (synced) result.damagedBytes++;
+                    continue;
+                }
+                synced = true;
+                round.startMillis = entry.timestamp - entry.elapsedMillis;
+                round.kiosk = chunk.source.kiosk;
+                round.cups = entry.cupCount;
+                round.shuffles = entry.shuffleCycles;
+                round.revealMillis = entry.revealMillis;
+                round.seed = entry.seed;
+                round.outcome = WON;
+                round.elapsedMillis = entry.elapsedMillis;
+                round.attempts = entry.attempts;
+                round.clearCorrect();
+                // The journal keeps only the winning submit's count, which is every submit's if there was one
+                if (entry.attempts == 1) round.addCorrect(entry.correct);
+                accept(round);
+                pos += ScoreJournal.RECORD_OVERHEAD + length;
+            }
+            if (chunk.to == channel.size() && chunk.from + pos < chunk.to) {
+                result.damagedBytes += chunk.to - chunk.from - pos; // Too short to be a record
+            }
+        }
+
+        // Rounds from blocks of an earlier export
+        void readExport(FileChannel channel, Chunk chunk) throws IOException {
+            MappedByteBuffer map = map(channel, chunk.from, chunk.to);
+            int limit = map.limit();
+            int pos = 0;
+            Cursor[] column = new Cursor[COLUMNS];
+            while (pos + BLOCK_HEADER <= limit) {
+                long length = map.getInt(pos + 8) & 0xFFFFFFFFL;
+                if (map.getInt(pos) != BLOCK_MAGIC || pos + BLOCK_HEADER + length > limit) break;
+                int body = pos + BLOCK_HEADER;
+                int end = (int) (body + length);
+                crc.reset();
+                ByteBuffer covered = map.duplicate();
+                covered.limit(end).position(body);
+                crc.update(covered);
+                if ((int) crc.getValue() != map.getInt(pos + 12) || !readBlock(map, body, end, map.getInt(pos + 4),
+                        column, chunk.source.kiosks)) {
+                    result.damagedBytes += BLOCK_HEADER + length;
+                }
+                pos = end;
+            }
+            result.damagedBytes += limit - pos;
+        }
+
+        // The rows of one export block, returns false if the block doesn't make sense
+        boolean readBlock(ByteBuffer map, int p, int end, int rows, Cursor[] column, int[] kiosks) {
+            Cursor in = new Cursor(map, p, end);
+            for (int i = 0; i < COLUMNS; i++) {
+                long length = in.varLong();
+                if (in.bad || in.p + length > end) return false;
+                column[i] = new Cursor(map, in.p, (int) (in.p + length));
+                in.p += (int) length;
+            }
+            Cursor seeds = column[5];
+            Cursor outcomes = column[6];
+            long start = 0;
+            for (int row = 0; row < rows; row++) {
+                start += Cursor.unzigzag(column[0].varLong());
+                round.startMillis = start;
+                int kiosk = (int) column[1].varLong();
+                round.cups = (int) column[2].varLong();
+                round.shuffles = (int) column[3].varLong();
+                round.revealMillis = (int) column[4].varLong();
+                if (seeds.p + 8 > seeds.end || outcomes.p >= outcomes.end || kiosk >= kiosks.length) return false;
+                round.seed = map.getLong(seeds.p);
+                seeds.p += 8;
+                round.outcome = map.get(outcomes.p++);
+                round.elapsedMillis = column[7].varLong();
+                round.attempts = (int) column[8].varLong();
+                int known = (int) column[9].varLong();
+                round.kiosk = kiosks[kiosk];
+                round.clearCorrect();
+                for (int i = 0; i < known; i++) {
+                    round.addCorrect((int) column[10].varLong());
+                }
+                if (round.outcome < 0 || round.outcome >= OUTCOMES.length) return false;
+                for (Cursor c : column) {
+                    if (c.bad) return false;
+                }
+                accept(round);
+            }
+            return true;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long from, long to) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    // Rows collected column by column, then packed into one export block
+    private static final class Columns {
+        final Bytes[] column = new Bytes[COLUMNS];
+        int rows;
+        long lastStart;
+
+        Columns() {
+            for (int i = 0; i < COLUMNS; i++) {
+                column[i] = new Bytes();
+            }
+        }
+
+        void add(Round round) {
+            column[0].putVarLong(Cursor.zigzag(round.startMillis - lastStart));
+            lastStart = round.startMillis;
+            column[1].putVarLong(round.kiosk);
+            column[2].putVarLong(round.cups);
+            column[3].putVarLong(round.shuffles);
+            column[4].putVarLong(round.revealMillis);
+            column[5].putLong(round.seed);
+            column[6].put((byte) round.outcome);
+            column[7].putVarLong(round.elapsedMillis);
+            column[8].putVarLong(round.attempts);
+            column[9].putVarLong(round.correctCount);
+            for (int i = 0; i < round.correctCount; i++) {
+                column[10].putVarLong(round.correct[i]);
+            }
+            rows++;
+        }
+
+        // The block, or null if there were no rows
+        byte[] finish() {
+            if (rows == 0) return null;
+            Bytes body = new Bytes();
+            for (Bytes c : column) {
+                body.putVarLong(c.size);
+                body.put(c.data, 0, c.size);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(body.data, 0, body.size);
+            Bytes block = new Bytes();
+            block.putInt(BLOCK_MAGIC);
+            block.putInt(rows);
+            block.putInt(body.size);
+            block.putInt((int) crc.getValue());
+            block.put(body.data, 0, body.size);
+            return Arrays.copyOf(block.data, block.size);
+        }
+    }
+
+    // A growing byte array that numbers can be written into
+    private static final class Bytes {
+        byte[] data = new byte[1024];
+        int size;
+
+        void put(byte b) {
+            if (size == data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = b;
+        }
+
+        void put(byte[] bytes, int from, int length) {
+            if (size + length > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            System.arraycopy(bytes, from, data, size, length);
+            size += length;
+        }
+
+        void putInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                put((byte) (value >>> shift));
+            }
+        }
+
+        void putLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                put((byte) (value >>> shift));
+            }
+        }
+
+        void putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+    }
+
+    // Reads varints from part of a buffer; reading past the end sets `bad` instead of throwing
+    private static final class Cursor {
+        final ByteBuffer buffer;
+        int p;
+        int end;
+        boolean bad;
+
+        Cursor(ByteBuffer buffer, int p, int end) {
+            this.buffer = buffer;
+            this.p = p;
+            this.end = end;
+        }
+
+        void reset(int p, int end) {
+            this.p = p;
+            this.end = end;
+            bad = false;
+        }
+
+        long varLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (p >= end) break;
+                byte b = buffer.get(p++);
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return result;
+            }
+            bad = true;
+            return 0;
+        }
+
+        // Small differences either way become small numbers: 0, -1, 1, -2, 2... -> 0, 1, 2, 3, 4...
+        static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    // The stats table as CSV, one row per group
+    void writeCsv(List<Long> keys, Map<Long, Group> groups, Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            StringBuilder header = new StringBuilder("day,difficulty,kiosk,rounds,won,reset,quit,mean_attempts,"
+                + "attempts_p50,attempts_p90,attempts_p99,time_p50_ms,time_p90_ms,time_p99_ms,"
+                + "submits,mean_correct,mean_first_correct");
+            for (int i = 1; i <= ATTEMPT_COLUMNS; i++) {
+                header.append(",attempts_").append(i);
+            }
+            header.append(",attempts_").append(ATTEMPT_COLUMNS + 1).append("_plus");
+            out.println(header);
+            for (long key : keys) {
+                Group g = groups.get(key);
+                StringBuilder row = new StringBuilder();
+                row.append((groupBy & BY_DAY) != 0 ? LocalDate.ofEpochDay(dayOfKey(key)).toString() : "").append(',');
+                row.append((groupBy & BY_DIFFICULTY) != 0 ? csvText(difficultyName(difficultyOfKey(key))) : "")
+                    .append(',');
+                row.append((groupBy & BY_KIOSK) != 0 ? csvText(kioskName(kioskOfKey(key))) : "").append(',');
+                row.append(g.rounds).append(',').append(g.outcomes[WON]).append(',').append(g.outcomes[RESET])
+                    .append(',').append(g.outcomes[QUIT]).append(',');
+                row.append(String.format(Locale.ROOT, "%.3f", g.meanAttempts())).append(',');
+                row.append(g.attempts.percentile(50)).append(',').append(g.attempts.percentile(90)).append(',')
+                    .append(g.attempts.percentile(99)).append(',');
+                row.append(g.timeMillis.percentile(50)).append(',').append(g.timeMillis.percentile(90)).append(',')
+                    .append(g.timeMillis.percentile(99)).append(',');
+                row.append(g.submits).append(',');
+                row.append(String.format(Locale.ROOT, "%.3f,%.3f", g.meanCorrect(), g.meanFirstCorrect()));
+                long counted = 0;
+                for (int i = 1; i <= ATTEMPT_COLUMNS; i++) {
+                    long n = g.attempts.countAt(i);
+                    counted += n;
+                    row.append(',').append(n);
+                }
+                row.append(',').append(g.attempts.getCount() - counted);
+                out.println(row);
+            }
+        }
+    }
+
+    // Quote a CSV value if it needs it
+    private static String csvText(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) return text;
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    // Group keys in table order: by day, then difficulty (fewest cups first), then kiosk name
+    List<Long> sortedKeys(Map<Long, Group> groups) {
+        List<Long> keys = new ArrayList<>(groups.keySet());
+        keys.sort((a, b) -> {
+            int c = Long.compare(dayOfKey(a), dayOfKey(b));
+            if (c == 0) c = Long.compare(difficultyOrder(difficultyOfKey(a)), difficultyOrder(difficultyOfKey(b)));
+            if (c == 0) c = kioskName(kioskOfKey(a)).compareTo(kioskName(kioskOfKey(b)));
+            return c;
+        });
+        return keys;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int groupBy = BY_DIFFICULTY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path csv = null;
+        Path exportFile = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--by":
+                    groupBy = 0;
+                    for (String name : value.split(",")) {
+                        groupBy |= byName(name);
+                    }
+                    i++;
+                    break;
+                case "--csv":
+                    csv = Paths.get(value);
+                    i++;
+                    break;
+                case "--export":
+                    exportFile = Paths.get(value);
+                    i++;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    i++;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: java Analytics [--by day,difficulty,kiosk] [--csv out.csv] [--export out.cupa]"
+                + " [--threads N] [kiosk=]file...");
+            System.out.println("Files can be round logs (rounds.log), score journals (scores.journal) or exports.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        Analytics analytics = new Analytics(groupBy, exportFile != null);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long[] totals = new long[2];
+        Map<Long, Group> groups;
+        if (exportFile != null) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(exportFile), 1 << 16)) {
+                groups = analytics.run(pool, files, totals, out);
+            }
+        } else {
+            groups = analytics.run(pool, files, totals, null);
+        }
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        List<Long> keys = analytics.sortedKeys(groups);
+        analytics.printTable(keys, groups);
+        if (csv != null) analytics.writeCsv(keys, groups, csv);
+        System.out.printf(Locale.ROOT, "%n%d rounds from %d files in %.2f s (%.0f rounds/s) on %d threads%n",
+            totals[0], files.size(), seconds, totals[0] / Math.max(seconds, 1e-9), threads);
+        if (totals[1] > 0) System.out.println("Skipped " + totals[1] + " damaged bytes");
+    }
+
+    private static int byName(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "day":
+                return BY_DAY;
+            case "difficulty":
+                return BY_DIFFICULTY;
+            case "kiosk":
+                return BY_KIOSK;
+            case "all":
+            case "none":
+                return 0;
+            default:
+                throw new IllegalArgumentException("Can't group by: " + name);
+        }
+    }
+
+    // Print the stats table, then how many tries won rounds took over all groups
+    private void printTable(List<Long> keys, Map<Long, Group> groups) {
+        StringBuilder format = new StringBuilder();
+        List<Object> titles = new ArrayList<>();
+        if ((groupBy & BY_DAY) != 0) {
+            format.append("%-10s ");
+            titles.add("Day");
+        }
+        if ((groupBy & BY_DIFFICULTY) != 0) {
+            format.append("%-16s ");
+            titles.add("Difficulty");
+        }
+        if ((groupBy & BY_KIOSK) != 0) {
+            format.append("%-12s ");
+            titles.add("Kiosk");
+        }
+        String groupFormat = format.toString();
+        System.out.printf(Locale.ROOT, groupFormat + "%10s %7s %8s %5s %5s %9s %9s %9s %8s %8s%n",
+            concat(titles, "Rounds", "Won", "Attempts", "p50", "p90", "Time p50", "Time p90", "Time p99",
+                "Correct", "1st"));
+        Group all = new Group();
+        for (long key : keys) {
+            Group g = groups.get(key);
+            all.add(g);
+            List<Object> names = new ArrayList<>();
+            if ((groupBy & BY_DAY) != 0) names.add(LocalDate.ofEpochDay(dayOfKey(key)).toString());
+            if ((groupBy & BY_DIFFICULTY) != 0) names.add(difficultyName(difficultyOfKey(key)));
+            if ((groupBy & BY_KIOSK) != 0) names.add(kioskName(kioskOfKey(key)));
+            System.out.printf(Locale.ROOT, groupFormat + "%10d %6.1f%% %8.2f %5d %5d %9s %9s %9s %8.2f %8.2f%n",
+                concat(names, g.rounds, 100.0 * g.outcomes[WON] / Math.max(1, g.rounds), g.meanAttempts(),
+                    g.attempts.percentile(50), g.attempts.percentile(90),
+                    CupMemoryGame.formatTime(g.timeMillis.percentile(50)),
+                    CupMemoryGame.formatTime(g.timeMillis.percentile(90)),
+                    CupMemoryGame.formatTime(g.timeMillis.percentile(99)), g.meanCorrect(), g.meanFirstCorrect()));
+        }
+        long won = all.attempts.getCount();
+        if (won == 0) return;
+        StringBuilder line = new StringBuilder("\nAttempts to win:");
+        long counted = 0;
+        for (int i = 1; i <= ATTEMPT_COLUMNS; i++) {
+            long n = all.attempts.countAt(i);
+            counted += n;
+            line.append(String.format(Locale.ROOT, "  %d: %.1f%%", i, 100.0 * n / won));
+        }
+        line.append(String.format(Locale.ROOT, "  %d+: %.1f%%", ATTEMPT_COLUMNS + 1, 100.0 * (won - counted) / won));
+        System.out.println(line);
+    }
+
+    private static Object[] concat(List<Object> first, Object... rest) {
+        List<Object> all = new ArrayList<>(first);
+        all.addAll(Arrays.asList(rest));
+        return all.toArray();
+    }
+}
@@ -0,0 +1,297 @@
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.util.Arrays;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+// Runs every animation and timed step in the game off one Swing timer (the frame pulse).
+// There are three kinds:
+//   tween:  a value that goes from one number to another over a time (a cup's position or size,
+//           a fade), given to a Step every frame
+//   delay:  something to run once after a time (the end of the reveal)
+//   repeat: something to run every so often (the clock display, flashing stars)
+// While a tween is running the pulse beats at the screen's refresh rate; otherwise it sleeps
+// until the next delay or repeat is due, and with nothing to do it stops.
+//
+// Animations live in a pool of reused slots, so starting, running and cancelling them makes no
+// objects (pass Steps and Runnables kept in fields, not new lambdas, to keep it that way).
+// Each one belongs to a component: once that component has been on screen and isn't any more
+// (its screen was left or its window closed), the animation is dropped without running `done`.
+//
+// Tests can make an Animator with no timer (new Animator(false)) and call pulse() with
+// made-up times to step through animations exactly.
+public class Animator {
+
+    // How a tween's value moves between its two numbers
+    public static final int LINEAR = 0;
+    public static final int SMOOTH = 1; // Speeds up, then slows down as it arrives
+    public static final int PULSE = 2;  // Goes to the second number and back again
+
+    // What kind of animation a slot holds
+    private static final int FREE = 0;
+    private static final int TWEEN = 1;
+    private static final int DELAY = 2;
+    private static final int REPEAT = 3;
+
+    // Frame rate to use when the screen doesn't say what its refresh rate is
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    // Slot numbers take the low 16 bits of a handle, the slot's reuse count the rest,
+    // so an old handle never cancels the animation that reused its slot
+    private static final int SLOT_BITS = 16;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = 0x7FFF;
+
+    // Animations due this close to a pulse run in it (timers can fire a little early)
+    private static final long SLACK_NANOS = 1_000_000;
+
+    // Gets each frame's value of a tween; `tag` is whatever number the tween was started with
+    public interface Step {
+        void step(int tag, float value);
+    }
+
+    // One animation (slots are reused, never thrown away)
+    private static final class Slot {
+        final int index;
+        int kind = FREE;
+        int generation;
+        JComponent owner;
+        boolean ownerShown;
+        long start;
+        long nanos;
+        long due;
+        float from;
+        float to;
+        int easing;
+        int tag;
+        Step step;
+        Runnable done;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        int handle() {
+            return (generation & GENERATION_MASK) << SLOT_BITS | index;
+        }
+    }
+
+    private static Animator shared;
+
+    private Slot[] slots = new Slot[32];
+    private int used = 0;          // Slots in use (the rest are FREE)
+    private final Timer pulse;     // null for a test Animator
+    private final long frameNanos;
+    private long pulseDue;         // When the pulse timer is set to fire next
+    private long lastPulse;        // Time of the last pulse() (a test Animator's clock)
+
+    // The game's animator (Swing thread only)
+    public static Animator shared() {
+        if (shared == null) shared = new Animator(true);
+        return shared;
+    }
+
+    // realTime false makes an animator that only moves when pulse() is called
+    public Animator(boolean realTime) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(i);
+        }
+        frameNanos = 1_000_000_000L / refreshRate();
+        if (realTime) {
+            pulse = new Timer(0, e -> pulse(System.nanoTime()));
+            pulse.setCoalesce(true);
+            pulse.setRepeats(false);
+        } else {
+            pulse = null;
+        }
+    }
+
+    // Move `value` from `from` to `to` over `millis`, calling step(tag, value) every frame
+    // (the last call gets exactly `to`, or `from` for PULSE), then run `done` (may be null)
+    // Returns a handle for cancel() and isRunning()
+    public int tween(JComponent owner, long millis, float from, float to, int easing, Step step, int tag,
+                     Runnable done) {
+        Slot slot = take(TWEEN, owner, millis);
+        slot.from = from;
+        slot.to = to;
+        slot.easing = easing;
+        slot.step = step;
+        slot.tag = tag;
+        slot.done = done;
+        slot.due = slot.start;
+        schedule();
+        return slot.handle();
+    }
+
+    // Run `done` once, `millis` from now
+    public int delay(JComponent owner, long millis, Runnable done) {
+        Slot slot = take(DELAY, owner, millis);
+        slot.done = done;
+        slot.due = slot.start + slot.nanos;
+        schedule();
+        return slot.handle();
+    }
+
+    // Run `tick` every `millis` until cancelled
+    public int repeat(JComponent owner, long millis, Runnable tick) {
+        Slot slot = take(REPEAT, owner, Math.max(1, millis));
+        slot.done = tick;
+        slot.due = slot.start + slot.nanos;
+        schedule();
+        return slot.handle();
+    }
+
+    // Stop an animation without running its `done` (old or unknown handles are ignored)
+    public void cancel(int handle) {
+        Slot slot = slotOf(handle);
+        if (slot != null) free(slot);
+    }
+
+    public boolean isRunning(int handle) {
+        return slotOf(handle) != null;
+    }
+
+    // Time between frames while a tween runs
+    public long frameMicros() {
+        return frameNanos / 1000;
+    }
+
+    // How many animations are running
+    public int size() {
+        return used;
+    }
+
+    // Bring every animation up to `now` (System.nanoTime() time, or made-up time in tests)
+    public void pulse(long now) {
+        lastPulse = now;
+        for (int i = 0; i < slots.length && used > 0; i++) {
+            Slot slot = slots[i];
+            if (slot.kind == FREE || slot.due - now > SLACK_NANOS) continue;
+            if (slot.owner != null) {
+                // Drop animations whose screen has gone away
+                boolean showing = slot.owner.isShowing();
+                if (showing) {
+                    slot.ownerShown = true;
+                } else if (slot.ownerShown) {
+                    free(slot);
+                    continue;
+                }
+            }
+            if (slot.kind == TWEEN) {
+                float t = slot.nanos <= 0 ? 1f : Math.min(1f, (float) (now - slot.start) / slot.nanos);
+                int generation = slot.generation;
+                slot.step.step(slot.tag, valueAt(slot, t));
+                if (slot.generation != generation) continue; // The step cancelled it
+                if (t < 1) {
+                    // Next frame one frame on, so frames stay evenly spaced even if this one was late
+                    slot.due += frameNanos;
+                    if (slot.due - now <= 0) slot.due = now + frameNanos;
+                    continue;
+                }
+                finish(slot);
+            } else if (slot.kind == DELAY) {
+                finish(slot);
+            } else {
+                // Catch up from a late pulse without running the tick more than once
+                slot.due += slot.nanos;
+                if (slot.due <= now) slot.due = now + slot.nanos;
+                slot.done.run();
+            }
+        }
+        schedule();
+    }
+
+    // A tween's value this far (0 to 1) through it
+    private static float valueAt(Slot slot, float t) {
+        if (t >= 1) return slot.easing == PULSE ? slot.from : slot.to;
+        float eased = t;
+        if (slot.easing == SMOOTH) {
+            eased = t * t * (3 - 2 * t);
+        } else if (slot.easing == PULSE) {
+            eased = (float) Math.sin(Math.PI * t);
+        }
+        return slot.from + (slot.to - slot.from) * eased;
+    }
+
+    // Free the slot, then run its `done` (which may start new animations)
+    private void finish(Slot slot) {
+        Runnable done = slot.done;
+        free(slot);
+        if (done != null) done.run();
+    }
+
+    // Set the pulse to beat when the next animation needs it (or stop it if nothing is running)
+    private void schedule() {
+        if (pulse == null) return;
+        if (used == 0) {
+            pulse.stop();
+            return;
+        }
+        long next = Long.MAX_VALUE;
+        for (Slot slot : slots) {
+            if (slot.kind != FREE && slot.due < next) next = slot.due;
+        }
+        long now = System.nanoTime();
+        long wake = Math.max(next, now + SLACK_NANOS);
+        if (pulse.isRunning() && wake >= pulseDue) return; // Already set to fire in time
+        pulseDue = wake;
+        pulse.setInitialDelay((int) Math.min(Integer.MAX_VALUE, (wake - now + 999_999) / 1_000_000));
+        pulse.restart();
+    }
+
+    private Slot take(int kind, JComponent owner, long millis) {
+        if (used == slots.length) {
+            // Rare: more animations at once than ever before
+            Slot[] bigger = Arrays.copyOf(slots, slots.length * 2);
+            for (int i = slots.length; i < bigger.length; i++) {
+                bigger[i] = new Slot(i);
+            }
+            slots = bigger;
+        }
+        for (Slot slot : slots) {
+            if (slot.kind == FREE) {
+                slot.kind = kind;
+                slot.owner = owner;
+                slot.ownerShown = owner != null && owner.isShowing();
+                slot.start = pulse == null ? lastPulse : System.nanoTime();
+                slot.nanos = millis * 1_000_000L;
+                used++;
+                return slot;
+            }
+        }
+        throw new IllegalStateException("No free animation slot");
+    }
+
+    private void free(Slot slot) {
+        slot.kind = FREE;
+        slot.generation++;
+        slot.owner = null;
+        slot.step = null;
+        slot.done = null;
+        used--;
+    }
+
+    private Slot slotOf(int handle) {
+        if (handle < 0) return null;
+        int index = handle & SLOT_MASK;
+        if (index >= slots.length) return null;
+        Slot slot = slots[index];
+        return slot.kind != FREE && slot.handle() == handle ? slot : null;
+    }
+
+    // How often the screen redraws (frames per second)
+    static int refreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return DEFAULT_REFRESH_RATE;
+        try {
+            DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode();
+            if (mode != null && mode.getRefreshRate() != DisplayMode.REFRESH_RATE_UNKNOWN) {
+                return Math.max(30, Math.min(240, mode.getRefreshRate()));
+            }
+        } catch (HeadlessException e) {
+            // No screen
+        }
+        return DEFAULT_REFRESH_RATE;
+    }
+}
@@ -0,0 +1,410 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+import javax.imageio.ImageIO;
+
+// All the game's pictures and sounds packed into one file (assets.bundle), made at build time.
+// Pictures are stored already decoded (premultiplied ARGB pixels, shrunk to at most MAX_SIDE),
+// so loading one is a single copy out of the mapped file instead of a PNG inflate; sounds are
+// stored as they are and handed out as read-only views of the mapped file, with no copy at all.
+// The game maps the whole file once at startup instead of opening a dozen files.
+//
+// Names are found with a minimal perfect hash (hash and displace): a name's first hash picks a
+// bucket, the bucket's stored displacement picks the second hash, and that gives the entry.
+// Every name in the bundle lands on its own entry, so a lookup is two hashes and one name compare.
+//
+// File layout (numbers are little-endian, the byte order of the CPUs the game runs on, so pixels
+// copy straight out of the map):
+//   header:  magic "CUPB" (4), version (4), entry count (4), bucket count (4)
+//   buckets: displacement (4) per bucket
+//   entries: name offset (4), name length (2), kind (1), unused (1), width (4), height (4),
+//            data offset (8), data length (8)   -- 32 bytes each, in hash order
+//   names:   ASCII, as the files were spelled
+//   data:    each entry's bytes, starting on an 8 byte boundary
+//   CRC32C of everything before it (4)
+//
+// Build with: java AssetBundle <resource folder> <bundle file>   (Maven does this for you)
+public final class AssetBundle {
+
+    public static final int MAGIC = 0x43555042; // "CUPB"
+    public static final int VERSION = 1;
+
+    // What an entry holds
+    public static final byte RAW = 0;     // The file's bytes
+    public static final byte PIXELS = 1;  // width * height premultiplied ARGB ints
+
+    // Pictures bigger than this (on their longest side) are shrunk when packed;
+    // the game never draws anything bigger
+    public static final int MAX_SIDE = 512;
+
+    // The bundle's name on the classpath
+    public static final String RESOURCE = "assets.bundle";
+
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 32;
+
+    // The bundle found on the classpath (null if there isn't one), looked up once
+    private static AssetBundle shared;
+    private static boolean sharedLoaded = false;
+
+    private final ByteBuffer map;
+    private final int count;
+    private final int buckets;
+    private final int entriesAt;
+
+    private AssetBundle(ByteBuffer map) throws IOException {
+        this.map = map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.capacity() < HEADER_SIZE + 4 || map.getInt(0) != MAGIC) {
+            throw new IOException("Not an asset bundle");
+        }
+        if (map.getInt(4) != VERSION) {
+            throw new IOException("Asset bundle version " + map.getInt(4) + " isn't supported");
+        }
+        count = map.getInt(8);
+        buckets = map.getInt(12);
+        entriesAt = HEADER_SIZE + 4 * buckets;
+        if (count < 0 || buckets < 1 || entriesAt + (long) count * ENTRY_SIZE > map.capacity()) {
+            throw new IOException("Asset bundle is damaged");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(map.duplicate().position(0).limit(map.capacity() - 4));
+        if ((int) crc.getValue() != map.getInt(map.capacity() - 4)) {
+            throw new IOException("Asset bundle is damaged");
+        }
+    }
+
+    // Map a bundle file (the file can be closed right after; the mapping stays)
+    public static AssetBundle open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new AssetBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // The bundle on the classpath, or null if there isn't one (the game then reads the PNG files)
+    // Inside a jar it is copied out to the temp folder once, since a jar entry can't be mapped
+    public static synchronized AssetBundle shared() {
+        if (sharedLoaded) return shared;
+        sharedLoaded = true;
+        URL url = AssetBundle.class.getClassLoader().getResource(RESOURCE);
+        if (url == null) return null;
+        try {
+            if (url.getProtocol().equals("file")) {
+                shared = open(Paths.get(url.toURI()));
+            } else if (url.getProtocol().equals("jar")) {
+                shared = open(extract(url));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            System.out.println("Error opening asset bundle, reading the picture files instead.");
+        }
+        return shared;
+    }
+
+    // Copy the bundle out of the jar, named by its CRC so each build gets its own copy
+    private static Path extract(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        long crc = ((JarURLConnection) connection).getJarEntry().getCrc();
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "cup-memory-" + Long.toHexString(crc) + ".bundle");
+        if (Files.isRegularFile(file)) return file;
+        Path temp = Files.createTempFile(file.getParent(), "cup-memory-", ".tmp");
+        try (InputStream in = connection.getInputStream()) {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return file;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Entry number for a name (any case), or -1 if the bundle doesn't have it
+    public int find(String name) {
+        if (count == 0) return -1;
+        int bucket = hash(name, 0) % buckets;
+        int entry = hash(name, map.getInt(HEADER_SIZE + 4 * bucket)) % count;
+        return nameMatches(entry, name) ? entry : -1;
+    }
+
+    // The names of every entry, spelled as the files were
+    public List<String> names() {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int at = entriesAt + i * ENTRY_SIZE;
+            byte[] bytes = new byte[map.getShort(at + 4) & 0xFFFF];
+            map.get(map.getInt(at), bytes);
+            names.add(new String(bytes, StandardCharsets.US_ASCII));
+        }
+        return names;
+    }
+
+    // A picture (any case name), or null if the bundle doesn't have it as pixels
+    // The pixels are copied once into the image, which Java2D needs in its own array
+    public BufferedImage image(String name) {
+        int entry = find(name);
+        if (entry < 0) return null;
+        int at = entriesAt + entry * ENTRY_SIZE;
+        if (map.get(at + 6) != PIXELS) return null;
+        int width = map.getInt(at + 8);
+        int height = map.getInt(at + 12);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        slice(at).asIntBuffer().get(pixels);
+        return image;
+    }
+
+    // An entry's bytes as a read-only view of the mapped file (no copy), or null if it isn't there
+    public ByteBuffer data(String name) {
+        int entry = find(name);
+        return entry < 0 ? null : slice(entriesAt + entry * ENTRY_SIZE).asReadOnlyBuffer();
+    }
+
+    private ByteBuffer slice(int entryAt) {
+        int offset = (int) map.getLong(entryAt + 16);
+        int length = (int) map.getLong(entryAt + 24);
+        return map.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private boolean nameMatches(int entry, String name) {
+        int at = entriesAt + entry * ENTRY_SIZE;
+        int offset = map.getInt(at);
+        int length = map.getShort(at + 4) & 0xFFFF;
+        if (length != name.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (lower(map.get(offset + i)) != lower(name.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // Hash of a name ignoring case (FNV-1a, then a finalizer to spread the bits), never negative
+    static int hash(String name, int seed) {
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = 0; i < name.length(); i++) {
+            h ^= lower(name.charAt(i));
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & 0x7FFFFFFF;
+    }
+
+    private static int lower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    // One thing to pack
+    static final class Item {
+        final String name;
+        final byte kind;
+        final int width;
+        final int height;
+        final byte[] bytes;
+
+        Item(String name, byte kind, int width, int height, byte[] bytes) {
+            this.name = name;
+            this.kind = kind;
+            this.width = width;
+            this.height = height;
+            this.bytes = bytes;
+        }
+    }
+
+    // Write a bundle holding these items
+    static void write(Path file, List<Item> items) throws IOException {
+        int count = items.size();
+        int buckets = Math.max(1, count);
+        int[] displacement = new int[buckets];
+        int[] slotOf = placeAll(items, buckets, displacement);
+
+        int entriesAt = HEADER_SIZE + 4 * buckets;
+        long namesAt = entriesAt + (long) count * ENTRY_SIZE;
+        long dataAt = namesAt;
+        for (Item item : items) {
+            dataAt += item.name.length();
+        }
+        long size = align8(dataAt);
+        for (Item item : items) {
+            size = align8(size + item.bytes.length);
+        }
+        size += 4;
+        if (size > Integer.MAX_VALUE) throw new IOException("Too much to fit in one bundle");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(buckets);
+        for (int d : displacement) {
+            out.putInt(d);
+        }
+        int nameOffset = (int) namesAt;
+        long dataOffset = align8(dataAt);
+        for (int i = 0; i < count; i++) {
+            Item item = items.get(i);
+            int at = entriesAt + slotOf[i] * ENTRY_SIZE;
+            out.putInt(at, nameOffset);
+            out.putShort(at + 4, (short) item.name.length());
+            out.put(at + 6, item.kind);
+            out.putInt(at + 8, item.width);
+            out.putInt(at + 12, item.height);
+            out.putLong(at + 16, dataOffset);
+            out.putLong(at + 24, item.bytes.length);
+            out.put(nameOffset, item.name.getBytes(StandardCharsets.US_ASCII));
+            out.put((int) dataOffset, item.bytes);
+            nameOffset += item.name.length();
+            dataOffset = align8(dataOffset + item.bytes.length);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(out.duplicate().position(0).limit((int) size - 4));
+        out.putInt((int) size - 4, (int) crc.getValue());
+
+        // Write next to the real file, then swap it in, so a reader never sees half a bundle
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.position(0);
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Find a displacement for every bucket so every name gets its own entry
+    // Biggest buckets go first, while there are still lots of free entries
+    // Returns the entry number of each item
+    private static int[] placeAll(List<Item> items, int buckets, int[] displacement) {
+        int count = items.size();
+        List<List<Integer>> byBucket = new ArrayList<>();
+        for (int b = 0; b < buckets; b++) {
+            byBucket.add(new ArrayList<>());
+        }
+        for (int i = 0; i < count; i++) {
+            byBucket.get(hash(items.get(i).name, 0) % buckets).add(i);
+        }
+        Integer[] order = new Integer[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[b] = b;
+        }
+        Arrays.sort(order, (a, b) -> byBucket.get(b).size() - byBucket.get(a).size());
+
+        int[] slotOf = new int[count];
+        boolean[] taken = new boolean[count];
+        for (int b : order) {
+            List<Integer> members = byBucket.get(b);
+            if (members.isEmpty()) break;
+            for (int d = 1; ; d++) {
+                if (tryPlace(items, members, d, taken, slotOf)) {
+                    displacement[b] = d;
+                    break;
+                }
+                if (d == 10_000_000) throw new IllegalStateException("Couldn't place " + members);
+            }
+        }
+        return slotOf;
+    }
+
+    private static boolean tryPlace(List<Item> items, List<Integer> members, int d, boolean[] taken, int[] slotOf) {
+        int placed = 0;
+        for (int i : members) {
+            int slot = hash(items.get(i).name, d) % taken.length;
+            if (taken[slot]) break;
+            taken[slot] = true;
+            slotOf[i] = slot;
+            placed++;
+        }
+        if (placed == members.size()) return true;
+        for (int k = 0; k < placed; k++) {
+            taken[slotOf[members.get(k)]] = false; // Undo and try the next displacement
+        }
+        return false;
+    }
+
+    private static long align8(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    // Turn a picture into pixels, shrunk to fit MAX_SIDE
+    static Item pixels(String name, BufferedImage source) {
+        float scale = Math.min(1f, (float) MAX_SIDE / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        BufferedImage image = CupSprites.scaleSmooth(source, width, height); // Always TYPE_INT_ARGB_PRE
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asIntBuffer().put(pixels);
+        return new Item(name, PIXELS, width, height, bytes.array());
+    }
+
+    // Pack <folder>/images/*.png (as pixels) and <folder>/sounds/*.wav (as bytes) into a bundle
+    // Does nothing if the bundle is already newer than every file
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java AssetBundle <resource folder> <bundle file>");
+            return;
+        }
+        Path folder = Paths.get(args[0]);
+        Path file = Paths.get(args[1]);
+        List<Path> inputs = new ArrayList<>();
+        collect(folder.resolve("images"), "*.png", inputs);
+        collect(folder.resolve("sounds"), "*.wav", inputs);
+        if (Files.exists(file)) {
+            long built = Files.getLastModifiedTime(file).toMillis();
+            boolean upToDate = true;
+            for (Path input : inputs) {
+                upToDate &= Files.getLastModifiedTime(input).toMillis() <= built;
+            }
+            if (upToDate) return;
+        }
+
+        long start = System.nanoTime();
+        List<Item> items = new ArrayList<>();
+        long sourceBytes = 0;
+        for (Path input : inputs) {
+            String name = input.getFileName().toString();
+            for (Item item : items) {
+                if (item.name.equalsIgnoreCase(name)) throw new IOException("Two assets are called " + name);
+            }
+            byte[] bytes = Files.readAllBytes(input);
+            sourceBytes += bytes.length;
+            BufferedImage image = name.endsWith(".png") ? ImageIO.read(input.toFile()) : null;
+            items.add(image != null ? pixels(name, image) : new Item(name, RAW, 0, 0, bytes));
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        write(file, items);
+        System.out.printf("Packed %d assets (%d KB of files) into %s (%d KB) in %d ms%n", items.size(),
+            sourceBytes / 1024, file, Files.size(file) / 1024, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void collect(Path folder, String glob, List<Path> into) throws IOException {
+        if (!Files.isDirectory(folder)) return;
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, glob)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                if (!StandardCharsets.US_ASCII.newEncoder().canEncode(name) || name.length() > 0xFFFF) {
+                    throw new IOException("Asset names must be ASCII: " + name);
+                }
+                found.add(path);
+            }
+        }
+        found.sort(null); // Same order every build, so the same files give the same bundle
+        into.addAll(found);
+    }
+}
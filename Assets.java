@@ -0,0 +1,212 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import javax.imageio.ImageIO;
+
+// Finds the game's pictures and reads them in the background.
+// Pictures come from the asset bundle the build makes (see AssetBundle), already decoded; without
+// one they are read from the classpath (src/images inside the jar, or next to the classes), or
+// from the src/images folder when the game runs straight from the repo. Names are matched
+// without caring about upper/lower case, because Windows doesn't care but Linux and jars do
+// (the logo is CupMemoryText.png on disk, and asking for cupmemorytext.png used to find nothing).
+//
+// preloadAsync() starts decoding every picture at once on a few background threads, so by the
+// time a screen needs one it is usually already there.
+public class Assets {
+
+    private static final String IMAGE_FOLDER = "src/images/";
+
+    // Pictures that screens show first are read first
+    private static final String[] FIRST = {"CupMemoryText.png"};
+
+    // Real file names by lowercase name, found once
+    private static volatile Map<String, String> imageNames;
+
+    // Pictures being read or already read, by lowercase name
+    private static final Map<String, CompletableFuture<BufferedImage>> images = new ConcurrentHashMap<>();
+
+    // Threads that decode pictures (and scale them, for the screens that ask)
+    private static volatile ExecutorService loader;
+
+    // Whether preloadAsync has run
+    private static boolean preloaded = false;
+
+    // This class only has static helpers
+    private Assets() {
+    }
+
+    // Start reading every picture in src/images on background threads
+    // The logo goes first, then the pictures named here, then the rest
+    public static synchronized void preloadAsync(String... next) {
+        if (preloaded) return;
+        preloaded = true;
+        Map<String, CompletableFuture<BufferedImage>> all = new LinkedHashMap<>();
+        for (String name : FIRST) {
+            all.put(name.toLowerCase(Locale.ROOT), image(name));
+        }
+        for (String name : next) {
+            all.putIfAbsent(name.toLowerCase(Locale.ROOT), image(name));
+        }
+        for (String name : names().values()) {
+            all.computeIfAbsent(name.toLowerCase(Locale.ROOT), k -> image(name));
+        }
+        CompletableFuture.allOf(all.values().toArray(new CompletableFuture<?>[0]))
+            .whenComplete((done, error) -> Startup.assetsLoaded(all.size()));
+    }
+
+    // The picture with this file name (any case), read in the background if it isn't yet
+    // Completes with null if there is no such picture or it can't be read
+    public static CompletableFuture<BufferedImage> image(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        CompletableFuture<BufferedImage> image = images.get(key);
+        if (image != null) return image;
+        ExecutorService threads = loader();
+        return images.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> decode(name), threads));
+    }
+
+    // The picture with this file name, waiting for it if it is still being read
+    public static BufferedImage loadImage(String name) {
+        return image(name).join();
+    }
+
+    // Run work (like scaling a picture) on the loader threads
+    public static <T> CompletableFuture<T> onLoader(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(work, loader());
+    }
+
+    // The loader threads, started the first time they're needed
+    private static ExecutorService loader() {
+        ExecutorService threads = loader;
+        if (threads != null) return threads;
+        synchronized (Assets.class) {
+            if (loader == null) {
+                // Reading from a URL would otherwise copy each file to a temp file first
+                ImageIO.setUseCache(false);
+                int count = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+                loader = Executors.newFixedThreadPool(count, r -> {
+                    Thread t = new Thread(r, "asset-loader");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return loader;
+        }
+    }
+
+    // Forget a full-size picture once the screens that need it have their scaled copy
+    public static void release(String name) {
+        images.remove(name.toLowerCase(Locale.ROOT));
+    }
+
+    // Where a picture is, with its name spelled the way the file really is (null if it isn't there)
+    public static URL find(String name) {
+        String real = names().getOrDefault(name.toLowerCase(Locale.ROOT), name);
+        URL url = Assets.class.getClassLoader().getResource(IMAGE_FOLDER + real);
+        if (url != null) return url;
+        File file = new File(IMAGE_FOLDER + real);
+        try {
+            return file.isFile() ? file.toURI().toURL() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Take the picture from the asset bundle if there is one (already decoded), otherwise read the PNG
+    private static BufferedImage decode(String name) {
+        AssetBundle bundle = AssetBundle.shared();
+        if (bundle != null) {
+            BufferedImage image = bundle.image(name);
+            if (image != null) return image;
+        }
+        URL url = find(name);
+        if (url == null) {
+            System.out.println("Missing image: " + name);
+            return null;
+        }
+        try {
+            return ImageIO.read(url);
+        } catch (IOException e) {
+            System.out.println("Error loading image: " + name);
+            return null;
+        }
+    }
+
+    // Every picture file we can see, found the first time it's needed
+    private static Map<String, String> names() {
+        Map<String, String> found = imageNames;
+        if (found != null) return found;
+        synchronized (Assets.class) {
+            if (imageNames == null) {
+                Map<String, String> map = new ConcurrentHashMap<>();
+                try {
+                    listImages(map);
+                } catch (IOException | URISyntaxException e) {
+                    System.out.println("Error listing images: " + e.getMessage());
+                }
+                imageNames = map;
+            }
+            return imageNames;
+        }
+    }
+
+    // List the asset bundle's pictures, the image folder on the classpath (a folder or a jar),
+    // and src/images in the working folder
+    private static void listImages(Map<String, String> map) throws IOException, URISyntaxException {
+        AssetBundle bundle = AssetBundle.shared();
+        if (bundle != null) {
+            for (String name : bundle.names()) {
+                if (name.endsWith(".png")) add(map, name);
+            }
+        }
+        URL folder = Assets.class.getClassLoader().getResource(IMAGE_FOLDER);
+        if (folder != null && folder.getProtocol().equals("jar")) {
+            URLConnection connection = folder.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jar = ((JarURLConnection) connection).getJarFile()) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement().getName();
+                    if (entry.startsWith(IMAGE_FOLDER) && entry.endsWith(".png")
+                            && entry.indexOf('/', IMAGE_FOLDER.length()) < 0) {
+                        add(map, entry.substring(IMAGE_FOLDER.length()));
+                    }
+                }
+            }
+        } else if (folder != null && folder.getProtocol().equals("file")) {
+            listFolder(Paths.get(folder.toURI()), map);
+        }
+        listFolder(Paths.get(IMAGE_FOLDER), map);
+    }
+
+    private static void listFolder(Path folder, Map<String, String> map) throws IOException {
+        if (!Files.isDirectory(folder)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*.png")) {
+            for (Path file : files) {
+                add(map, file.getFileName().toString());
+            }
+        }
+    }
+
+    private static void add(Map<String, String> map, String name) {
+        map.putIfAbsent(name.toLowerCase(Locale.ROOT), name);
+    }
+}
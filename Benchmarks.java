@@ -0,0 +1,408 @@
+import java.awt.FlowLayout;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+// Micro-benchmarks for the code the game runs over and over.
+// Run with: java Benchmarks [--check] [name-filter...]
+// For each benchmark it prints time per call and how much memory each call allocates
+// (the same numbers JMH's GC profiler reports as gc.alloc.rate and gc.alloc.rate.norm).
+// With --check it skips the timing and only runs the checks that hot paths make no garbage
+// (the normal Maven build does this in its test phase).
+public class Benchmarks {
+
+    // One piece of work to measure
+    interface Op {
+        long run() throws Exception;
+    }
+
+    // How long to warm up and measure each benchmark
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 5;
+    private static final long ROUND_NANOS = 300_000_000L;
+
+    // Results go here so the JIT can't throw the work away
+    private static volatile long sink;
+
+    // How many times an allocation check warms up and measures before it fails
+    private static final int CHECK_ATTEMPTS = 5;
+
+    // Only run the allocation checks, not the timed benchmarks (--check)
+    private static boolean checksOnly;
+
+    // Per-thread allocation counter (HotSpot only)
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        checksOnly = args.length > 0 && args[0].equals("--check");
+        List<String> filters = Arrays.asList(args).subList(checksOnly ? 1 : 0, args.length);
+
+        String[] colors = GameEngine.COLOR_NAMES;
+        List<String> correctOrder = new ArrayList<>(Arrays.asList(colors));
+        List<String> playerGuess = new ArrayList<>(correctOrder);
+        Collections.swap(playerGuess, 0, 1);
+        GameEngine engine = new GameEngine();
+        BufferedImage redCup = ImageIO.read(new File("src/images/red.png"));
+        File scoreFile = File.createTempFile("highscore", ".txt");
+        scoreFile.deleteOnExit();
+        File journalFile = File.createTempFile("scores", ".journal");
+        journalFile.delete();
+        journalFile.deleteOnExit();
+        ScoreJournal journal = ScoreJournal.open(journalFile.toPath());
+        List<ScoreJournal.Entry> oneRound = List.of(new ScoreJournal.Entry(0, 42_125, 2, 6, 7));
+        int[] tick = {0};
+
+        if (!checksOnly) {
+            System.out.printf("%-32s %12s %10s %12s %8s%n", "Benchmark", "ns/op", "B/op", "alloc MB/s", "GCs");
+        }
+
+        // Round generation: the old ArrayList copy + Collections.shuffle, and the engine's int[] shuffle
+        bench(filters, "legacy.generateCupOrder", () -> {
+            List<String> cups = new ArrayList<>(Arrays.asList(colors));
+            Collections.shuffle(cups);
+            List<String> order = new ArrayList<>(cups);
+            List<String> shuffled = new ArrayList<>(order);
+            return order.size() + shuffled.size();
+        });
+        bench(filters, "engine.newRound", () -> {
+            engine.newRound();
+            return engine.correctAt(0);
+        });
+        for (String algorithm : new String[] {"Random", "L64X128MixRandom"}) {
+            GameEngine other = new GameEngine(Difficulty.NORMAL, new java.util.Random(), algorithm, System::nanoTime);
+            bench(filters, "engine.newRound." + algorithm, () -> {
+                other.newRound();
+                return other.correctAt(0);
+            });
+        }
+        GameEngine bigEngine = new GameEngine(Difficulty.TRAINING);
+        bench(filters, "engine.newRound.training", () -> {
+            bigEngine.newRound();
+            return bigEngine.correctAt(0);
+        });
+
+        // Guess checking: the old String.equals per slot, and the engine's int compare
+        bench(filters, "legacy.checkPlayerGuess", () -> {
+            int correctCount = 0;
+            for (int i = 0; i < correctOrder.size(); i++) {
+                if (correctOrder.get(i).equals(playerGuess.get(i))) {
+                    correctCount++;
+                }
+            }
+            return correctCount;
+        });
+        bench(filters, "engine.submit", () -> {
+            engine.newRound();
+            for (int i = 0; i < engine.getCupCount(); i++) {
+                engine.addGuess(engine.correctAt(i));
+            }
+            return engine.submit();
+        });
+
+        // Instant feedback on the 120-cup board: one click and its undo, with the live correct count
+        bigEngine.newRound();
+        for (int i = 0; i < bigEngine.getCupCount() - 1; i++) {
+            bigEngine.addGuess(i % 2 == 0 ? bigEngine.correctAt(i) : 0);
+        }
+        int lastSpot = bigEngine.getCupCount() - 1;
+        Op instantClick = () -> {
+            bigEngine.addGuess(bigEngine.correctAt(lastSpot));
+            int correct = bigEngine.getCorrectSoFar() + (bigEngine.isRightAt(lastSpot) ? 1 : 0);
+            bigEngine.undo();
+            return correct;
+        };
+        bench(filters, "engine.instantFeedback", instantClick);
+        assertNoAllocation(filters, "engine.instantFeedback", instantClick);
+
+        // Hint after one wrong submit on the default board (has to fit in one frame)
+        PermutationSolver solver = new PermutationSolver(engine.getCupCount());
+        int[] hint = new int[engine.getCupCount()];
+        bench(filters, "solver.hint", () -> {
+            solver.reset();
+            solver.suggest(hint);
+            solver.update(hint, 1);
+            solver.suggest(hint);
+            return hint[0];
+        });
+
+        // Time text shown every second
+        bench(filters, "formatTime", () -> {
+            tick[0] = (tick[0] + 1) % 3600;
+            return CupMemoryGame.formatTime(tick[0] * 1000L + 125).length();
+        });
+        bench(filters, "legacy.timerTick.format", () -> {
+            tick[0] = (tick[0] + 1) % 3600;
+            return String.format("Time: %02d:%02d", tick[0] / 60, tick[0] % 60).length();
+        });
+        // The HUD sized like on screen; it isn't in a window here, so repaint() does nothing and
+        // each tick paints the timer line's strip itself, the way Swing paints the dirty region
+        HudPanel hud = new HudPanel();
+        hud.setSize(hud.getPreferredSize());
+        BufferedImage hudFrame = new BufferedImage(hud.getWidth(), hud.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D hudGraphics = hudFrame.createGraphics();
+        hudGraphics.setClip(0, 0, hud.getWidth(), hud.getFontMetrics(hud.getFont()).getHeight());
+        Op hudTick = () -> {
+            tick[0] = (tick[0] + 1) % 3600;
+            hud.setTime(tick[0]);
+            hud.setAttempts(3);    // Unchanged values are skipped
+            hud.setHighScore(95);
+            hud.paintComponent(hudGraphics);
+            return tick[0];
+        };
+        bench(filters, "hud.tick", hudTick);
+        // The timer fires every second on every kiosk, so its update must not make garbage
+        assertNoAllocation(filters, "hud.tick", hudTick);
+
+        // Cup picture loading: the old decode + getScaledInstance, and the sprite cache's scaler
+        bench(filters, "legacy.scaleImage", () -> {
+            ImageIcon icon = new ImageIcon("src/images/red.png");
+            Image scaled = icon.getImage().getScaledInstance(60, 90, Image.SCALE_SMOOTH);
+            icon.getImage().flush();
+            return new ImageIcon(scaled).getIconWidth();
+        });
+        bench(filters, "sprites.scaleSmooth", () ->
+            CupSprites.scaleSmooth(redCup, CupSprites.LARGE_WIDTH, CupSprites.LARGE_HEIGHT).getWidth());
+
+        // Reading one cup picture: PNG decode, and a copy out of the mapped asset bundle (built by Maven)
+        bench(filters, "assets.decodePng", () -> ImageIO.read(new File("src/images/red.png")).getWidth());
+        AssetBundle bundle = AssetBundle.shared();
+        if (bundle != null) {
+            bench(filters, "assets.bundleImage", () -> bundle.image("red.png").getWidth());
+            bench(filters, "assets.bundleFind", () -> bundle.find("CupMemoryText.png"));
+        }
+
+        // Starting a sound and mixing one 5.8 ms step (the mixer thread isn't started, so this
+        // thread plays its part); a trigger is a click, so it must not make garbage either
+        SoundEngine sound = new SoundEngine(SoundEngine.nullOutput(null));
+        Op soundTick = () -> {
+            sound.play(SoundEngine.CLICK);
+            sound.mixPeriod();
+            return 0;
+        };
+        bench(filters, "sound.playAndMix", soundTick);
+        assertNoAllocation(filters, "sound.playAndMix", soundTick);
+
+        // What each click adds for the stutter hunt: a flight recorder event (no recording running)
+        // and a latency histogram; it runs on every click, so it must not make garbage
+        Op clickMetrics = () -> {
+            long start = System.nanoTime();
+            GameEvents.Guess event = new GameEvents.Guess();
+            event.begin();
+            if (event.shouldCommit()) {
+                event.color = 2;
+                event.commit();
+            }
+            GameMetrics.recordSince(GameMetrics.GUESS, start);
+            return 0;
+        };
+        bench(filters, "metrics.click", clickMetrics);
+        assertNoAllocation(filters, "metrics.click", clickMetrics);
+
+        // One frame pulse with 16 cups sliding, plus starting and cancelling a cup press
+        // (a test Animator, stepped with made-up times); animations come from a pool, so no garbage
+        Animator animator = new Animator(false);
+        Animator.Step noStep = (tag, value) -> { };
+        for (int i = 0; i < 16; i++) {
+            animator.tween(null, 1_000_000_000L, 0, 1, Animator.SMOOTH, noStep, i, null);
+        }
+        long[] pulseNanos = {0};
+        Op animatorPulse = () -> {
+            pulseNanos[0] += animator.frameMicros() * 1000;
+            animator.pulse(pulseNanos[0]);
+            animator.cancel(animator.tween(null, 150, 1, 0.8f, Animator.PULSE, noStep, 0, null));
+            return animator.size();
+        };
+        bench(filters, "animator.pulse", animatorPulse);
+        assertNoAllocation(filters, "animator.pulse", animatorPulse);
+
+        // One shuffle step on screen: the old JLabel-per-cup rebuild + FlowLayout, and the painted cup row
+        JPanel legacyPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 10));
+        legacyPanel.setSize(600, 120);
+        BufferedImage frame = new BufferedImage(600, 120, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D frameGraphics = frame.createGraphics();
+        int[] shuffled = new int[engine.getCupCount()];
+        bench(filters, "legacy.shuffleTick", () -> {
+            engine.shuffleDisplay();
+            legacyPanel.removeAll();
+            for (int i = 0; i < engine.getCupCount(); i++) {
+                legacyPanel.add(new JLabel(CupSprites.icon(engine.shuffledAt(i))));
+            }
+            legacyPanel.doLayout(); // What revalidate() ends up doing (validate() skips panels not on screen)
+            legacyPanel.paint(frameGraphics);
+            return legacyPanel.getComponentCount();
+        });
+        CupRow board = new CupRow();
+        board.setSize(600, 120);
+        bench(filters, "board.shuffleTick", () -> {
+            engine.shuffleDisplay();
+            engine.copyShuffledOrder(shuffled);
+            board.showCups(shuffled, shuffled.length);
+            board.paint(frameGraphics);
+            return board.getCupCount();
+        });
+
+        // The same step on a board grown to fill a big window on a 2x HiDPI screen (cups drawn from
+        // SpriteCache pictures once they're made), and making one of those pictures
+        CupRow bigBoard = new CupRow();
+        bigBoard.setSize(1200, 330);
+        BufferedImage hiDpiFrame = new BufferedImage(2400, 660, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D hiDpiGraphics = hiDpiFrame.createGraphics();
+        hiDpiGraphics.scale(2, 2);
+        bench(filters, "board.shuffleTick.hiDpi", () -> {
+            engine.shuffleDisplay();
+            engine.copyShuffledOrder(shuffled);
+            bigBoard.showCups(shuffled, shuffled.length);
+            bigBoard.paint(hiDpiGraphics);
+            return bigBoard.getCupCount();
+        });
+        bench(filters, "sprites.render", () ->
+            CupSprites.render(0, 2 * CupSprites.LARGE_WIDTH, 2 * CupSprites.LARGE_HEIGHT).getWidth());
+
+        // Start of a Training round's reveal: every cup drawn, and the picture the RoundPipeline made ahead
+        bigEngine.newRound();
+        int[] bigOrder = new int[bigEngine.getCupCount()];
+        bigEngine.copyCorrectOrder(bigOrder);
+        BufferedImage revealFrame = new BufferedImage(780, 190, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D revealGraphics = revealFrame.createGraphics();
+        CupRow revealRow = new CupRow();
+        revealRow.setSize(780, 190);
+        CupPainter stillPainter = new CupPainter(null);
+        stillPainter.setSize(780, 190, revealRow.getInsets());
+        stillPainter.setBackground(revealRow.getBackground());
+        BufferedImage revealStill = stillPainter.renderStill(bigOrder, bigOrder.length, 1);
+        bench(filters, "board.reveal.training", () -> {
+            revealRow.showCups(bigOrder, bigOrder.length);
+            revealRow.paint(revealGraphics);
+            return revealRow.getCupCount();
+        });
+        bench(filters, "board.reveal.training.prepared", () -> {
+            revealRow.showCups(bigOrder, bigOrder.length, revealStill);
+            revealRow.paint(revealGraphics);
+            return revealRow.getCupCount();
+        });
+
+        // High score: the old text file rewrite, and the score journal (append + fsync, mapped scan)
+        bench(filters, "legacy.saveHighScore", () -> {
+            try (java.io.PrintWriter pw = new java.io.PrintWriter(scoreFile)) {
+                pw.println(tick[0]++);
+            }
+            return 1;
+        });
+        bench(filters, "legacy.loadHighScore", () -> ScoreJournal.readLegacyHighScore(scoreFile));
+        bench(filters, "journal.append", () -> {
+            journal.appendNow(oneRound);
+            return 1;
+        });
+        bench(filters, "journal.loadBestTime", journal::loadBestTime);
+
+        // The leaderboard shared between games: publishing a round (sequence-locked write into
+        // mapped memory), the per-tick change check, and reading the best time after a change
+        File sharedFile = File.createTempFile("leaderboard", ".shm");
+        sharedFile.deleteOnExit();
+        SharedLeaderboard shared = SharedLeaderboard.open(sharedFile.toPath());
+        Op sharedPublish = () -> {
+            shared.publish(Difficulty.NORMAL, 30_000 + (tick[0]++ & 1023), 3, tick[0]);
+            return 1;
+        };
+        bench(filters, "shared.publish", sharedPublish);
+        assertNoAllocation(filters, "shared.publish", sharedPublish);
+        bench(filters, "shared.changes", shared::changes);
+        bench(filters, "shared.bestTime", () -> shared.bestTime(Difficulty.NORMAL));
+    }
+
+    // Warm up, then measure one benchmark and print a line of results
+    private static void bench(List<String> filters, String name, Op op) throws Exception {
+        if (checksOnly || !matches(filters, name)) return;
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runFor(op, ROUND_NANOS);
+        }
+
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        long gcsBefore = gcCount();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            ops += runFor(op, ROUND_NANOS);
+            nanos += System.nanoTime() - start;
+            bytes += threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        }
+        long gcs = gcCount() - gcsBefore;
+
+        double nsPerOp = (double) nanos / ops;
+        double bytesPerOp = (double) bytes / ops;
+        double allocMbPerSec = bytes / (nanos / 1e9) / (1024 * 1024);
+        System.out.printf("%-32s %12.1f %10.1f %12.1f %8d%n", name, nsPerOp, bytesPerOp, allocMbPerSec, gcs);
+    }
+
+    // Fail the run if an operation allocates anything once it is warmed up
+    private static void assertNoAllocation(List<String> filters, String name, Op op) throws Exception {
+        if (!matches(filters, name)) return;
+        int calls = 100_000;
+        long allocated = 0;
+        // The JIT can take a few rounds of compiling (longer for paint code) before it has removed
+        // every temporary object, so only fail if none of the tries comes out clean. Warming up
+        // goes by time, not calls, so the compiler threads get their turn even on one core.
+        for (int attempt = 0; attempt < CHECK_ATTEMPTS; attempt++) {
+            runFor(op, ROUND_NANOS);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            long result = 0;
+            for (int i = 0; i < calls; i++) {
+                result += op.run();
+            }
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+            sink = result;
+            if (allocated == 0) {
+                System.out.printf("%-32s %s%n", name, "allocation check passed (0 bytes in " + calls + " calls)");
+                return;
+            }
+        }
+        throw new AssertionError(name + " allocated " + allocated + " bytes in " + calls + " calls");
+    }
+
+    // Call the operation in a loop until the time is up, returns how many calls were made
+    private static long runFor(Op op, long nanos) throws Exception {
+        long end = System.nanoTime() + nanos;
+        long count = 0;
+        long result = 0;
+        do {
+            result += op.run();
+            count++;
+        } while (System.nanoTime() < end);
+        sink = result;
+        return count;
+    }
+
+    // Total number of garbage collections so far
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    // No filters means run everything
+    private static boolean matches(List<String> filters, String name) {
+        if (filters.isEmpty()) return true;
+        for (String filter : filters) {
+            if (name.contains(filter)) return true;
+        }
+        return false;
+    }
+}
@@ -1,131 +1,345 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.*;
-import javax.swing.Timer;
 
-public class CupMemoryGame extends JFrame {
+// One game screen: the cups, the guess, the buttons and the HUD. There is one per difficulty,
+// built the first time that difficulty is played and kept in the game window (see ScreenManager);
+// playing again only deals a new round.
+public class CupMemoryGame extends JPanel {
 
-    // All the cup colors we can use in the game
-    private final String[] colors = {"Red", "Blue", "Purple", "Orange", "Pink", "Green"};
+    // The game rules and state (order, guess, attempts, time) live here
+    private final GameEngine engine;
     
-    // The correct order of cups the player needs to guess
-    private List<String> correctOrder;
-    
-    // What the player has guessed so far
-    private List<String> playerGuess = new ArrayList<>();
-    
-    // Labels to show game info to the player
-    private JLabel attemptsLabel;
-    private JLabel correctLabel;
-    private JLabel timerLabel;
-    private JLabel highScoreLabel;
+    // Shows time, correct count, attempts and high score to the player
+    private HudPanel hud;
     
     // Keep track of the best time score
-    private int bestTime = Integer.MAX_VALUE;
-    
-    // Count how many times the player has tried
-    private int attempts = 0;
-    
-    // Store cup pictures for each color
-    private final Map<String, ImageIcon> cupIcons = new HashMap<>();
+    // (in milliseconds, Long.MAX_VALUE means no best time yet)
+    private long bestTime = Long.MAX_VALUE;
     
-    // Different areas of the game window
-    private JPanel guessPanel;      // Shows player's guess
-    private JPanel correctPanel;    // Shows the shuffled cups
-    private JPanel cupButtonsPanel; // Shows buttons to click
+    // Different areas of the game window (each one paints its cups itself)
+    private CupRow guessPanel;      // Shows player's guess
+    private CupRow correctPanel;    // Shows the shuffled cups
+    private CupRow cupButtonsPanel; // Shows cups to click
     private JPanel mainCenterPanel;
+
+    // How long each shuffle takes to slide the cups into their new places
+    static final int SHUFFLE_MILLIS = 250;
+
+    // Reused array for copying cup orders out of the engine
+    private final int[] cupBuffer;
+
+    // Works out hints from the feedback so far (null on boards too big for it),
+    // and reused arrays for the guess being submitted and the suggested guess
+    private final PermutationSolver solver;
+    private final int[] submittedGuess;
+    private final int[] hintBuffer;
     
-    // Timer to count seconds
-    private Timer timer;
-    private int elapsedTime = 0;
+    // Refreshes the time display four times a second (the time itself comes from the engine's clock)
+    // and its animation handle (-1 when it isn't running)
+    private final Runnable clockTick;
+    private int clockAnimation = -1;
+
+    // The next round's seed and reveal picture, made in the background while this one is played,
+    // and when the player asked for this round (to time how long it took to show)
+    private final RoundPipeline pipeline;
+    private long roundClickNanos;
+    private final Runnable revealShown;
+
+    // Ends the reveal, its animation handle, and the flight recorder event timing it
+    private final Runnable revealDone;
+    private int revealAnimation = -1;
+    private GameEvents.Reveal reveal;
     
     // Whether the player can click buttons or not
     private boolean allowInput = false;
+
+    // Whether this round marks each guessed cup right or wrong as it's clicked
+    // (a practice round: its time isn't saved, picked on the menu when the round starts)
+    private boolean instantFeedback = false;
     
-    // All the cup buttons the player can click
-    private final List<JButton> cupButtons = new ArrayList<>();
-    
-    // The mixed up order of cups
-    private List<String> shuffledOrder;
 
-    // File to save the best score
-    private final File highScoreFile = new File("highscore.txt");
+    // Every finished round is saved here (shared by all game screens; null until it's open, or if
+    // it can't be used)
+    private static volatile ScoreJournal scoreJournal;
+
+    // Done once the score journal and the shared leaderboard have been opened (or failed to),
+    // which happens on the journal's background thread so the Swing thread never waits on a file lock
+    private static CompletableFuture<Void> scoresOpened;
+
+    // Everything the player does is logged here so rounds can be checked later (see RoundReplay)
+    // (the file is opened on the log's own background thread)
+    private static RoundLog roundLog;
+    private final RoundLog.Recorder recorder;
+
+    // Fastest times of every game running on this computer, seen live (null if it can't be opened),
+    // and its change count when this screen last looked
+    private static volatile SharedLeaderboard sharedBoard;
+    private long sharedChanges = -1;
+
+    // Fastest times and stats for each difficulty, kept up to date from the journal
+    private static final Map<Difficulty, Leaderboard> leaderboards = new HashMap<>();
+
+    // The game screen for each difficulty played so far
+    private static final Map<Difficulty, CupMemoryGame> games = new HashMap<>();
 
-    // Start the game when we create it
+    // Seed for the next round, from --seed on the command line (null means a random round)
+    private static Long replaySeed;
+
+    // This game's leaderboard (null until it has loaded) and the file its index is saved in
+    private Leaderboard leaderboard;
+    private final Path leaderboardIndex;
+
+    // Make a Normal game screen
     public CupMemoryGame() {
-        loadHighScore(); // Get the saved best score
-        initializeGame(); // Set up the game window
+        this(Difficulty.NORMAL);
+    }
+
+    // Make the game screen (play() shows it and deals the first round)
+    public CupMemoryGame(Difficulty difficulty) {
+        engine = new GameEngine(difficulty);
+        cupBuffer = new int[difficulty.getCupCount()];
+        solver = difficulty.getCupCount() <= PermutationSolver.MAX_CUPS
+            ? new PermutationSolver(difficulty.getCupCount()) : null;
+        submittedGuess = new int[difficulty.getCupCount()];
+        hintBuffer = new int[difficulty.getCupCount()];
+        leaderboardIndex = Paths.get("scores-" + difficulty.getId() + ".index");
+        if (scoresOpened == null) scoresOpened = openScores();
+        if (roundLog == null) roundLog = RoundLog.openInBackground(Paths.get("rounds.log"));
+        recorder = roundLog.recorder();
+        pipeline = new RoundPipeline(difficulty, engine.getAlgorithm());
+        revealShown = () -> GameMetrics.recordSince(GameMetrics.ROUND_START, roundClickNanos);
+        // Update the time display (skipped unless the shown second changed, no text objects made)
+        // It only reads the engine's clock, so a late tick never changes the score
+        // Each tick also checks the shared leaderboard for a new best time set by another game
+        // on this computer (see checkSharedBoard)
+        clockTick = () -> {
+            hud.setTime((int) (engine.getElapsedMillis() / 1000));
+            checkSharedBoard();
+        };
+        revealDone = () -> {
+            reveal.commit();
+            animateShuffle();
+        };
+        initializeGame(); // Set up the game screen
         initComponents(); // Create all the buttons and labels
-        startTimer(); // Start counting time
-        showCorrectOrderTemporarily(); // Show the right order briefly
-        setVisible(true); // Make the window visible
+        loadHighScore(); // Get the saved best score
     }
 
-    // Read the best score from a file
+    // Show the game screen for this difficulty (making it the first time) and deal a new round
+    public static void play(Difficulty difficulty) {
+        long clicked = System.nanoTime();
+        CupMemoryGame game = games.get(difficulty);
+        if (game == null) {
+            game = new CupMemoryGame(difficulty);
+            games.put(difficulty, game);
+        }
+        CupMemoryGame screen = game;
+        ScreenManager.show("game-" + difficulty.getId(), "Cup Memory Game", () -> screen);
+        game.resetGame(clicked);
+    }
+
+    // Run `task` on the Swing thread once the score journal and shared leaderboard are open
+    // (right away if they already are)
+    private static void whenScoresOpen(Runnable task) {
+        if (scoresOpened.isDone()) {
+            task.run();
+        } else {
+            scoresOpened.whenComplete((done, error) -> SwingUtilities.invokeLater(task));
+        }
+    }
+
+    // Get the best score from the leaderboard, loading it on a background thread the first time
     private void loadHighScore() {
-        if (highScoreFile.exists()) {
-            try (Scanner sc = new Scanner(highScoreFile)) {
-                if (sc.hasNextInt()) {
-                    bestTime = sc.nextInt();
+        whenScoresOpen(this::loadHighScoreNow);
+    }
+
+    private void loadHighScoreNow() {
+        Difficulty difficulty = engine.getDifficulty();
+        leaderboard = leaderboards.get(difficulty);
+        if (leaderboard != null) {
+            showBestTime();
+            return;
+        }
+        ScoreJournal journal = scoreJournal;
+        SharedLeaderboard shared = sharedBoard;
+        if (journal == null) return;
+        journal.onIoThread(() -> {
+            Leaderboard board = Leaderboard.open(journal, leaderboardIndex, 5, difficulty);
+            // Games that started before this journal had these rounds should see them too
+            if (shared != null) shared.merge(difficulty, board);
+            return board;
+        }).whenComplete((board, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    System.out.println("Error loading high score.");
+                    return;
                 }
-            } catch (IOException e) {
-                System.out.println("Error loading high score.");
-            }
+                leaderboards.put(difficulty, board);
+                leaderboard = board;
+                showBestTime();
+            }));
+    }
+
+    // Put the leaderboard's best time on the screen
+    private void showBestTime() {
+        bestTime = Math.min(bestTime, leaderboard.bestTime());
+        hud.setHighScore(bestTime);
+    }
+
+    // If any game on this computer finished a round since last time, show the best time now
+    // (checking is one read of shared memory, so this runs every clock tick)
+    private void checkSharedBoard() {
+        if (sharedBoard == null) return;
+        long changes = sharedBoard.changes();
+        if (changes == sharedChanges) return;
+        sharedChanges = changes;
+        long best = sharedBoard.bestTime(engine.getDifficulty());
+        if (best < bestTime) {
+            bestTime = best;
+            hud.setHighScore(bestTime);
         }
     }
 
-    // Save the best score to a file
-    private void saveHighScore() {
-        try (PrintWriter pw = new PrintWriter(highScoreFile)) {
-            pw.println(bestTime);
+    // Record the finished round in the score journal and bring the leaderboard up to date
+    // (both on a background thread), then run `after` on the Swing thread
+    private void saveRound(Runnable after) {
+        long finishedAt = System.currentTimeMillis();
+        ScoreJournal.Entry entry = new ScoreJournal.Entry(finishedAt, engine.getElapsedMillis(),
+            engine.getAttempts(), engine.getLastCorrect(), engine.getSeed(), engine.getDifficulty());
+        Difficulty difficulty = engine.getDifficulty();
+        long elapsedMillis = engine.getElapsedMillis();
+        int attempts = engine.getAttempts();
+        // (the journal is open long before a round can be won, but a round is never lost if it isn't)
+        whenScoresOpen(() -> saveRoundNow(entry, difficulty, elapsedMillis, attempts, finishedAt, after));
+    }
+
+    private void saveRoundNow(ScoreJournal.Entry entry, Difficulty difficulty, long elapsedMillis, int attempts,
+                              long finishedAt, Runnable after) {
+        // Every other game running here sees the time right away
+        if (sharedBoard != null) sharedBoard.publish(difficulty, elapsedMillis, attempts, finishedAt);
+        ScoreJournal journal = scoreJournal;
+        if (journal == null) {
+            after.run();
+            return;
+        }
+        journal.append(entry);
+        Leaderboard board = leaderboard;
+        journal.onIoThread(() -> {
+            long start = System.nanoTime();
+            GameEvents.ScoreSave event = new GameEvents.ScoreSave();
+            event.begin();
+            if (board != null) {
+                board.catchUp(journal);
+                board.save(leaderboardIndex);
+            }
+            if (event.shouldCommit()) {
+                event.difficulty = difficulty.getId();
+                event.elapsedMillis = elapsedMillis;
+                event.commit();
+            }
+            GameMetrics.recordSince(GameMetrics.SCORE_SAVE, start);
+            return null;
+        }).whenComplete((done, error) -> {
+            if (error != null) System.out.println("Error saving high score.");
+            SwingUtilities.invokeLater(after);
+        });
+    }
+
+    // Open the score journal (bringing over the best time from an old highscore.txt) and the
+    // shared leaderboard on the journal's background thread
+    private static CompletableFuture<Void> openScores() {
+        ScoreJournal journal = ScoreJournal.openLater(Paths.get("scores.journal"));
+        return journal.onIoThread(() -> {
+            scoreJournal = openScoreJournal(journal);
+            sharedBoard = openSharedLeaderboard();
+            return null;
+        });
+    }
+
+    // Open the score journal's file, or return null if it can't be used
+    private static ScoreJournal openScoreJournal(ScoreJournal journal) {
+        try {
+            journal.openFile();
+            journal.importLegacyHighScore(new File("highscore.txt"));
+            return journal;
         } catch (IOException e) {
-            System.out.println("Error saving high score.");
+            System.out.println("Error opening score journal, scores won't be saved.");
+            return null;
         }
     }
 
-    // Set up the main game window
-    private void initializeGame() {
-        setTitle("Cup Memory Game");
-        setSize(800, 700);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setLocationRelativeTo(null);  // Center the window
-        setLayout(new BorderLayout());
-        generateCupOrder();           // Create a random order of cups
+    // Open the leaderboard shared by every game on this computer, or return null if it can't be used
+    private static SharedLeaderboard openSharedLeaderboard() {
+        try {
+            return SharedLeaderboard.open(Paths.get("leaderboard.shm"));
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error opening shared leaderboard, other games' times won't show live.");
+            return null;
+        }
     }
 
-    // Mix up the cups in a random order
-    private void generateCupOrder() {
-        List<String> cups = new ArrayList<>(Arrays.asList(colors));
-        Collections.shuffle(cups);     // Mix them up randomly
-        correctOrder = new ArrayList<>(cups);
-        shuffledOrder = new ArrayList<>(correctOrder);
-        System.out.println("Correct order (hidden): " + correctOrder);
+    // Set up the game screen
+    private void initializeGame() {
+        setLayout(new BorderLayout());
+        ScreenManager.frame().addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                recorder.quit(); // Log the unfinished round before the program ends
+            }
+        });
+        // Going to another screen stops this round (a new one is dealt when the screen comes back)
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                leave();
+            }
+        });
     }
 
-    // Make cup pictures the right size
-    private ImageIcon scaleImage(String path) {
-        ImageIcon icon = new ImageIcon(path);
-        Image scaled = icon.getImage().getScaledInstance(60, 90, Image.SCALE_SMOOTH);
-        return new ImageIcon(scaled);
+    // Stop the round's clock and animations and log it as quit (a won round is already logged)
+    // (the Animator would drop them anyway once this screen is hidden; this makes it right away)
+    private void leave() {
+        recorder.quit();
+        Animator.shared().cancel(clockAnimation);
+        Animator.shared().cancel(revealAnimation);
+        correctPanel.clear();
+        allowInput = false;
     }
 
-    // Load all the cup pictures from files
-    private void loadCupIcons() {
-        cupIcons.put("Red", scaleImage("src/images/red.png"));
-        cupIcons.put("Blue", scaleImage("src/images/blue.png"));
-        cupIcons.put("Purple", scaleImage("src/images/purple.png"));
-        cupIcons.put("Orange", scaleImage("src/images/orange.png"));
-        cupIcons.put("Pink", scaleImage("src/images/pink.png"));
-        cupIcons.put("Green", scaleImage("src/images/green.png"));
+    // Mix up the cups in a random order (or the order from --seed, the first time)
+    // Returns the round whose reveal was drawn ahead of time, or null if it wasn't ready
+    private RoundPipeline.Round generateCupOrder() {
+        RoundPipeline.Round next = pipeline.take();
+        if (replaySeed != null) {
+            engine.newRound(replaySeed);
+            replaySeed = null;
+            next = null;
+        } else if (next != null) {
+            engine.newRound(next.getSeed());
+            if (!next.matches(engine)) next = null;
+        } else {
+            engine.newRound();
+        }
+        recorder.started(engine);
+        if (solver != null) solver.reset();
+        GameEvents.RoundStart event = new GameEvents.RoundStart();
+        if (event.shouldCommit()) {
+            event.difficulty = engine.getDifficulty().getId();
+            event.cups = engine.getCupCount();
+            event.seed = engine.getSeed();
+            event.prepared = next != null;
+            event.commit();
+        }
+        return next;
     }
 
-    // Create all the parts of the game window
+    // Create all the parts of the game screen
     private void initComponents() {
-        loadCupIcons();  // Load all cup pictures first
-
         // Create the top part with title and scores
         JPanel topPanel = new JPanel();
         topPanel.setLayout(new BoxLayout(topPanel, BoxLayout.Y_AXIS));
@@ -138,33 +352,14 @@ public class CupMemoryGame extends JFrame {
         titleLabel.setForeground(Color.BLACK);
         titleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
 
-        // Timer display
-        timerLabel = new JLabel("Time: 00:00", SwingConstants.CENTER);
-        timerLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
-        timerLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-
-        // How many cups are correct
-        correctLabel = new JLabel("0 Correct", SwingConstants.CENTER);
-        correctLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
-        correctLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-
-        // How many times the player tried
-        attemptsLabel = new JLabel("Attempts: 0", SwingConstants.CENTER);
-        attemptsLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
-        attemptsLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-
-        // Best time so far
-        highScoreLabel = new JLabel("High Score: " + formatTime(bestTime), SwingConstants.CENTER);
-        highScoreLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
-        highScoreLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        // Time, correct count, attempts and best time so far
+        hud = new HudPanel();
+        hud.setHighScore(bestTime);
 
         // Add everything to the top panel
         topPanel.add(titleLabel);
         topPanel.add(Box.createRigidArea(new Dimension(0, 8)));
-        topPanel.add(timerLabel);
-        topPanel.add(correctLabel);
-        topPanel.add(attemptsLabel);
-        topPanel.add(highScoreLabel);
+        topPanel.add(hud);
         add(topPanel, BorderLayout.NORTH);
 
         // Create the middle part with 3 sections
@@ -172,18 +367,19 @@ public class CupMemoryGame extends JFrame {
         mainCenterPanel.setBackground(new Color(245, 245, 255));
 
         // Section 1: Shows the shuffled cups
-        correctPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 10));
+        correctPanel = new CupRow();
         correctPanel.setBackground(new Color(245, 245, 255));
         correctPanel.setBorder(BorderFactory.createTitledBorder("Shuffled Cups"));
         mainCenterPanel.add(correctPanel);
 
-        // Section 2: Shows buttons to click
-        cupButtonsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 10));
+        // Section 2: Shows cups to click
+        cupButtonsPanel = new CupRow();
         cupButtonsPanel.setBackground(new Color(245, 245, 255));
+        cupButtonsPanel.setClickListener(this::cupClicked);
         mainCenterPanel.add(cupButtonsPanel);
 
         // Section 3: Shows what the player guessed
-        guessPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 10));
+        guessPanel = new CupRow();
         guessPanel.setBackground(new Color(255, 255, 240));
         guessPanel.setBorder(BorderFactory.createTitledBorder("Your Guess"));
         mainCenterPanel.add(guessPanel);
@@ -212,6 +408,18 @@ public class CupMemoryGame extends JFrame {
         undoButton.setPreferredSize(new Dimension(120, 40));
         undoButton.addActionListener(e -> undoLastGuess());
 
+        // Create the Hint button (fills in the best guess from the feedback so far)
+        JButton hintButton = new JButton("Hint");
+        hintButton.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        hintButton.setBackground(new Color(186, 85, 211));
+        hintButton.setForeground(Color.BLACK);
+        hintButton.setFocusPainted(false);
+        hintButton.setOpaque(true);
+        hintButton.setBorderPainted(false);
+        hintButton.setPreferredSize(new Dimension(120, 40));
+        hintButton.setEnabled(solver != null);
+        hintButton.addActionListener(e -> showHint());
+
         // Create the Reset button (starts over)
         JButton resetButton = new JButton("Reset");
         resetButton.setFont(new Font("Segoe UI", Font.PLAIN, 16));
@@ -221,7 +429,7 @@ public class CupMemoryGame extends JFrame {
         resetButton.setOpaque(true);
         resetButton.setBorderPainted(false);
         resetButton.setPreferredSize(new Dimension(120, 40));
-        resetButton.addActionListener(e -> resetGame());
+        resetButton.addActionListener(e -> resetGame(System.nanoTime()));
 
         // Create the Home button (goes back to main menu)
         JButton homeButton = new JButton("Home");
@@ -232,19 +440,14 @@ public class CupMemoryGame extends JFrame {
         homeButton.setOpaque(true);
         homeButton.setBorderPainted(false);
         homeButton.setPreferredSize(new Dimension(120, 40));
-        homeButton.addActionListener(e -> {
-            timer.stop(); // Stop counting time
-            dispose();    // Close this window
-            HomeScreen.show(() -> {
-                new CupMemoryGame(); // Start a new game
-            });
-        });
+        homeButton.addActionListener(e -> HomeScreen.show(CupMemoryGame::play));
 
         // Put all buttons at the bottom
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
         controlPanel.setBackground(new Color(245, 245, 255));
         controlPanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 10, 0));
         controlPanel.add(undoButton);
+        controlPanel.add(hintButton);
         controlPanel.add(resetButton);
         controlPanel.add(submitButton);
         controlPanel.add(homeButton);
@@ -252,297 +455,292 @@ public class CupMemoryGame extends JFrame {
         add(controlPanel, BorderLayout.SOUTH);
     }
 
-    // Turn seconds into minutes:seconds format
-    private String formatTime(int timeInSeconds) {
-        if (timeInSeconds == Integer.MAX_VALUE) return "--:--";
-        int minutes = timeInSeconds / 60;
-        int seconds = timeInSeconds % 60;
-        return String.format("%02d:%02d", minutes, seconds);
+    // Turn milliseconds into minutes:seconds.milliseconds format
+    static String formatTime(long timeMillis) {
+        char[] text = new char[24];
+        int millis = timeMillis >= HudPanel.NO_TIME ? HudPanel.NO_TIME : (int) timeMillis;
+        int length = HudPanel.writeTimeMillis(millis, text, 0);
+        return new String(text, 0, length);
     }
 
-    // Show the correct order for 3 seconds, then shuffle
-    private void showCorrectOrderTemporarily() {
-        // Show each cup in the right order
-        for (String color : correctOrder) {
-            JLabel cup = new JLabel(cupIcons.get(color));
-            correctPanel.add(cup);
+    // Show a message box with the round clock paused, so reading it doesn't cost the player time
+    private void showMessage(String message) {
+        engine.getClock().pause();
+        recorder.paused();
+        GameEvents.MessageDialog event = new GameEvents.MessageDialog();
+        event.begin();
+        try {
+            JOptionPane.showMessageDialog(this, message);
+        } finally {
+            engine.getClock().resume();
+            recorder.resumed();
+            event.message = message;
+            event.commit();
         }
-        correctPanel.revalidate();
-        correctPanel.repaint();
+    }
 
-        // Wait 3 seconds, then start shuffling
-        new Timer(3000, e -> {
-            ((Timer) e.getSource()).stop();
-            animateShuffle();
-        }).start();
+    // Show the correct order for a few seconds (3 on Normal), then shuffle
+    // (from the picture of it made ahead of time, if the round was)
+    private void showCorrectOrderTemporarily(RoundPipeline.Round prepared) {
+        // Show each cup in the right order
+        engine.copyCorrectOrder(cupBuffer);
+        correctPanel.showCups(cupBuffer, engine.getCupCount(), prepared != null ? prepared.getReveal() : null);
+        correctPanel.afterNextPaint(revealShown);
+
+        // Wait, then start shuffling (dropping a reveal still waiting from before a Reset)
+        reveal = new GameEvents.Reveal();
+        reveal.plannedMillis = engine.getDifficulty().getRevealMillis();
+        reveal.begin();
+        Animator.shared().cancel(revealAnimation);
+        revealAnimation = Animator.shared().delay(this, engine.getDifficulty().getRevealMillis(), revealDone);
     }
 
     // Mix up the cups with animation
     private void animateShuffle() {
-        Timer animationTimer = new Timer(100, null);
-        final int[] count = {0};
-
-        animationTimer.addActionListener(e -> {
-            // Shuffle the cups around
-            Collections.shuffle(shuffledOrder);
-            correctPanel.removeAll();
-            for (String color : shuffledOrder) {
-                JLabel cup = new JLabel(cupIcons.get(color));
-                correctPanel.add(cup);
-            }
-            correctPanel.revalidate();
-            correctPanel.repaint();
-
-            count[0]++;
-            // After shuffling 5 times, stop and let player play
-            if (count[0] >= 5) {
-                animationTimer.stop();
-                guessPanel.setBackground(Color.WHITE);
-                displayCupButtons();  // Show buttons to click
-                allowInput = true;    // Let player start clicking
-            }
-        });
-        animationTimer.start();
+        animateShuffle(engine.getDifficulty().getShuffleCycles());
     }
 
-    // Create buttons for each cup color
-    private void displayCupButtons() {
-        cupButtonsPanel.removeAll();
-        cupButtons.clear();
-
-        // Make a button for each color
-        for (String color : colors) {
-            JButton cupButton = new JButton(cupIcons.get(color));
-            cupButton.setActionCommand(color);
-            cupButton.setBorderPainted(false);
-            cupButton.setContentAreaFilled(false);
-            cupButton.setFocusPainted(false);
-
-            // Make smaller versions for animation
-            ImageIcon originalIcon = cupIcons.get(color);
-            Image originalImage = originalIcon.getImage();
-            Image shrunkImage = originalImage.getScaledInstance(50, 75, Image.SCALE_SMOOTH);
-            ImageIcon shrunkIcon = new ImageIcon(shrunkImage);
-
-            // What happens when player clicks the button
-            cupButton.addActionListener(evt -> {
-                if (!allowInput) return;  // Don't do anything if input is disabled
-
-                // Make button shrink then grow back (animation)
-                Timer shrink = new Timer(0, null);
-                Timer grow = new Timer(100, null);
-
-                shrink.addActionListener(e -> {
-                    cupButton.setIcon(shrunkIcon);
-                    shrink.stop();
-                    grow.start();
-                });
-
-                grow.addActionListener(e -> {
-                    cupButton.setIcon(originalIcon);
-                    grow.stop();
-                });
+    // Slide the cups into a new order, then do it again until no shuffles are left
+    private void animateShuffle(int shufflesLeft) {
+        if (shufflesLeft == 0) {
+            recorder.ready();
+            guessPanel.setBackground(Color.WHITE);
+            displayCupButtons();  // Show cups to click
+            allowInput = true;    // Let player start clicking
+            // Make the next round while the player works this one out
+            pipeline.prepare(engine.pickSeed(), correctPanel);
+            return;
+        }
+        // Shuffle the cups around (only numbers are copied, nothing is rebuilt)
+        engine.shuffleDisplay();
+        recorder.shuffled();
+        SoundEngine.playShared(SoundEngine.SHUFFLE);
+        engine.copyShuffledOrder(cupBuffer);
+        correctPanel.animateTo(cupBuffer, engine.getCupCount(), SHUFFLE_MILLIS,
+            () -> animateShuffle(shufflesLeft - 1));
+    }
 
-                shrink.start();
-                addCupToGuess(evt.getActionCommand(), cupButton);
-            });
+    // Show one cup of each color to click
+    private void displayCupButtons() {
+        for (int i = 0; i < engine.getCupCount(); i++) {
+            cupBuffer[i] = i;
+        }
+        cupButtonsPanel.clearHighlights();
+        cupButtonsPanel.showCups(cupBuffer, engine.getCupCount());
+    }
 
-            cupButtonsPanel.add(cupButton);
-            cupButtons.add(cupButton);
+    // What happens when player clicks a cup
+    private void cupClicked(int index) {
+        if (!allowInput) return;  // Don't do anything if input is disabled
+        long start = System.nanoTime();
+        GameEvents.Guess event = new GameEvents.Guess();
+        event.begin();
+        cupButtonsPanel.press(index); // Make the cup shrink then grow back
+        SoundEngine.playShared(SoundEngine.CLICK);
+        int color = cupButtonsPanel.cupAtIndex(index);
+        addCupToGuess(color, index);
+        if (event.shouldCommit()) {
+            event.color = color;
+            event.guessed = engine.getGuessSize();
+            event.commit();
         }
-        cupButtonsPanel.revalidate();
-        cupButtonsPanel.repaint();
+        GameMetrics.recordSince(GameMetrics.GUESS, start);
     }
 
     // Add a cup to the player's guess
-    private void addCupToGuess(String color, JButton sourceButton) {
+    private void addCupToGuess(int color, int sourceIndex) {
         // Only add if we haven't guessed all cups yet
-        if (playerGuess.size() < colors.length) {
-            playerGuess.add(color);
-            JLabel cupLabel = new JLabel(cupIcons.get(color));
-            cupLabel.setName(color);
-            guessPanel.add(cupLabel);  // Show it in the guess area
-            guessPanel.revalidate();
-            guessPanel.repaint();
-            // Highlight the button to show it was clicked
-            sourceButton.setBorder(BorderFactory.createLineBorder(Color.YELLOW, 3));
+        if (engine.addGuess(color)) {
+            recorder.added(color);
+            showGuess(); // Show it in the guess area
+            if (instantFeedback) {
+                // The engine already knows whether this cup is right, so there's nothing to work out
+                int position = engine.getGuessSize() - 1;
+                guessPanel.setMark(position, engine.isRightAt(position) ? CupRow.MARK_RIGHT : CupRow.MARK_WRONG);
+                hud.setCorrect(engine.getCorrectSoFar());
+            }
+            // Highlight the cup to show it was clicked
+            cupButtonsPanel.setHighlighted(sourceIndex, true);
         }
     }
 
+    // Draw the player's guess so far
+    private void showGuess() {
+        int size = engine.copyGuess(cupBuffer);
+        guessPanel.showCups(cupBuffer, size);
+    }
+
     // What happens when player clicks Submit button
     private class SubmitButtonListener implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
             // Make sure player guessed all cups
-            if (playerGuess.size() < colors.length) {
-                JOptionPane.showMessageDialog(null, "Please select all cups before submitting.");
+            if (!engine.isGuessFull()) {
+                showMessage("Please select all cups before submitting.");
                 return;
             }
 
-            // Check if the guess is right
-            boolean isCorrect = checkPlayerGuess(playerGuess);
-
-            // Count this attempt
-            attempts++;
-            attemptsLabel.setText("Attempts: " + attempts);
+            // Check if the guess is right (this also counts the attempt)
+            long start = System.nanoTime();
+            GameEvents.Submit event = new GameEvents.Submit();
+            event.begin();
+            engine.copyGuess(submittedGuess);
+            int correctCount = engine.submit();
+            recorder.submitted(correctCount);
+            if (solver != null) solver.update(submittedGuess, correctCount);
+            hud.setCorrect(correctCount);
+            hud.setAttempts(engine.getAttempts());
+            if (event.shouldCommit()) {
+                event.correct = correctCount;
+                event.attempt = engine.getAttempts();
+                event.solved = engine.isSolved();
+                event.commit();
+            }
+            GameMetrics.recordSince(GameMetrics.SUBMIT, start);
 
-            if (isCorrect) {
+            if (engine.isSolved()) {
                 // Player won!
-                timer.stop();  // Stop the timer
+                recorder.won(engine.getElapsedMillis());
+                SoundEngine.playShared(SoundEngine.WIN);
+                Animator.shared().cancel(clockAnimation); // Stop the time display
+                hud.setTime((int) (engine.getElapsedMillis() / 1000));
+                if (instantFeedback) {
+                    // Practice rounds don't count towards best times
+                    showCongratulationScreen(0);
+                    return;
+                }
 
                 // Check if this is a new best time
-                if (elapsedTime < bestTime) {
-                    bestTime = elapsedTime;
-                    saveHighScore();
-                    highScoreLabel.setText("High Score: " + formatTime(bestTime));
+                int rank = leaderboard != null ? leaderboard.rankOf(engine.getElapsedMillis()) : 0;
+                if (engine.getElapsedMillis() < bestTime) {
+                    bestTime = engine.getElapsedMillis();
+                    hud.setHighScore(bestTime);
                 }
 
-                showCongratulationScreen();  // Show win message
+                // Save the round, then show the win message with the updated stats
+                saveRound(() -> {
+                    if (leaderboard != null) showBestTime();
+                    showCongratulationScreen(rank);
+                });
             } else {
-                // Player was wrong, let them try again
-                JOptionPane.showMessageDialog(null, "Wrong order! Try again.");
-                playerGuess.clear();
-                guessPanel.removeAll();
-                guessPanel.revalidate();
-                guessPanel.repaint();
-                // Remove highlights from buttons
-                for (JButton button : cupButtons) {
-                    button.setBorder(UIManager.getBorder("Button.border"));
-                }
+                // Player was wrong, let them try again (the engine already cleared the guess)
+                SoundEngine.playShared(SoundEngine.WRONG);
+                // With instant feedback the player has already seen which cups were wrong
+                if (!instantFeedback) showMessage("Wrong order! Try again.");
+                guessPanel.clear();
+                guessPanel.clearMarks();
+                // Remove highlights from cups
+                cupButtonsPanel.clearHighlights();
             }
         }
     }
 
-    // Check if the player's guess matches the correct order
-    private boolean checkPlayerGuess(List<String> playerGuess) {
-        int correctCount = 0;
-        // Compare each position
-        for (int i = 0; i < correctOrder.size(); i++) {
-            if (correctOrder.get(i).equals(playerGuess.get(i))) {
-                correctCount++;
-            }
-        }
-        // Update the score display
-        correctLabel.setText(correctCount + " Correct");
-        // Return true if all are correct
-        return correctCount == correctOrder.size();
-    }
-
-    // Start the game over from the beginning
-    private void resetGame() {
-        generateCupOrder(); // Make new random order
-        correctLabel.setText("0 Correct");
-        attempts = 0;
-        attemptsLabel.setText("Attempts: 0");
-        playerGuess.clear(); // Clear player's guess
+    // Start the game over from the beginning (clickedNanos is when the player asked for it)
+    private void resetGame(long clickedNanos) {
+        roundClickNanos = clickedNanos;
+        recorder.reset();
+        // Make new random order (also clears guess, attempts and time)
+        RoundPipeline.Round prepared = generateCupOrder();
+        instantFeedback = HomeScreen.isInstantFeedback();
+        hud.setCorrect(0);
+        hud.setAttempts(0);
         
         // Clear all the display areas
-        guessPanel.removeAll();
-        cupButtonsPanel.removeAll();
-        correctPanel.removeAll();
-        guessPanel.revalidate();
-        guessPanel.repaint();
-        cupButtonsPanel.revalidate();
-        cupButtonsPanel.repaint();
-        correctPanel.revalidate();
-        correctPanel.repaint();
+        guessPanel.clear();
+        guessPanel.clearMarks();
+        cupButtonsPanel.clear();
+        correctPanel.clear();
         
-        // Reset the timer
-        elapsedTime = 0;
-        timerLabel.setText("Time: 00:00");
-        timer.restart();
+        // Restart the time display
+        hud.setTime(0);
+        Animator.shared().cancel(clockAnimation);
+        clockAnimation = Animator.shared().repeat(this, 250, clockTick);
         allowInput = false; // Don't let player click yet
-        showCorrectOrderTemporarily(); // Show the new order briefly
+        showCorrectOrderTemporarily(prepared); // Show the new order briefly
+    }
+
+    // Replace the player's guess with the solver's best next guess
+    // (the one that rules out the most orders, whatever "N correct" it gets)
+    private void showHint() {
+        if (!allowInput || solver == null || engine.isSolved()) return;
+        solver.suggest(hintBuffer);
+        while (engine.undo()) {
+            recorder.undone();
+        }
+        guessPanel.clearMarks();
+        cupButtonsPanel.clearHighlights();
+        for (int i = 0; i < engine.getCupCount(); i++) {
+            // The cups to click are in color order, so a color's button is at its own number
+            addCupToGuess(hintBuffer[i], hintBuffer[i]);
+        }
+        showGuess();
     }
 
     // Remove the last cup from the player's guess
     private void undoLastGuess() {
         if (!allowInput) return; // Don't do anything if input is disabled
-        if (!playerGuess.isEmpty()) {
-            // Remove from the guess list
-            playerGuess.remove(playerGuess.size() - 1);
-            
+        // Remove from the guess list
+        if (engine.undo()) {
+            recorder.undone();
+            SoundEngine.playShared(SoundEngine.UNDO);
             // Remove from the display
-            Component[] components = guessPanel.getComponents();
-            if (components.length > 0) {
-                guessPanel.remove(components[components.length - 1]);
-                guessPanel.revalidate();
-                guessPanel.repaint();
-                
-                // Remove highlights from all buttons
-                for (JButton button : cupButtons) {
-                    button.setBorder(UIManager.getBorder("Button.border"));
-                }
+            showGuess();
+            if (instantFeedback) {
+                guessPanel.setMark(engine.getGuessSize(), CupRow.NO_MARK);
+                hud.setCorrect(engine.getCorrectSoFar());
             }
+            // Remove highlights from all cups
+            cupButtonsPanel.clearHighlights();
         }
     }
 
-    // Show a celebration window when player wins
-    private void showCongratulationScreen() {
-        JFrame congratsFrame = new JFrame("Congratulations!");
-        congratsFrame.setSize(400, 200);
-        congratsFrame.setLocationRelativeTo(this);
-        congratsFrame.setLayout(new BorderLayout());
-
+    // Show the celebration screen when player wins
+    // rank is where this time placed among the fastest times (0 if it didn't)
+    private void showCongratulationScreen(int rank) {
         // Victory message with time and attempts
-        JLabel message = new JLabel("<html><div style='text-align: center;'>🎉 Congratulations! You guessed correctly! 🎉<br>" +
-            "Time: " + formatTime(elapsedTime) + "<br>" +
-            "Attempts: " + attempts + "</div></html>", SwingConstants.CENTER);
-        message.setFont(new Font("Arial", Font.BOLD, 16));
-        congratsFrame.add(message, BorderLayout.CENTER);
-
-        // Flashing stars animation
-        JLabel animation = new JLabel("✨✨✨", SwingConstants.CENTER);
-        animation.setFont(new Font("Arial", Font.PLAIN, 24));
-        congratsFrame.add(animation, BorderLayout.NORTH);
-
-        // Make the stars flash on and off
-        Timer flashTimer = new Timer(500, new ActionListener() {
-            boolean visible = true;
-            @Override
-            public void actionPerformed(ActionEvent evt) {
-                animation.setVisible(visible);
-                visible = !visible;
-            }
-        });
-        flashTimer.start();
-
-        // Button to play again
-        JButton playAgainButton = new JButton("Play Again");
-        playAgainButton.setForeground(Color.BLACK);
-        playAgainButton.setFocusPainted(false);
-        playAgainButton.setOpaque(true);
-        playAgainButton.setBorderPainted(false);
-        playAgainButton.addActionListener(e -> {
-            congratsFrame.dispose();  // Close this window
-            resetGame(); // Start a new game
-        });
-
-        JPanel buttonPanel = new JPanel();
-        buttonPanel.add(playAgainButton);
-        congratsFrame.add(buttonPanel, BorderLayout.SOUTH);
-
-        congratsFrame.setVisible(true);
+        String message = "<html><div style='text-align: center;'>🎉 Congratulations! You guessed correctly! 🎉<br>" +
+            "Time: " + formatTime(engine.getElapsedMillis()) + "<br>" +
+            "Attempts: " + engine.getAttempts() + statsText(rank) +
+            "<br><span style='font-size: 10px; font-weight: normal;'>Round " + Long.toHexString(engine.getSeed()) +
+            "</span></div></html>";
+        Difficulty difficulty = engine.getDifficulty();
+        ResultsScreen.show(message, () -> play(difficulty));
     }
 
-    // Start the timer that counts seconds
-    private void startTimer() {
-        timer = new Timer(1000, e -> {
-            elapsedTime++;  // Add one second
-            int minutes = elapsedTime / 60;
-            int seconds = elapsedTime % 60;
-            // Update the display
-            timerLabel.setText(String.format("Time: %02d:%02d", minutes, seconds));
-        });
-        timer.start();
+    // Extra lines for the win message: place among the fastest times and average attempts
+    private String statsText(int rank) {
+        if (instantFeedback) return "<br><span style='font-size: 11px; font-weight: normal;'>"
+            + "Practice round with instant feedback, the time isn't saved</span>";
+        if (leaderboard == null) return "";
+        String text = "";
+        if (rank == 1) {
+            text += "<br>New best time!";
+        } else if (rank > 1) {
+            text += "<br>#" + rank + " of your fastest 5 " + engine.getDifficulty().getName() + " times";
+        }
+        text += "<br><span style='font-size: 11px; font-weight: normal;'>Average attempts: "
+            + String.format("%.1f", leaderboard.meanAttempts()) + " over " + leaderboard.getRounds() + " rounds"
+            + "<br>Median time: " + formatTime(leaderboard.percentileTime(50)) + "</span>";
+        return text;
     }
 
     // Start the program
+    // "--seed <hex>" makes the first round the one with that seed (shown on the win screen)
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            HomeScreen.show(() -> {
-                new CupMemoryGame();
-            });
-        });
+        Startup.mainStarted();
+        SoundEngine.startShared(); // Open the sound card and decode the sounds in the background
+        GameMetrics.register();    // Show the latency histograms over JMX
+        EdtWatchdog.startShared(); // Report it when the Swing thread gets stuck
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--seed")) {
+                try {
+                    replaySeed = Long.parseUnsignedLong(args[i + 1], 16);
+                } catch (NumberFormatException e) {
+                    System.out.println("Error: --seed needs a hex number like 1f3a, playing a random round.");
+                }
+            }
+        }
+        CupSprites.preloadAsync(); // Get the cup pictures ready while the menu is showing
+        SwingUtilities.invokeLater(() -> HomeScreen.show(CupMemoryGame::play));
     }
 }
\ No newline at end of file
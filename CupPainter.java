@@ -0,0 +1,260 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Lays out and draws a row of cups: the drawing half of CupRow, without being a Swing component.
+// CupRow keeps one for what's on screen; RoundPipeline uses its own on the round pipeline thread
+// to draw the next round's reveal ahead of time (Swing components may only be touched on the
+// Swing thread, so it can't borrow a CupRow for that). Use each painter from one thread only.
+public class CupPainter {
+
+    // Space between cups, like the FlowLayout the game used before
+    private static final int GAP_X = 15;
+    private static final int GAP_Y = 10;
+
+    // Smallest and biggest a cup is allowed to get
+    private static final int MIN_CUP_WIDTH = 8;
+    private static final int MAX_CUP_WIDTH = 4 * CupSprites.LARGE_WIDTH;
+
+    // Marks drawn around guessed cups in instant feedback mode
+    public static final byte NO_MARK = 0;
+    public static final byte MARK_RIGHT = 1; // Green: the right cup for its spot
+    public static final byte MARK_WRONG = 2; // Red: the wrong cup
+
+    private static final Stroke HIGHLIGHT_STROKE = new BasicStroke(3);
+    private static final Color RIGHT_COLOR = new Color(40, 170, 60);
+    private static final Color WRONG_COLOR = new Color(210, 40, 40);
+
+    // Size of the row, the space its border takes, and the color behind the cups (null for none)
+    private int width;
+    private int height;
+    final Insets insets = new Insets(0, 0, 0, 0);
+    private Color background;
+
+    // The cups to show (color numbers) and how many of them there are
+    int[] cups = new int[0];
+    int count = 0;
+
+    // Cups drawn with a yellow outline, and the marks drawn around guessed cups
+    boolean[] highlighted = new boolean[0];
+    byte[] marks = new byte[0];
+
+    // The cup drawn smaller while it's pressed (-1 for none) and its size now (1 is full size)
+    int pressed = -1;
+    float pressScale = 1;
+
+    // Swap animation: where each cup started (slot number) and how far along it is (0 to 1)
+    int[] fromSlot = new int[0];
+    float progress = 1;
+
+    // Where cups go, worked out again only when the size or cup count changes
+    private int layoutWidth = -1;
+    private int layoutHeight = -1;
+    private int layoutCount = -1;
+    private int cupWidth;
+    private int cupHeight;
+    private int columns;
+    private int gapX;
+    private int gapY;
+
+    // Size in screen pixels cups are drawn at now (written by the painting thread, read by the
+    // SpriteCache thread), and the cup pictures made for that size so far, by color
+    private volatile int spriteWidth;
+    private volatile int spriteHeight;
+    private BufferedImage[] sized = new BufferedImage[0];
+
+    // Who to tell when a cup picture made in the background is ready; with none, pictures are
+    // made there and then (fine off the Swing thread)
+    private final SpriteCache.Requester requester;
+
+    // Reused by the hot paint path
+    private final Rectangle scratch = new Rectangle();
+
+    public CupPainter(SpriteCache.Requester requester) {
+        this.requester = requester;
+    }
+
+    // Set the size of the row and the space its border takes
+    public void setSize(int width, int height, Insets border) {
+        this.width = width;
+        this.height = height;
+        insets.set(border.top, border.left, border.bottom, border.right);
+    }
+
+    public void setBackground(Color background) {
+        this.background = background;
+    }
+
+    // Show these cups (the array is copied, so the caller can keep reusing it)
+    public void setCups(int[] from, int howMany) {
+        if (cups.length < howMany) {
+            cups = new int[howMany];
+            highlighted = Arrays.copyOf(highlighted, howMany);
+            marks = Arrays.copyOf(marks, howMany);
+        }
+        System.arraycopy(from, 0, cups, 0, howMany);
+        count = howMany;
+    }
+
+    // Draw these cups, standing still, into a new picture the size of the row on a screen with
+    // this scale (null if the row has no size)
+    public BufferedImage renderStill(int[] from, int howMany, double scale) {
+        if (width <= 0 || height <= 0) return null;
+        setCups(from, howMany);
+        BufferedImage image = new BufferedImage((int) Math.round(width * scale), (int) Math.round(height * scale),
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.scale(scale, scale);
+        paint(g2);
+        g2.dispose();
+        return image;
+    }
+
+    // Whether cup pictures this size (in screen pixels) are the ones being drawn now
+    public boolean drawsSpritesAt(int width, int height) {
+        return width == spriteWidth && height == spriteHeight;
+    }
+
+    // Which cup is at this point, or -1 for none
+    public int cupAt(int x, int y) {
+        updateLayout();
+        int column = (x - insets.left - rowStart(0)) / (cupWidth + gapX);
+        int row = (y - insets.top - gapY) / (cupHeight + gapY);
+        if (x < insets.left || y < insets.top + gapY || column < 0 || column >= columns || row < 0) return -1;
+        int index = row * columns + column;
+        if (index >= count) return -1;
+        // Make sure the point is on the cup, not in the gap after it
+        Rectangle bounds = cupBounds(index);
+        return bounds.contains(x, y) ? index : -1;
+    }
+
+    // Where a cup is drawn (when it isn't moving)
+    public Rectangle cupBounds(int index) {
+        updateLayout();
+        return new Rectangle(slotX(index), slotY(index), cupWidth, cupHeight);
+    }
+
+    private int slotX(int index) {
+        return insets.left + rowStart(index / columns) + (index % columns) * (cupWidth + gapX);
+    }
+
+    private int slotY(int index) {
+        return insets.top + gapY + (index / columns) * (cupHeight + gapY);
+    }
+
+    // Work out the biggest cup size that fits every cup in the space we have
+    private void updateLayout() {
+        int width = Math.max(0, this.width - insets.left - insets.right);
+        int height = Math.max(0, this.height - insets.top - insets.bottom);
+        if (width == layoutWidth && height == layoutHeight && count == layoutCount) return;
+        layoutWidth = width;
+        layoutHeight = height;
+        layoutCount = count;
+
+        int w = MAX_CUP_WIDTH;
+        while (true) {
+            int h = w * CupSprites.LARGE_HEIGHT / CupSprites.LARGE_WIDTH;
+            gapX = Math.max(2, GAP_X * w / CupSprites.LARGE_WIDTH);
+            gapY = Math.max(2, GAP_Y * w / CupSprites.LARGE_WIDTH);
+            columns = Math.max(1, (width - gapX) / (w + gapX));
+            int rows = (Math.max(count, 1) + columns - 1) / columns;
+            if (w <= MIN_CUP_WIDTH || rows * (h + gapY) + gapY <= height) {
+                cupWidth = w;
+                cupHeight = h;
+                return;
+            }
+            w--;
+        }
+    }
+
+    // Left edge of a row, so each row is centered like FlowLayout.CENTER
+    private int rowStart(int row) {
+        int inRow = Math.min(columns, count - row * columns);
+        int rowWidth = inRow * cupWidth + (inRow - 1) * gapX;
+        return Math.max(0, (layoutWidth - rowWidth) / 2);
+    }
+
+    // Preferred size of a row showing this many cups (at most 6 across) at the atlas cup size
+    static Dimension preferredSize(int cupCount, Insets insets) {
+        int shown = Math.max(1, Math.min(cupCount, 6));
+        return new Dimension(shown * (CupSprites.LARGE_WIDTH + GAP_X) + GAP_X + insets.left + insets.right,
+            CupSprites.LARGE_HEIGHT + 2 * GAP_Y + insets.top + insets.bottom);
+    }
+
+    // Draw the background and every cup that overlaps the clip
+    public void paint(Graphics2D g2) {
+        double scale = g2.getTransform().getScaleX();
+        if (background != null) {
+            g2.setColor(background);
+            g2.fillRect(0, 0, width, height);
+        }
+        if (count == 0) return;
+        updateLayout();
+        useSpriteSize((int) Math.round(cupWidth * scale), (int) Math.round(cupHeight * scale));
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        scratch.setBounds(0, 0, 0, 0);
+        Rectangle clip = g2.getClipBounds(scratch);
+        if (clip.isEmpty()) clip.setBounds(0, 0, width, height);
+        // Smoothstep easing: cups speed up, then slow down as they land
+        float t = progress * progress * (3 - 2 * progress);
+        float lift = (float) Math.sin(Math.PI * progress) * cupHeight * 0.4f;
+        for (int i = 0; i < count; i++) {
+            int x = slotX(i);
+            int y = slotY(i);
+            if (progress < 1 && fromSlot[i] != i) {
+                // Moving cups go between their old and new place, on a curve so they don't
+                // pass through each other: cups going right arc up, cups going left arc down
+                int startX = slotX(fromSlot[i]);
+                int startY = slotY(fromSlot[i]);
+                float arc = x >= startX ? -lift : lift;
+                x = Math.round(startX + (x - startX) * t);
+                y = Math.round(startY + (y - startY) * t + arc);
+            }
+            if (x > clip.x + clip.width || x + cupWidth < clip.x - 3
+                    || y > clip.y + clip.height || y + cupHeight < clip.y - 3) {
+                continue; // Not in the part being redrawn
+            }
+            if (i == pressed && pressScale < 1) {
+                // Pushed cups are drawn smaller, centered where the full-size one goes
+                int w = Math.round(cupWidth * pressScale);
+                int h = Math.round(cupHeight * pressScale);
+                g2.drawImage(sprite(cups[i], scale), x + (cupWidth - w) / 2, y + (cupHeight - h) / 2, w, h, null);
+            } else {
+                g2.drawImage(sprite(cups[i], scale), x, y, cupWidth, cupHeight, null);
+            }
+            if (i < highlighted.length && highlighted[i]) {
+                g2.setColor(Color.YELLOW);
+                g2.setStroke(HIGHLIGHT_STROKE);
+                g2.drawRect(x - 2, y - 2, cupWidth + 3, cupHeight + 3);
+            } else if (i < marks.length && marks[i] != NO_MARK) {
+                g2.setColor(marks[i] == MARK_RIGHT ? RIGHT_COLOR : WRONG_COLOR);
+                g2.setStroke(HIGHLIGHT_STROKE);
+                g2.drawRect(x - 2, y - 2, cupWidth + 3, cupHeight + 3);
+            }
+        }
+    }
+
+    // Start drawing cups at this many screen pixels (forgets the pictures made for the old size)
+    private void useSpriteSize(int width, int height) {
+        if (width == spriteWidth && height == spriteHeight) return;
+        spriteWidth = width;
+        spriteHeight = height;
+        Arrays.fill(sized, null);
+    }
+
+    // The picture to draw a cup with: the atlas cup if that's already the right size, otherwise one
+    // made for this size, or the atlas cup stretched until that's ready
+    private BufferedImage sprite(int color, double scale) {
+        if (spriteWidth == CupSprites.LARGE_WIDTH && spriteHeight == CupSprites.LARGE_HEIGHT) {
+            return CupSprites.image(color);
+        }
+        if (color >= sized.length) sized = Arrays.copyOf(sized, Math.max(color + 1, sized.length * 2));
+        BufferedImage picture = sized[color];
+        if (picture == null) {
+            picture = SpriteCache.shared().get(color, spriteWidth, spriteHeight, scale, requester);
+            if (picture == null) return CupSprites.image(color);
+            sized[color] = picture;
+        }
+        return picture;
+    }
+}
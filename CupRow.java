@@ -0,0 +1,375 @@
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import javax.swing.*;
+
+// A row of cups painted straight from an array of color numbers.
+// It replaces a panel full of JLabels/JButtons: changing the cups just copies numbers and
+// repaints, with no components made and no layout pass, however many cups there are.
+// Cups grow to fill the row when the window is made bigger, and shrink to fit (and wrap onto
+// more lines) when the board is big. They're drawn from pictures made at exactly the size they
+// cover in screen pixels (see SpriteCache), so they stay sharp at any size and on HiDPI screens.
+// Where cups go and how they're drawn is up to a CupPainter; this class is the Swing side.
+//
+// The cups are drawn into a VolatileImage (kept in video memory where the graphics card allows)
+// and only the parts that changed are drawn again; everything else is a copy of that image.
+// animateTo() slides cups to new places at the screen's refresh rate instead of jumping,
+// and press() shrinks a cup and grows it back; both run on the shared Animator.
+public class CupRow extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    // How long a clicked cup takes to shrink and grow back, and how small it gets
+    private static final int PRESS_MILLIS = 150;
+    private static final float PRESS_SCALE = (float) CupSprites.SMALL_WIDTH / CupSprites.LARGE_WIDTH;
+
+    // Marks drawn around guessed cups in instant feedback mode
+    public static final byte NO_MARK = CupPainter.NO_MARK;
+    public static final byte MARK_RIGHT = CupPainter.MARK_RIGHT; // Green: the right cup for its spot
+    public static final byte MARK_WRONG = CupPainter.MARK_WRONG; // Red: the wrong cup
+
+    // Told when a cup picture made in the background for this row is ready
+    private final SpriteCache.Requester spriteRequester = new SpriteCache.Requester() {
+        @Override
+        public boolean wants(int width, int height) {
+            return painter.drawsSpritesAt(width, height);
+        }
+
+        @Override
+        public void ready() {
+            changed(0, 0, getWidth(), getHeight()); // Swap the stretched cups for the smooth ones
+        }
+    };
+
+    // Lays out and draws the cups, and holds what's shown (cups, outlines, press, slide)
+    private final CupPainter painter = new CupPainter(spriteRequester);
+
+    // Reused for reading the border's size
+    private final Insets border = new Insets(0, 0, 0, 0);
+
+    // The animation of the cup shrinking and growing back after a click
+    private int pressAnimation = -1;
+    private final Animator.Step pressStep = (index, scale) -> {
+        painter.pressScale = scale;
+        changedCup(index);
+    };
+    private final Runnable releaseDone = this::release;
+
+    // Who to tell when a cup is clicked (null means clicks are ignored)
+    private IntConsumer clickListener;
+
+    // Swap animation and when its last frame was (where cups started and how far along they
+    // are is kept in the painter)
+    private int animation = -1;
+    private long lastFrame;
+    private final Animator.Step frameStep = (tag, value) -> nextFrame(value);
+
+    // Drawn cups, and the part of them that needs drawing again (null means nothing)
+    private VolatileImage buffer;
+    private Rectangle dirty;
+
+    // A ready-made picture of the cups shown now (from CupPainter.renderStill), copied instead of
+    // drawing each cup; dropped as soon as anything in the row changes
+    private BufferedImage still;
+
+    // Run after the next paint (once), to time how long it took something to reach the screen
+    private Runnable afterPaint;
+
+    public CupRow() {
+        setOpaque(true);
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (clickListener == null || !isEnabled()) return;
+                int index = cupAt(e.getX(), e.getY());
+                if (index >= 0) clickListener.accept(index);
+            }
+        });
+    }
+
+    // Show these cups (the array is copied, so the caller can keep reusing it)
+    public void showCups(int[] from, int howMany) {
+        stopAnimation();
+        painter.setCups(from, howMany);
+        changed(0, 0, getWidth(), getHeight());
+    }
+
+    // Show these cups using a picture of them from CupPainter.renderStill() (if the picture is null
+    // or the row has changed size since it was made, the cups are drawn the normal way)
+    public void showCups(int[] from, int howMany, BufferedImage picture) {
+        showCups(from, howMany);
+        still = picture;
+    }
+
+    // How many screen pixels one unit of this row covers (2 on a typical HiDPI screen, 1 if it's
+    // not on a screen yet)
+    public double displayScale() {
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        return config == null ? 1 : config.getDefaultTransform().getScaleX();
+    }
+
+    // Run `done` once, right after the row is next painted
+    public void afterNextPaint(Runnable done) {
+        afterPaint = done;
+        repaint();
+    }
+
+    // Slide the cups from where they are now to this new order over the given time,
+    // then run `done` (may be null). Cups of the same color keep their left-to-right order.
+    public void animateTo(int[] to, int howMany, int millis, Runnable done) {
+        int[] cups = painter.cups;
+        if (howMany != painter.count || millis <= 0) {
+            showCups(to, howMany);
+            if (done != null) done.run();
+            return;
+        }
+        stopAnimation();
+        // For each color, a chain of the slots it is in now (first slot first)
+        int maxColor = 0;
+        for (int i = 0; i < howMany; i++) {
+            maxColor = Math.max(maxColor, Math.max(cups[i], to[i]));
+        }
+        int[] firstSlot = new int[maxColor + 1];
+        int[] nextSlot = new int[howMany];
+        Arrays.fill(firstSlot, -1);
+        for (int slot = howMany - 1; slot >= 0; slot--) {
+            nextSlot[slot] = firstSlot[cups[slot]];
+            firstSlot[cups[slot]] = slot;
+        }
+        if (painter.fromSlot.length < howMany) painter.fromSlot = new int[howMany];
+        int[] fromSlot = painter.fromSlot;
+        for (int i = 0; i < howMany; i++) {
+            int slot = firstSlot[to[i]];
+            if (slot < 0) {
+                // Not the same cups rearranged, so there's nothing to slide
+                showCups(to, howMany);
+                if (done != null) done.run();
+                return;
+            }
+            firstSlot[to[i]] = nextSlot[slot];
+            fromSlot[i] = slot;
+        }
+        painter.setCups(to, howMany);
+        painter.progress = 0;
+        lastFrame = System.nanoTime();
+        animation = Animator.shared().tween(this, millis, 0, 1, Animator.LINEAR, frameStep, 0, done);
+        changed(0, 0, getWidth(), getHeight());
+    }
+
+    public boolean isAnimating() {
+        return Animator.shared().isRunning(animation);
+    }
+
+    // Show no cups
+    public void clear() {
+        stopAnimation();
+        painter.count = 0;
+        painter.pressed = -1;
+        changed(0, 0, getWidth(), getHeight());
+    }
+
+    public int getCupCount() {
+        return painter.count;
+    }
+
+    public int cupAtIndex(int index) {
+        return painter.cups[index];
+    }
+
+    // Tell this listener the position of any cup that gets clicked
+    public void setClickListener(IntConsumer listener) {
+        clickListener = listener;
+        setCursor(listener != null ? Cursor.getPredefinedCursor(Cursor.HAND_CURSOR) : null);
+    }
+
+    public void setHighlighted(int index, boolean on) {
+        if (index >= painter.highlighted.length) {
+            painter.highlighted = Arrays.copyOf(painter.highlighted, painter.cups.length);
+        }
+        painter.highlighted[index] = on;
+        changedCup(index);
+    }
+
+    public void clearHighlights() {
+        Arrays.fill(painter.highlighted, false);
+        changed(0, 0, getWidth(), getHeight());
+    }
+
+    // Outline a cup green (MARK_RIGHT) or red (MARK_WRONG), or take its mark away (NO_MARK)
+    public void setMark(int index, byte mark) {
+        if (index >= painter.marks.length) painter.marks = Arrays.copyOf(painter.marks, painter.cups.length);
+        painter.marks[index] = mark;
+        changedCup(index);
+    }
+
+    public void clearMarks() {
+        Arrays.fill(painter.marks, NO_MARK);
+        changed(0, 0, getWidth(), getHeight());
+    }
+
+    // Shrink a cup and grow it back, like a button being pushed
+    public void press(int index) {
+        Animator.shared().cancel(pressAnimation);
+        release();
+        painter.pressed = index;
+        pressAnimation = Animator.shared().tween(this, PRESS_MILLIS, 1, PRESS_SCALE, Animator.PULSE,
+            pressStep, index, releaseDone);
+    }
+
+    private void release() {
+        int before = painter.pressed;
+        painter.pressed = -1;
+        painter.pressScale = 1;
+        if (before >= 0) changedCup(before);
+    }
+
+    // Move the animation on to this point (0 to 1)
+    // (and count how long it's been since the last frame, to spot dropped frames)
+    private void nextFrame(float value) {
+        long now = System.nanoTime();
+        painter.progress = value;
+        long gapMicros = (now - lastFrame) / 1000;
+        lastFrame = now;
+        GameMetrics.record(GameMetrics.FRAME_GAP, gapMicros);
+        GameEvents.ShuffleFrame event = new GameEvents.ShuffleFrame();
+        if (event.shouldCommit()) {
+            event.gapMicros = gapMicros;
+            event.expectedMicros = Animator.shared().frameMicros();
+            event.progress = value;
+            event.commit();
+        }
+        changed(0, 0, getWidth(), getHeight());
+    }
+
+    // Stop sliding (without running the animation's `done`) and show the cups in their new places
+    private void stopAnimation() {
+        Animator.shared().cancel(animation);
+        animation = -1;
+        if (painter.progress < 1) {
+            painter.progress = 1;
+            changed(0, 0, getWidth(), getHeight());
+        }
+    }
+
+    // Which cup is at this point, or -1 for none
+    public int cupAt(int x, int y) {
+        sizePainter();
+        return painter.cupAt(x, y);
+    }
+
+    // Where a cup is drawn (when it isn't moving)
+    public Rectangle cupBounds(int index) {
+        sizePainter();
+        return painter.cupBounds(index);
+    }
+
+    // Give the painter this row's size and border as they are now
+    private void sizePainter() {
+        painter.setSize(getWidth(), getHeight(), getInsets(border));
+    }
+
+    private void changedCup(int index) {
+        if (index < 0 || index >= painter.count) return;
+        if (painter.progress < 1) return; // The whole row is being redrawn every frame anyway
+        Rectangle bounds = cupBounds(index);
+        changed(bounds.x - 3, bounds.y - 3, bounds.width + 6, bounds.height + 6);
+    }
+
+    // Mark part of the row as needing to be drawn again
+    private void changed(int x, int y, int width, int height) {
+        still = null;
+        if (dirty == null) {
+            dirty = new Rectangle(x, y, width, height);
+        } else {
+            dirty.add(x, y);
+            dirty.add(x + width, y + height);
+        }
+        repaint(x, y, width, height);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) return super.getPreferredSize();
+        return CupPainter.preferredSize(painter.count, getInsets());
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        stopAnimation();
+        Animator.shared().cancel(pressAnimation);
+        release();
+        if (buffer != null) {
+            buffer.flush();
+            buffer = null;
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        paintBoard(g);
+        GameMetrics.recordSince(GameMetrics.PAINT, start);
+        if (afterPaint != null) {
+            Runnable done = afterPaint;
+            afterPaint = null;
+            done.run();
+        }
+    }
+
+    // Bring the buffer up to date and copy it to the screen
+    private void paintBoard(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config == null || width <= 0 || height <= 0 || GraphicsEnvironment.isHeadless()) {
+            paintCups((Graphics2D) g); // Nowhere to keep a buffer, draw straight to the screen
+            return;
+        }
+        do {
+            // Check the buffer once: validate() only reports a restore the first time it's called
+            int status = buffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : buffer.validate(config);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE || buffer.getWidth() != width
+                    || buffer.getHeight() != height) {
+                if (buffer != null) buffer.flush();
+                buffer = createVolatileImage(width, height);
+                if (buffer == null) {
+                    paintCups((Graphics2D) g);
+                    return;
+                }
+                buffer.validate(config);
+                dirty = new Rectangle(0, 0, width, height);
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                dirty = new Rectangle(0, 0, width, height); // Video memory was lost, draw it all again
+            }
+            if (dirty != null) {
+                Graphics2D bg = buffer.createGraphics();
+                bg.clipRect(dirty.x, dirty.y, dirty.width, dirty.height);
+                paintCups(bg);
+                bg.dispose();
+                dirty = null;
+            }
+            g.drawImage(buffer, 0, 0, null);
+        } while (buffer.contentsLost());
+    }
+
+    // Draw the background and every cup that overlaps the clip
+    private void paintCups(Graphics2D g2) {
+        if (still != null) {
+            double scale = g2.getTransform().getScaleX();
+            if (still.getWidth() == Math.round(getWidth() * scale)
+                    && still.getHeight() == Math.round(getHeight() * scale)) {
+                g2.drawImage(still, 0, 0, getWidth(), getHeight(), null);
+                return;
+            }
+            still = null;
+        }
+        sizePainter();
+        painter.setBackground(isOpaque() ? getBackground() : null);
+        painter.paint(g2);
+    }
+}
@@ -0,0 +1,279 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.*;
+
+public class CupSprites {
+
+    // Sizes of the two cup pictures the game uses
+    public static final int LARGE_WIDTH = 60;
+    public static final int LARGE_HEIGHT = 90;
+    public static final int SMALL_WIDTH = 50;
+    public static final int SMALL_HEIGHT = 75;
+
+    // Size of the copy of each cup kept for making other sizes (see render() and SpriteCache):
+    // big enough for a board grown to fill a 4K screen
+    public static final int MASTER_WIDTH = 320;
+    public static final int MASTER_HEIGHT = 480;
+
+    // All the cup colors (the picture file for each one is its lowercase name, see Assets)
+    private static final String[] COLORS = GameEngine.COLOR_NAMES;
+
+    // One big picture that holds every cup in both sizes
+    // Row 1 has the big cups, row 2 has the small ones
+    private static volatile BufferedImage atlas;
+
+    // Ready-made pictures and icons that point into the atlas (made once, shared by everyone)
+    private static BufferedImage[] largeImages;
+    private static BufferedImage[] smallImages;
+    private static ImageIcon[] largeIcons;
+    private static ImageIcon[] smallIcons;
+
+    // Each cup (and the grey one) at MASTER size, or null where the picture file is missing
+    private static BufferedImage[] masters;
+
+    // Numbered cups for boards with more cups than colors, made the first time they're needed
+    private static final class Extra {
+        BufferedImage large;
+        BufferedImage small;
+        ImageIcon largeIcon;
+        ImageIcon smallIcon;
+    }
+    private static volatile Extra[] extras = new Extra[0];
+
+    // Counters so we can see how often the cache saves us work
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong decodes = new AtomicLong();
+    private static volatile long buildNanos;
+
+    // This class only has static helpers
+    private CupSprites() {
+    }
+
+    // Start building the atlas on a background thread so it is ready before it is needed
+    // (the pictures themselves are read by Assets, which this starts too)
+    public static void preloadAsync() {
+        if (atlas != null) return;
+        String[] files = new String[COLORS.length + 1];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = fileName(i);
+        }
+        Assets.preloadAsync(files);
+        Thread loader = new Thread(CupSprites::build, "cup-sprite-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // Get the big (60x90) cup picture for a color number
+    public static ImageIcon icon(int color) {
+        lookup(color);
+        return color < COLORS.length ? largeIcons[color] : extra(color).largeIcon;
+    }
+
+    // Get the small (50x75) cup picture for a color number, used for the click animation
+    public static ImageIcon smallIcon(int color) {
+        lookup(color);
+        return color < COLORS.length ? smallIcons[color] : extra(color).smallIcon;
+    }
+
+    // The big cup picture itself, for components that paint cups directly
+    public static BufferedImage image(int color) {
+        lookup(color);
+        return color < COLORS.length ? largeImages[color] : extra(color).large;
+    }
+
+    // The small cup picture itself
+    public static BufferedImage smallImage(int color) {
+        lookup(color);
+        return color < COLORS.length ? smallImages[color] : extra(color).small;
+    }
+
+    // A new smooth cup picture exactly this many pixels big (slow: SpriteCache calls it off the
+    // Swing thread and keeps what it makes)
+    static BufferedImage render(int color, int width, int height) {
+        if (atlas == null) build();
+        int slot = Math.min(color, COLORS.length); // Numbered cups are tinted from the grey one
+        BufferedImage source = masters[slot] != null ? masters[slot] : largeImages[slot];
+        BufferedImage cup = scaleSmooth(source, width, height);
+        return color < COLORS.length ? cup : tintedCup(cup, color);
+    }
+
+    // Short summary of the cache counters
+    public static String stats() {
+        return "hits=" + hits.get() + " misses=" + misses.get()
+            + " decodes=" + decodes.get() + " buildMs=" + buildNanos / 1_000_000;
+    }
+
+    public static long hitCount() {
+        return hits.get();
+    }
+
+    public static long missCount() {
+        return misses.get();
+    }
+
+    public static long decodeCount() {
+        return decodes.get();
+    }
+
+    // Count a hit if the picture is ready, otherwise make it now
+    private static void lookup(int color) {
+        if (atlas == null) {
+            misses.incrementAndGet();
+            build();
+        } else if (color < COLORS.length || (color < extras.length && extras[color] != null)) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+    }
+
+    // Decode and scale every cup once, then draw them all into the atlas
+    // The cups are read and scaled side by side on the asset loader threads
+    private static synchronized void build() {
+        if (atlas != null) return; // Someone else already built it
+
+        long start = System.nanoTime();
+        // One slot per color, plus a grey cup at the end that numbered cups are tinted from
+        int slots = COLORS.length + 1;
+        List<CompletableFuture<BufferedImage[]>> scaled = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            decodes.incrementAndGet();
+            scaled.add(Assets.image(fileName(i)).thenCompose(source -> Assets.onLoader(() -> source == null ? null
+                : new BufferedImage[] {scaleSmooth(source, LARGE_WIDTH, LARGE_HEIGHT),
+                    scaleSmooth(source, SMALL_WIDTH, SMALL_HEIGHT),
+                    scaleSmooth(source, MASTER_WIDTH, MASTER_HEIGHT)})));
+        }
+        BufferedImage sheet = createCompatibleImage(slots * LARGE_WIDTH, LARGE_HEIGHT + SMALL_HEIGHT);
+        BufferedImage[] big = new BufferedImage[slots];
+        Graphics2D g = sheet.createGraphics();
+        for (int i = 0; i < slots; i++) {
+            BufferedImage[] sizes = scaled.get(i).join();
+            Assets.release(fileName(i)); // Only the scaled copies are kept
+            if (sizes == null) continue; // Leave an empty spot if the file is missing
+            g.drawImage(sizes[0], i * LARGE_WIDTH, 0, null);
+            g.drawImage(sizes[1], i * LARGE_WIDTH, LARGE_HEIGHT, null);
+            big[i] = sizes[2];
+        }
+        g.dispose();
+
+        // Make the pictures and icons once; they all share the atlas pixels
+        BufferedImage[] largeParts = new BufferedImage[slots];
+        BufferedImage[] smallParts = new BufferedImage[slots];
+        ImageIcon[] large = new ImageIcon[COLORS.length];
+        ImageIcon[] small = new ImageIcon[COLORS.length];
+        for (int i = 0; i < slots; i++) {
+            largeParts[i] = sheet.getSubimage(i * LARGE_WIDTH, 0, LARGE_WIDTH, LARGE_HEIGHT);
+            smallParts[i] = sheet.getSubimage(i * LARGE_WIDTH, LARGE_HEIGHT, SMALL_WIDTH, SMALL_HEIGHT);
+            if (i < COLORS.length) {
+                large[i] = new ImageIcon(largeParts[i]);
+                small[i] = new ImageIcon(smallParts[i]);
+            }
+        }
+        largeImages = largeParts;
+        smallImages = smallParts;
+        largeIcons = large;
+        smallIcons = small;
+        masters = big;
+        buildNanos = System.nanoTime() - start;
+        atlas = sheet; // Publish last so other threads see the icons too
+        Startup.spritesBuilt();
+    }
+
+    // Picture file for an atlas slot (the grey cup comes after the colors)
+    private static String fileName(int slot) {
+        return (slot < COLORS.length ? COLORS[slot].toLowerCase() : "grey") + ".png";
+    }
+
+    // Get (or make) the numbered cup for a color past the six real colors
+    private static Extra extra(int color) {
+        Extra[] current = extras;
+        if (color < current.length && current[color] != null) return current[color];
+        synchronized (CupSprites.class) {
+            if (color >= extras.length) {
+                extras = java.util.Arrays.copyOf(extras, Math.max(color + 1, extras.length * 2));
+            }
+            Extra made = extras[color];
+            if (made == null) {
+                made = new Extra();
+                made.large = tintedCup(largeImages[COLORS.length], color);
+                made.small = scaleSmooth(made.large, SMALL_WIDTH, SMALL_HEIGHT);
+                made.largeIcon = new ImageIcon(made.large);
+                made.smallIcon = new ImageIcon(made.small);
+                Extra[] copy = extras.clone();
+                copy[color] = made;
+                extras = copy; // Publish a new array so readers never see a half-made cup
+            }
+            return made;
+        }
+    }
+
+    // Color a grey cup picture with an evenly spread hue and write the cup's number on it
+    private static BufferedImage tintedCup(BufferedImage grey, int color) {
+        int width = grey.getWidth();
+        int height = grey.getHeight();
+        float hue = (color * 0.618034f) % 1f; // Golden ratio steps keep neighbouring cups apart
+        int tint = Color.HSBtoRGB(hue, 0.65f, 0.95f);
+        int tr = (tint >> 16) & 0xFF;
+        int tg = (tint >> 8) & 0xFF;
+        int tb = tint & 0xFF;
+        BufferedImage cup = createCompatibleImage(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int argb = grey.getRGB(x, y);
+                int light = (argb >> 8) & 0xFF; // Grey, so any channel is the brightness
+                int r = tr * light / 255;
+                int gr = tg * light / 255;
+                int b = tb * light / 255;
+                cup.setRGB(x, y, (argb & 0xFF000000) | (r << 16) | (gr << 8) | b);
+            }
+        }
+        Graphics2D g = cup.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font("Segoe UI", Font.BOLD, Math.max(6, 18 * width / LARGE_WIDTH)));
+        String number = String.valueOf(color + 1);
+        FontMetrics fm = g.getFontMetrics();
+        int x = (width - fm.stringWidth(number)) / 2;
+        int y = height / 2 + fm.getAscent() / 2;
+        g.setColor(Color.BLACK);
+        g.drawString(number, x + 1, y + 1);
+        g.setColor(Color.WHITE);
+        g.drawString(number, x, y);
+        g.dispose();
+        return cup;
+    }
+
+    // Shrink a picture in steps of half so it stays smooth (like SCALE_SMOOTH but much faster)
+    // (growing one is a single smooth step)
+    static BufferedImage scaleSmooth(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = step;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    // Make an image in the screen's own pixel format so drawing it is fast
+    private static BufferedImage createCompatibleImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Locale;
+
+// How hard a round is: how many cups, how many times they shuffle, and how long the order is shown.
+public final class Difficulty {
+
+    // Biggest board we allow (the training variant uses hundreds of cups)
+    public static final int MAX_CUPS = 1000;
+
+    public static final Difficulty EASY = new Difficulty("Easy", 4, 3, 4000);
+    public static final Difficulty NORMAL = new Difficulty("Normal", 6, 5, 3000);
+    public static final Difficulty HARD = new Difficulty("Hard", 8, 8, 2000);
+    public static final Difficulty EXPERT = new Difficulty("Expert", 12, 12, 2000);
+    public static final Difficulty TRAINING = new Difficulty("Training", 120, 20, 15000);
+
+    // The levels the player can pick from the menu
+    public static final Difficulty[] PRESETS = {EASY, NORMAL, HARD, EXPERT, TRAINING};
+
+    private final String name;
+    private final int cupCount;
+    private final int shuffleCycles;
+    private final int revealMillis;
+
+    public Difficulty(String name, int cupCount, int shuffleCycles, int revealMillis) {
+        if (cupCount < 2 || cupCount > MAX_CUPS) {
+            throw new IllegalArgumentException("Cup count must be between 2 and " + MAX_CUPS + ": " + cupCount);
+        }
+        if (shuffleCycles < 1 || revealMillis < 0) {
+            // At least one shuffle, otherwise the correct order would stay on screen
+            throw new IllegalArgumentException("Need at least one shuffle and a reveal time of 0 or more");
+        }
+        this.name = name;
+        this.cupCount = cupCount;
+        this.shuffleCycles = shuffleCycles;
+        this.revealMillis = revealMillis;
+    }
+
+    // Find the preset with these settings, or make a custom one
+    public static Difficulty of(int cupCount, int shuffleCycles, int revealMillis) {
+        for (Difficulty preset : PRESETS) {
+            if (preset.cupCount == cupCount && preset.shuffleCycles == shuffleCycles
+                    && preset.revealMillis == revealMillis) {
+                return preset;
+            }
+        }
+        return new Difficulty("Custom", cupCount, shuffleCycles, revealMillis);
+    }
+
+    // Find a preset by name (case doesn't matter), or null if there isn't one
+    public static Difficulty byName(String name) {
+        for (Difficulty preset : PRESETS) {
+            if (preset.name.equalsIgnoreCase(name)) return preset;
+        }
+        return null;
+    }
+
+    // Find a preset by name, or read an id like "10c-6s-2500ms" (see getId)
+    // Throws IllegalArgumentException if it is neither
+    public static Difficulty parse(String text) {
+        Difficulty preset = byName(text);
+        if (preset != null) return preset;
+        String[] parts = text.split("-");
+        try {
+            if (parts.length == 3 && parts[0].endsWith("c") && parts[1].endsWith("s") && parts[2].endsWith("ms")) {
+                return of(Integer.parseInt(parts[0].substring(0, parts[0].length() - 1)),
+                    Integer.parseInt(parts[1].substring(0, parts[1].length() - 1)),
+                    Integer.parseInt(parts[2].substring(0, parts[2].length() - 2)));
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw new IllegalArgumentException("Unknown difficulty: " + text);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCupCount() {
+        return cupCount;
+    }
+
+    public int getShuffleCycles() {
+        return shuffleCycles;
+    }
+
+    public int getRevealMillis() {
+        return revealMillis;
+    }
+
+    // Short id that is safe to use in file names, like "6c-5s-3000ms"
+    public String getId() {
+        return cupCount + "c-" + shuffleCycles + "s-" + revealMillis + "ms";
+    }
+
+    public boolean sameSettings(int cups, int shuffles, int reveal) {
+        return cupCount == cups && shuffleCycles == shuffles && revealMillis == reveal;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Difficulty)) return false;
+        Difficulty d = (Difficulty) other;
+        return sameSettings(d.cupCount, d.shuffleCycles, d.revealMillis);
+    }
+
+    @Override
+    public int hashCode() {
+        return (cupCount * 31 + shuffleCycles) * 31 + revealMillis;
+    }
+
+    // What the menu shows, like "Hard (8 cups)"
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s (%d cups)", name, cupCount);
+    }
+}
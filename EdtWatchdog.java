@@ -0,0 +1,178 @@
+import java.awt.EventQueue;
+import java.awt.Window;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Keeps an eye on the Swing thread (the EDT), which runs every click, timer and repaint.
+// While a window is open, every PROBE_MILLIS it posts a tiny task and times how long the task
+// waits before it runs; those times go in GameMetrics (EDT_LATENCY). If a task waits longer than
+// STALL_MILLIS the Swing thread is stuck doing something, so the watchdog samples its stack until
+// it's free and then prints where it was (and sends a GameEvents.EdtStall to a flight recording).
+//
+// Our classes have no package, so the first frame without a dot in its class name is the
+// game code that caused the stall, even when the stack is deep inside Swing or file code.
+public class EdtWatchdog implements Runnable {
+
+    static final int PROBE_MILLIS = 50;
+    static final int STALL_MILLIS = 200;
+    private static final int SAMPLE_MILLIS = 10;
+
+    // Stalls longer than this are printed while they're still going, in case they never end
+    private static final int STUCK_MILLIS = 5000;
+
+    // Keep at most this many stack samples per stall
+    private static final int MAX_SAMPLES = 500;
+
+    // Frames printed for a stall
+    private static final int PRINT_FRAMES = 12;
+
+    private static EdtWatchdog shared;
+
+    // Set by the probe when it runs on the Swing thread
+    private volatile Thread edt;
+    private volatile long ranNanos;
+    private volatile boolean ran;
+    private final Runnable probe = () -> {
+        edt = Thread.currentThread();
+        ranNanos = System.nanoTime();
+        ran = true;
+    };
+
+    // Stack samples of the stall going on now
+    private final StackTraceElement[][] samples = new StackTraceElement[MAX_SAMPLES][];
+    private int sampleCount;
+
+    // Start watching the Swing thread (once; later calls do nothing)
+    public static synchronized void startShared() {
+        if (shared != null) return;
+        shared = new EdtWatchdog();
+        Thread thread = new Thread(shared, "edt-watchdog");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY); // So a busy game doesn't delay the checks
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                // With no windows open, stay quiet so Java can shut the Swing thread down
+                if (windowOpen()) check();
+                Thread.sleep(PROBE_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // Stop watching
+        }
+    }
+
+    private static boolean windowOpen() {
+        for (Window window : Window.getWindows()) {
+            if (window.isDisplayable()) return true;
+        }
+        return false;
+    }
+
+    // Post one probe and wait for it to run, sampling the Swing thread's stack if it takes too long
+    private void check() throws InterruptedException {
+        ran = false;
+        sampleCount = 0;
+        long posted = System.nanoTime();
+        EventQueue.invokeLater(probe);
+        boolean reportedStuck = false;
+        while (!ran) {
+            Thread.sleep(SAMPLE_MILLIS);
+            long waited = (System.nanoTime() - posted) / 1_000_000;
+            Thread thread = edt;
+            if (waited >= STALL_MILLIS && thread != null && !ran) {
+                StackTraceElement[] stack = thread.getStackTrace();
+                if (sampleCount < MAX_SAMPLES && stack.length > 0) samples[sampleCount++] = stack;
+                if (waited >= STUCK_MILLIS && !reportedStuck) {
+                    reportedStuck = true;
+                    System.out.println("Error: the Swing thread has been stuck for " + waited + " ms so far, in:");
+                    printStack(stack);
+                }
+            }
+        }
+        long micros = (ranNanos - posted) / 1000;
+        GameMetrics.record(GameMetrics.EDT_LATENCY, micros);
+        if (micros >= STALL_MILLIS * 1000L && sampleCount > 0) {
+            report(micros / 1000);
+        }
+    }
+
+    // Print the stall and where the Swing thread spent it
+    private void report(long stallMillis) {
+        GameMetrics.stalled();
+        // Count the samples by the game method they were in, and find the most common stack
+        Map<String, Integer> byGameFrame = new HashMap<>();
+        Map<String, Integer> byStack = new HashMap<>();
+        String where = "(no game code)";
+        int whereCount = 0;
+        StackTraceElement[] common = samples[0];
+        int commonCount = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            StackTraceElement[] stack = samples[i];
+            String frame = gameFrame(stack);
+            if (frame != null) {
+                int n = byGameFrame.merge(frame, 1, Integer::sum);
+                if (n > whereCount) {
+                    where = frame;
+                    whereCount = n;
+                }
+            }
+            int n = byStack.merge(stackText(stack, PRINT_FRAMES), 1, Integer::sum);
+            if (n > commonCount) {
+                common = stack;
+                commonCount = n;
+            }
+        }
+        System.out.printf(Locale.ROOT, "EDT stall: %d ms, mostly in %s (%d of %d samples)%n",
+            stallMillis, where, whereCount, sampleCount);
+        printStack(common);
+
+        GameEvents.EdtStall event = new GameEvents.EdtStall();
+        if (event.shouldCommit()) {
+            event.stallMillis = stallMillis;
+            event.samples = sampleCount;
+            event.where = where;
+            event.stack = stackText(common, Integer.MAX_VALUE);
+            event.commit();
+        }
+        for (int i = 0; i < sampleCount; i++) {
+            samples[i] = null;
+        }
+    }
+
+    // The first frame in the game's own code (classes without a package), or null
+    static String gameFrame(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().indexOf('.') < 0) return frameText(frame);
+        }
+        return null;
+    }
+
+    private static String stackText(StackTraceElement[] stack, int frames) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < stack.length && i < frames; i++) {
+            text.append(frameText(stack[i])).append('\n');
+        }
+        return text.toString();
+    }
+
+    // Like "CupRow.paintBoard(CupRow.java:360)", without the module names Java adds
+    private static String frameText(StackTraceElement frame) {
+        String where = frame.isNativeMethod() ? "Native Method"
+            : frame.getFileName() == null ? "Unknown Source"
+            : frame.getLineNumber() >= 0 ? frame.getFileName() + ":" + frame.getLineNumber()
+            : frame.getFileName();
+        return frame.getClassName() + "." + frame.getMethodName() + "(" + where + ")";
+    }
+
+    private static void printStack(StackTraceElement[] stack) {
+        for (int i = 0; i < stack.length && i < PRINT_FRAMES; i++) {
+            System.out.println("    at " + frameText(stack[i]));
+        }
+        if (stack.length > PRINT_FRAMES) System.out.println("    ... " + (stack.length - PRINT_FRAMES) + " more");
+    }
+}
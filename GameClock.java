@@ -0,0 +1,114 @@
+import java.util.function.LongSupplier;
+
+// Stopwatch for a round, based on System.nanoTime so it never drifts
+// (a Swing Timer that adds one second per tick falls behind whenever the screen is busy).
+// It can be paused while a dialog is open, and pauses can be nested.
+public class GameClock {
+
+    // Where the current time comes from (System.nanoTime, or a fake clock for simulations)
+    private final LongSupplier nanoTime;
+
+    // Time counted before the current running stretch
+    private long accumulatedNanos = 0;
+
+    // When the current running stretch started
+    private long startedAt = 0;
+
+    // Whether the clock is counting right now
+    private boolean running = false;
+
+    // Whether the clock has been started and not stopped (it may still be paused)
+    private boolean started = false;
+
+    // How many pauses are active (a dialog inside a dialog counts twice)
+    private int pauseDepth = 0;
+
+    // Time source reading at the last start, stop, pause or resume
+    private long lastChange = 0;
+
+    public GameClock() {
+        this(System::nanoTime);
+    }
+
+    public GameClock(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    // Start counting from zero
+    public void start() {
+        accumulatedNanos = 0;
+        pauseDepth = 0;
+        started = true;
+        running = true;
+        startedAt = nanoTime.getAsLong();
+        lastChange = startedAt;
+    }
+
+    // Stop counting for good (the time stays where it is)
+    public void stop() {
+        if (running) {
+            lastChange = nanoTime.getAsLong();
+            accumulatedNanos += lastChange - startedAt;
+        }
+        running = false;
+        started = false;
+        pauseDepth = 0;
+    }
+
+    // Stop and go back to zero
+    public void reset() {
+        stop();
+        accumulatedNanos = 0;
+    }
+
+    // Stop counting for a moment, like while a message box is open
+    public void pause() {
+        if (!started) return;
+        if (pauseDepth++ == 0 && running) {
+            lastChange = nanoTime.getAsLong();
+            accumulatedNanos += lastChange - startedAt;
+            running = false;
+        }
+    }
+
+    // Carry on counting after a pause
+    public void resume() {
+        if (!started || pauseDepth == 0) return;
+        if (--pauseDepth == 0) {
+            startedAt = nanoTime.getAsLong();
+            lastChange = startedAt;
+            running = true;
+        }
+    }
+
+    // The current time from this clock's time source, in nanoseconds
+    public long now() {
+        return nanoTime.getAsLong();
+    }
+
+    // When the clock last started, stopped, paused or resumed (in now() time)
+    public long lastChangeNanos() {
+        return lastChange;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isPaused() {
+        return pauseDepth > 0;
+    }
+
+    // Time counted so far in nanoseconds
+    public long elapsedNanos() {
+        if (running) {
+            return accumulatedNanos + nanoTime.getAsLong() - startedAt;
+        }
+        return accumulatedNanos;
+    }
+
+    // Time counted so far in milliseconds
+    public long elapsedMillis() {
+        return elapsedNanos() / 1_000_000L;
+    }
+}
@@ -0,0 +1,310 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+// All the rules of the game, with no windows or buttons.
+// Cups are stored as color numbers (0 = Red, 1 = Blue, ...) so rounds are cheap to make and check.
+// A round is a permutation of the numbers 0..cupCount-1 held in plain int arrays,
+// so boards with hundreds of cups cost no more than a few array copies.
+//
+// Every round comes from a 64-bit seed: the same seed, algorithm and difficulty always give
+// the same correct order and the same shuffles, so a round can be played again from its seed.
+public class GameEngine {
+
+    // The random number algorithm rounds are made with (any name RandomGeneratorFactory knows)
+    public static final String DEFAULT_ALGORITHM = "SplittableRandom";
+
+    // The cup colors that have their own picture, in color-number order
+    // (bigger boards add numbered cups after these)
+    public static final String[] COLOR_NAMES = {"Red", "Blue", "Purple", "Orange", "Pink", "Green"};
+
+    // How hard the round is (cup count, shuffles, reveal time)
+    private final Difficulty difficulty;
+
+    // How many cups are in a round
+    private final int cupCount;
+
+    // The correct order of cups the player needs to guess
+    private final int[] correctOrder;
+
+    // The mixed up order of cups shown during the shuffle
+    private final int[] shuffledOrder;
+
+    // What the player has guessed so far
+    private final int[] guess;
+    private int guessSize = 0;
+
+    // Which spots of the guess so far hold the right cup (bit i of word i / 64 is spot i)
+    // and how many do. Both are kept up to date as cups are added and taken away,
+    // so the correct count is ready at any time without looking through the guess.
+    private final long[] rightSpots;
+    private int correctSoFar = 0;
+
+    // Count how many times the player has tried
+    private int attempts = 0;
+
+    // How many cups were in the right spot on the last submit
+    private int lastCorrect = 0;
+
+    // Whether the player has guessed the whole order
+    private boolean solved = false;
+
+    // Stopwatch for the round (milliseconds accurate, pauses while dialogs are open)
+    private final GameClock clock;
+
+    // Picks a new seed for each round
+    private final RandomGenerator seeds;
+
+    // Makes the random numbers for a round from its seed
+    private final String algorithm;
+    private final LongFunction<RandomGenerator> generator;
+
+    // The seed of this round, and the random numbers made from it (saved with the score)
+    private long seed;
+    private RandomGenerator roundRandom;
+
+    public GameEngine() {
+        this(Difficulty.NORMAL);
+    }
+
+    public GameEngine(Difficulty difficulty) {
+        this(difficulty, new SplittableRandom(), System::nanoTime);
+    }
+
+    // seeds picks each round's seed, nanoTime is where the clock reads time from
+    // (a seeded generator and a fake clock make simulations repeatable)
+    public GameEngine(Difficulty difficulty, RandomGenerator seeds, LongSupplier nanoTime) {
+        this(difficulty, seeds, DEFAULT_ALGORITHM, nanoTime);
+    }
+
+    // algorithm is the RandomGeneratorFactory name rounds are made with, like "SplittableRandom"
+    // Throws IllegalArgumentException if this Java doesn't have it
+    public GameEngine(Difficulty difficulty, RandomGenerator seeds, String algorithm, LongSupplier nanoTime) {
+        this.difficulty = difficulty;
+        this.seeds = seeds;
+        this.algorithm = algorithm;
+        this.generator = generatorFor(algorithm);
+        this.clock = new GameClock(nanoTime);
+        this.cupCount = difficulty.getCupCount();
+        this.correctOrder = new int[cupCount];
+        this.shuffledOrder = new int[cupCount];
+        this.guess = new int[cupCount];
+        this.rightSpots = new long[(cupCount + 63) / 64];
+        newRound();
+    }
+
+    // Start a new round with a fresh random order
+    public void newRound() {
+        newRound(seeds.nextLong());
+    }
+
+    // Pick the seed of a round to deal later with newRound(seed) (see RoundPipeline)
+    public long pickSeed() {
+        return seeds.nextLong();
+    }
+
+    // Start the round made from this seed (to play a round again, or the same round as others)
+    public void newRound(long seed) {
+        this.seed = seed;
+        roundRandom = generator.apply(seed);
+        for (int i = 0; i < cupCount; i++) {
+            correctOrder[i] = i;
+        }
+        shuffle(correctOrder);
+        System.arraycopy(correctOrder, 0, shuffledOrder, 0, cupCount);
+        forgetGuess();
+        attempts = 0;
+        lastCorrect = 0;
+        solved = false;
+        clock.start();
+    }
+
+    // Mix up the cups shown on screen (the correct order stays the same)
+    public void shuffleDisplay() {
+        shuffle(shuffledOrder);
+    }
+
+    // Add a cup to the player's guess, returns false if the guess is already full
+    public boolean addGuess(int color) {
+        if (color < 0 || color >= cupCount) {
+            throw new IllegalArgumentException("Unknown cup color: " + color);
+        }
+        if (solved || guessSize >= cupCount) return false;
+        int position = guessSize++;
+        guess[position] = color;
+        if (correctOrder[position] == color) {
+            rightSpots[position >>> 6] |= 1L << position;
+            correctSoFar++;
+        }
+        return true;
+    }
+
+    // Remove the last cup from the player's guess, returns false if there was nothing to remove
+    public boolean undo() {
+        if (guessSize == 0) return false;
+        int position = --guessSize;
+        long bit = 1L << position;
+        if ((rightSpots[position >>> 6] & bit) != 0) {
+            rightSpots[position >>> 6] &= ~bit;
+            correctSoFar--;
+        }
+        return true;
+    }
+
+    // Throw away the whole guess
+    public void clearGuess() {
+        forgetGuess();
+    }
+
+    private void forgetGuess() {
+        guessSize = 0;
+        Arrays.fill(rightSpots, 0);
+        correctSoFar = 0;
+    }
+
+    // Check the guess and count the attempt
+    // Returns how many cups are in the right spot, or -1 if the guess isn't finished yet
+    // A wrong guess is cleared so the player can try again
+    public int submit() {
+        if (solved || guessSize < cupCount) return -1;
+        // Every cup was checked as it was added, so there's nothing left to compare
+        int correctCount = correctSoFar;
+        attempts++;
+        lastCorrect = correctCount;
+        if (correctCount == cupCount) {
+            solved = true;
+            clock.stop(); // The score is the time right now
+        } else {
+            forgetGuess();
+        }
+        return correctCount;
+    }
+
+    public Difficulty getDifficulty() {
+        return difficulty;
+    }
+
+    public int getCupCount() {
+        return cupCount;
+    }
+
+    // Copy the whole correct order into an array (at least cupCount long)
+    public void copyCorrectOrder(int[] into) {
+        System.arraycopy(correctOrder, 0, into, 0, cupCount);
+    }
+
+    // Copy the shuffled order into an array (at least cupCount long)
+    public void copyShuffledOrder(int[] into) {
+        System.arraycopy(shuffledOrder, 0, into, 0, cupCount);
+    }
+
+    // Copy the guess so far into an array, returns how many cups it has
+    public int copyGuess(int[] into) {
+        System.arraycopy(guess, 0, into, 0, guessSize);
+        return guessSize;
+    }
+
+    public int correctAt(int position) {
+        return correctOrder[position];
+    }
+
+    public int shuffledAt(int position) {
+        return shuffledOrder[position];
+    }
+
+    public int guessAt(int position) {
+        return guess[position];
+    }
+
+    public int getGuessSize() {
+        return guessSize;
+    }
+
+    // How many cups of the guess so far are in the right spot (for instant feedback)
+    public int getCorrectSoFar() {
+        return correctSoFar;
+    }
+
+    // Whether the cup guessed at this position is the right one (false if nothing is guessed there yet)
+    public boolean isRightAt(int position) {
+        return (rightSpots[position >>> 6] & 1L << position) != 0;
+    }
+
+    public boolean isGuessFull() {
+        return guessSize == cupCount;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getLastCorrect() {
+        return lastCorrect;
+    }
+
+    public boolean isSolved() {
+        return solved;
+    }
+
+    // Round time so far (or the final time once solved)
+    public long getElapsedMillis() {
+        return clock.elapsedMillis();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Name of the random number algorithm rounds are made with
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    // How to make a generator from a seed for an algorithm name
+    // The ones in java.base are made directly; others (like "L64X128MixRandom") go through
+    // RandomGeneratorFactory, which looks up a constructor and costs a little more per round
+    static LongFunction<RandomGenerator> generatorFor(String algorithm) {
+        switch (algorithm) {
+            case "SplittableRandom":
+                return SplittableRandom::new;
+            case "Random":
+                return Random::new;
+            default:
+                return RandomGeneratorFactory.of(algorithm)::create;
+        }
+    }
+
+    public GameClock getClock() {
+        return clock;
+    }
+
+    // Turn a color number into its name, like 0 -> "Red" (or 9 -> "Cup 10" on big boards)
+    public static String colorName(int color) {
+        return color < COLOR_NAMES.length ? COLOR_NAMES[color] : "Cup " + (color + 1);
+    }
+
+    // Turn a color name into its number, like "Red" -> 0
+    public static int colorIndex(String name) {
+        for (int i = 0; i < COLOR_NAMES.length; i++) {
+            if (COLOR_NAMES[i].equals(name)) return i;
+        }
+        if (name.startsWith("Cup ")) {
+            return Integer.parseInt(name.substring(4)) - 1;
+        }
+        throw new IllegalArgumentException("Unknown cup color: " + name);
+    }
+
+    // Mix up an array in place (Fisher-Yates shuffle)
+    private void shuffle(int[] cups) {
+        for (int i = cups.length - 1; i > 0; i--) {
+            int j = roundRandom.nextInt(i + 1);
+            int swap = cups[i];
+            cups[i] = cups[j];
+            cups[j] = swap;
+        }
+    }
+}
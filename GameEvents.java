@@ -0,0 +1,145 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Java Flight Recorder events for what happens in a round, so a recording shows exactly
+// which part of the game was running when the screen stuttered.
+// They cost next to nothing unless a recording is running. To record a game:
+//   java -XX:StartFlightRecording=filename=game.jfr CupMemoryGame
+//   jfr print --categories "Cup Memory" game.jfr
+// (or open game.jfr in JDK Mission Control and look under Cup Memory).
+public class GameEvents {
+
+    // This class only holds the event types
+    private GameEvents() {
+    }
+
+    // A new round was dealt
+    @Name("cupmemory.RoundStart")
+    @Label("Round Start")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class RoundStart extends Event {
+        @Label("Difficulty")
+        String difficulty;
+
+        @Label("Cups")
+        int cups;
+
+        @Label("Seed")
+        long seed;
+
+        @Label("Prepared")
+        @Description("Whether the round was made ahead of time by the RoundPipeline")
+        boolean prepared;
+    }
+
+    // The correct order was on screen (lasts from showing it until the shuffle starts)
+    @Name("cupmemory.Reveal")
+    @Label("Reveal")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class Reveal extends Event {
+        @Label("Planned")
+        @Timespan(Timespan.MILLISECONDS)
+        long plannedMillis;
+    }
+
+    // One animation frame of a shuffle; a gap much bigger than expected is a dropped frame
+    @Name("cupmemory.ShuffleFrame")
+    @Label("Shuffle Frame")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class ShuffleFrame extends Event {
+        @Label("Gap")
+        @Description("Time since the previous frame")
+        @Timespan(Timespan.MICROSECONDS)
+        long gapMicros;
+
+        @Label("Expected Gap")
+        @Timespan(Timespan.MICROSECONDS)
+        long expectedMicros;
+
+        @Label("Progress")
+        float progress;
+    }
+
+    // The player clicked a cup (lasts as long as the click took to handle)
+    @Name("cupmemory.Guess")
+    @Label("Guess")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class Guess extends Event {
+        @Label("Color")
+        int color;
+
+        @Label("Cups Guessed")
+        int guessed;
+    }
+
+    // The player submitted a full guess
+    @Name("cupmemory.Submit")
+    @Label("Submit")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class Submit extends Event {
+        @Label("Correct")
+        int correct;
+
+        @Label("Attempt")
+        int attempt;
+
+        @Label("Solved")
+        boolean solved;
+    }
+
+    // A message box was open (the Swing thread runs other events meanwhile, but the game waits)
+    @Name("cupmemory.MessageDialog")
+    @Label("Message Dialog")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class MessageDialog extends Event {
+        @Label("Message")
+        String message;
+    }
+
+    // A finished round's score was saved and the leaderboard brought up to date (on the journal thread)
+    @Name("cupmemory.ScoreSave")
+    @Label("Score Save")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class ScoreSave extends Event {
+        @Label("Difficulty")
+        String difficulty;
+
+        @Label("Round Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long elapsedMillis;
+    }
+
+    // The Swing thread didn't run events for a while (found by EdtWatchdog)
+    @Name("cupmemory.EdtStall")
+    @Label("EDT Stall")
+    @Category("Cup Memory")
+    @StackTrace(false)
+    public static final class EdtStall extends Event {
+        @Label("Stall")
+        @Timespan(Timespan.MILLISECONDS)
+        long stallMillis;
+
+        @Label("Samples")
+        int samples;
+
+        @Label("Game Code")
+        @Description("The game method the Swing thread was in most often")
+        String where;
+
+        @Label("Stack")
+        @Description("The stack sample seen most often, top frame first")
+        String stack;
+    }
+}
@@ -0,0 +1,166 @@
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Latency histograms for the parts of the game that can make it stutter, shown over JMX
+// as "CupMemory:type=GameMetrics". Each one is a LogHistogram (about 3% precision, fixed
+// size), so recording is quick and never creates objects.
+public class GameMetrics implements GameMetricsMXBean {
+
+    // Which histogram to record into
+    public static final int EDT_LATENCY = 0;
+    public static final int FRAME_GAP = 1;
+    public static final int PAINT = 2;
+    public static final int GUESS = 3;
+    public static final int SUBMIT = 4;
+    public static final int SCORE_SAVE = 5;
+    public static final int ROUND_START = 6;
+    private static final int COUNT = 7;
+
+    private static final LogHistogram[] histograms = new LogHistogram[COUNT];
+    private static long edtStalls = 0;
+    private static boolean registered = false;
+
+    static {
+        for (int i = 0; i < COUNT; i++) {
+            histograms[i] = new LogHistogram();
+        }
+    }
+
+    // Percentiles of one histogram, as JMX shows them
+    public static final class Latency {
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        @ConstructorProperties({"count", "p50", "p99", "p999", "max"})
+        public Latency(long count, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "p50 " + p50 + " us, p99 " + p99 + " us, p99.9 " + p999 + " us, max " + max
+                + " us (" + count + ")";
+        }
+    }
+
+    // Count one time, in microseconds
+    public static void record(int which, long micros) {
+        LogHistogram histogram = histograms[which];
+        synchronized (histogram) {
+            histogram.record(micros);
+        }
+    }
+
+    // Count one time that started at `startNanos` (from System.nanoTime) and ended now
+    public static void recordSince(int which, long startNanos) {
+        record(which, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    public static synchronized void stalled() {
+        edtStalls++;
+    }
+
+    public static Latency latency(int which) {
+        LogHistogram histogram = histograms[which];
+        synchronized (histogram) {
+            return new Latency(histogram.getCount(), histogram.percentile(50), histogram.percentile(99),
+                histogram.percentile(99.9), histogram.getMax());
+        }
+    }
+
+    // Make the histograms visible over JMX (once; later calls do nothing)
+    public static synchronized void register() {
+        if (registered) return;
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new GameMetrics(), new ObjectName("CupMemory:type=GameMetrics"));
+        } catch (JMException | RuntimeException e) {
+            System.out.println("Error registering game metrics: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Latency getEdtLatency() {
+        return latency(EDT_LATENCY);
+    }
+
+    @Override
+    public Latency getFrameGap() {
+        return latency(FRAME_GAP);
+    }
+
+    @Override
+    public Latency getPaint() {
+        return latency(PAINT);
+    }
+
+    @Override
+    public Latency getGuess() {
+        return latency(GUESS);
+    }
+
+    @Override
+    public Latency getSubmit() {
+        return latency(SUBMIT);
+    }
+
+    @Override
+    public Latency getScoreSave() {
+        return latency(SCORE_SAVE);
+    }
+
+    @Override
+    public Latency getRoundStart() {
+        return latency(ROUND_START);
+    }
+
+    @Override
+    public long getEdtStalls() {
+        synchronized (GameMetrics.class) {
+            return edtStalls;
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (LogHistogram histogram : histograms) {
+            synchronized (histogram) {
+                histogram.clear();
+            }
+        }
+        synchronized (GameMetrics.class) {
+            edtStalls = 0;
+        }
+    }
+}
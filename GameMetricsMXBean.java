@@ -0,0 +1,31 @@
+// What GameMetrics shows over JMX (in jconsole or JDK Mission Control, under CupMemory)
+// Each latency is in microseconds
+public interface GameMetricsMXBean {
+
+    // How long events waited before the Swing thread ran them
+    GameMetrics.Latency getEdtLatency();
+
+    // Time between shuffle animation frames
+    GameMetrics.Latency getFrameGap();
+
+    // How long painting one cup row took
+    GameMetrics.Latency getPaint();
+
+    // How long handling one cup click took
+    GameMetrics.Latency getGuess();
+
+    // How long handling Submit took (not counting the message box)
+    GameMetrics.Latency getSubmit();
+
+    // How long saving a score and updating the leaderboard took (on the journal thread)
+    GameMetrics.Latency getScoreSave();
+
+    // Time from clicking Start, Play Again or Reset to the new round's cups being on screen
+    GameMetrics.Latency getRoundStart();
+
+    // How many times the Swing thread stalled for longer than EdtWatchdog.STALL_MILLIS
+    long getEdtStalls();
+
+    // Start counting again from nothing
+    void reset();
+}
@@ -0,0 +1,434 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs lots of games at once for browser (or any HTTP) clients, with no windows.
+// Each game is a GameSession: a small state machine around a GameEngine. All the timed steps
+// of every session (reveals and shuffles) run on one shared scheduler thread, and requests run
+// on virtual threads when this Java has them (21 and newer), or a small thread pool before that.
+//
+// Plain HTTP with JSON answers, on the JDK's own HTTP server (connections are kept alive):
+//   POST   /session?difficulty=normal   start a game, answers with the session
+//   GET    /session/<id>                the session: state, cups on the table, guess, attempts, time
+//   POST   /session/<id>/add?cup=3      add a cup to the guess
+//   POST   /session/<id>/undo           take the last cup off the guess
+//   POST   /session/<id>/submit         check the guess (the answer has "correct")
+//   POST   /session/<id>/new            start a new round in the same session
+//   DELETE /session/<id>                end the game
+//   GET    /leaderboard?difficulty=normal   best times for a difficulty
+//   GET    /stats                       sessions open, requests served
+//
+// Won rounds go into the server's own score journal (server-scores.journal), in the same
+// format as the game window's, with a leaderboard per difficulty that follows it.
+//
+// Run with: java GameServer [--host 127.0.0.1] [--port 8080] [--max-sessions 100000] [--idle-minutes 10]
+// It only listens on this computer unless --host names another address (0.0.0.0 for every one).
+// Try LoadGenerator to see how many sessions it keeps up with.
+public class GameServer {
+
+    // Close sessions no request has touched for this long
+    private static final long SWEEP_SECONDS = 10;
+
+    // How often leaderboards catch up with the journal and save their index
+    private static final long SAVE_SECONDS = 5;
+
+    static {
+        // The JDK server writes headers and body separately, so without TCP_NODELAY every small
+        // answer waits ~40 ms for the client's delayed ACK; and it closes idle keep-alive
+        // connections beyond 200 by default, which makes most clients reconnect per request
+        // (both are only read once, so they have to be set before the first server starts)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "100000");
+        }
+    }
+
+    private final HttpServer http;
+    private final ExecutorService requests;
+    private final String requestThreads;
+
+    // Runs every session's reveal and shuffle steps, plus the idle sweep
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final int maxSessions;
+    private final long idleNanos;
+
+    // Where won rounds are saved (null if the journal couldn't be opened), and a leaderboard per difficulty
+    // Leaderboards load on the journal's IO thread, so they are kept as futures: a request thread
+    // never waits on the file while it holds a session's lock
+    private final ScoreJournal journal;
+    private final Map<Difficulty, CompletableFuture<Leaderboard>> leaderboards = new ConcurrentHashMap<>();
+
+    private final SecureRandom ids = new SecureRandom();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+
+    // A server that only this computer can reach
+    public GameServer(int port, int maxSessions, long idleMinutes, ScoreJournal journal) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, maxSessions, idleMinutes, journal);
+    }
+
+    public GameServer(InetAddress host, int port, int maxSessions, long idleMinutes, ScoreJournal journal)
+            throws IOException {
+        this.maxSessions = maxSessions;
+        this.idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
+        this.journal = journal;
+
+        scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "game-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        // Cancelled steps (a new round during a shuffle) leave the queue right away
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.scheduleWithFixedDelay(this::closeIdleSessions, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+        if (journal != null) {
+            scheduler.scheduleWithFixedDelay(this::saveLeaderboards, SAVE_SECONDS, SAVE_SECONDS, TimeUnit.SECONDS);
+            // Start loading the usual difficulties' leaderboards before the first win
+            for (Difficulty difficulty : Difficulty.PRESETS) {
+                leaderboardFor(difficulty);
+            }
+        }
+
+        ExecutorService virtual = virtualThreadExecutor();
+        if (virtual != null) {
+            requests = virtual;
+            requestThreads = "virtual threads";
+        } else {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+            requests = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "game-request");
+                t.setDaemon(true);
+                return t;
+            });
+            requestThreads = threads + " platform threads";
+        }
+
+        http = HttpServer.create(new InetSocketAddress(host, port), 4096);
+        http.createContext("/session", this::handleSession);
+        http.createContext("/leaderboard", this::handleLeaderboard);
+        http.createContext("/stats", this::handleStats);
+        http.setExecutor(requests);
+    }
+
+    // One virtual thread per request on Java 21 and newer, or null if this Java doesn't have them
+    // Found by reflection so the game still builds and runs on Java 17
+    static ExecutorService virtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null; // Not there, or a preview feature that isn't turned on
+        }
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public void stop() {
+        http.stop(0);
+        scheduler.shutdownNow();
+        requests.shutdownNow();
+        for (GameSession session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+        if (journal != null) saveLeaderboards();
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    public String getRequestThreads() {
+        return requestThreads;
+    }
+
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    // /session, /session/<id> and /session/<id>/<action>
+    private void handleSession(HttpExchange exchange) throws IOException {
+        served.incrementAndGet();
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String[] parts = path.split("/"); // "", "session", id, action
+        StringBuilder out = new StringBuilder(256);
+        try {
+            if (parts.length == 2) {
+                if (!method.equals("POST")) {
+                    reply(exchange, 405, error(out, "Use POST to start a session"));
+                    return;
+                }
+                createSession(exchange, out);
+                return;
+            }
+            GameSession session = sessions.get(parts[2]);
+            if (session == null) {
+                reply(exchange, 404, error(out, "No such session"));
+                return;
+            }
+            session.touch();
+            String action = parts.length > 3 ? parts[3] : "";
+            String allowed = !action.isEmpty() ? "POST" : method.equals("DELETE") ? "DELETE" : "GET";
+            if (parts.length > 4 || !method.equals(allowed)) {
+                reply(exchange, 405, error(out, "Can't " + method + " " + path));
+                return;
+            }
+            switch (action) {
+                case "":
+                    if (method.equals("DELETE")) {
+                        closeSession(session);
+                        reply(exchange, 200, out.append("{\"closed\":true}"));
+                        return;
+                    }
+                    break;
+                case "add": {
+                    String cup = query(exchange, "cup");
+                    if (cup == null || !session.add(Integer.parseInt(cup))) {
+                        reply(exchange, 409, error(out, "Cup can't be added now"));
+                        return;
+                    }
+                    break;
+                }
+                case "undo":
+                    if (!session.undo()) {
+                        reply(exchange, 409, error(out, "Nothing to undo"));
+                        return;
+                    }
+                    break;
+                case "submit": {
+                    int correct = session.submit();
+                    if (correct < 0) {
+                        reply(exchange, 409, error(out, "Guess isn't finished"));
+                        return;
+                    }
+                    out.append("{\"correct\":").append(correct).append(",\"session\":");
+                    session.writeJson(out);
+                    reply(exchange, 200, out.append('}'));
+                    return;
+                }
+                case "new":
+                    session.newRound();
+                    break;
+                default:
+                    reply(exchange, 404, error(out, "Unknown action: " + action));
+                    return;
+            }
+            session.writeJson(out);
+            reply(exchange, 200, out);
+        } catch (IllegalArgumentException e) {
+            out.setLength(0);
+            reply(exchange, 400, error(out, e.getMessage()));
+        }
+    }
+
+    private void createSession(HttpExchange exchange, StringBuilder out) throws IOException {
+        String name = query(exchange, "difficulty");
+        Difficulty difficulty = name == null ? Difficulty.NORMAL : Difficulty.parse(name);
+        if (sessionCount.incrementAndGet() > maxSessions) {
+            sessionCount.decrementAndGet();
+            reply(exchange, 503, error(out, "Server is full"));
+            return;
+        }
+        String id = Long.toHexString(ids.nextLong() | Long.MIN_VALUE); // Always 16 digits
+        GameSession session = new GameSession(id, difficulty, scheduler, this::won);
+        sessions.put(id, session);
+        session.writeJson(out);
+        reply(exchange, 201, out);
+    }
+
+    private void closeSession(GameSession session) {
+        if (sessions.remove(session.getId(), session)) {
+            session.close();
+            sessionCount.decrementAndGet();
+        }
+    }
+
+    // Run on the scheduler: close sessions nobody has used for a while
+    private void closeIdleSessions() {
+        long now = System.nanoTime();
+        for (GameSession session : sessions.values()) {
+            if (now - session.getLastUsed() > idleNanos) {
+                closeSession(session);
+            }
+        }
+    }
+
+    // A session won a round: save it and count it on its difficulty's leaderboard
+    // Called with the session locked, so nothing here waits on the file
+    private void won(GameSession session, long elapsedMillis, int attempts) {
+        wins.incrementAndGet();
+        GameEngine engine = session.getEngine();
+        Difficulty difficulty = engine.getDifficulty();
+        if (journal != null) {
+            // The leaderboard picks it up from the journal on the next save
+            leaderboardFor(difficulty);
+            journal.append(new ScoreJournal.Entry(System.currentTimeMillis(), elapsedMillis, attempts,
+                engine.getLastCorrect(), engine.getSeed(), difficulty));
+        } else {
+            leaderboardFor(difficulty).join().add(elapsedMillis, attempts, System.currentTimeMillis());
+        }
+    }
+
+    // The leaderboard for a difficulty, starting to load it from the journal the first time
+    // (without a journal it's a new, empty one, ready right away)
+    private CompletableFuture<Leaderboard> leaderboardFor(Difficulty difficulty) {
+        return leaderboards.computeIfAbsent(difficulty, d -> {
+            if (journal == null) return CompletableFuture.completedFuture(new Leaderboard(5, d));
+            return journal.onIoThread(() -> Leaderboard.open(journal, indexFile(d), 5, d))
+                .exceptionally(error -> {
+                    // Start empty; the next save reads the journal into it from the beginning
+                    System.out.println("Error loading the " + d.getId() + " leaderboard: " + error);
+                    return new Leaderboard(5, d);
+                });
+        });
+    }
+
+    private static Path indexFile(Difficulty difficulty) {
+        return Paths.get("server-scores-" + difficulty.getId() + ".index");
+    }
+
+    // Run on the scheduler: bring every leaderboard up to date with the journal and save it
+    // (once every few seconds, instead of once per win)
+    private void saveLeaderboards() {
+        journal.onIoThread(() -> {
+            for (Map.Entry<Difficulty, CompletableFuture<Leaderboard>> entry : leaderboards.entrySet()) {
+                Leaderboard board = entry.getValue().getNow(null);
+                if (board == null) continue; // Still loading (it reads the journal up to now itself)
+                board.catchUp(journal);
+                board.save(indexFile(entry.getKey()));
+            }
+            return null;
+        }).exceptionally(error -> {
+            System.out.println("Error saving leaderboards: " + error);
+            return null;
+        });
+    }
+
+    private void handleLeaderboard(HttpExchange exchange) throws IOException {
+        served.incrementAndGet();
+        StringBuilder out = new StringBuilder(256);
+        try {
+            String name = query(exchange, "difficulty");
+            Difficulty difficulty = name == null ? Difficulty.NORMAL : Difficulty.parse(name);
+            Leaderboard board = leaderboardFor(difficulty).join();
+            out.append("{\"difficulty\":\"").append(difficulty.getId())
+                .append("\",\"rounds\":").append(board.getRounds())
+                .append(",\"meanAttempts\":").append(String.format(Locale.ROOT, "%.2f", board.meanAttempts()))
+                .append(",\"medianMillis\":").append(board.getRounds() > 0 ? board.percentileTime(50) : 0)
+                .append(",\"topMillis\":[");
+            long[] top = board.topTimes();
+            for (int i = 0; i < top.length; i++) {
+                if (i > 0) out.append(',');
+                out.append(top[i]);
+            }
+            reply(exchange, 200, out.append("]}"));
+        } catch (IllegalArgumentException e) {
+            out.setLength(0);
+            reply(exchange, 400, error(out, e.getMessage()));
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        served.incrementAndGet();
+        StringBuilder out = new StringBuilder(128);
+        out.append("{\"sessions\":").append(sessionCount.get())
+            .append(",\"requests\":").append(served.get())
+            .append(",\"wins\":").append(wins.get())
+            .append(",\"scheduled\":").append(scheduler.getQueue().size())
+            .append(",\"threads\":\"").append(requestThreads).append("\"}");
+        reply(exchange, 200, out);
+    }
+
+    // Find a query parameter, or null if it isn't there
+    private static String query(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.regionMatches(0, name, 0, equals) && equals == name.length()) {
+                return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static StringBuilder error(StringBuilder out, String message) {
+        return out.append("{\"error\":\"").append(message.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"}");
+    }
+
+    private static void reply(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = 8080;
+        int maxSessions = 100_000;
+        long idleMinutes = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host":
+                    host = InetAddress.getByName(value);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--max-sessions":
+                    maxSessions = Integer.parseInt(value);
+                    break;
+                case "--idle-minutes":
+                    idleMinutes = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        ScoreJournal journal = null;
+        try {
+            journal = ScoreJournal.open(Paths.get("server-scores.journal"));
+        } catch (IOException e) {
+            System.out.println("Error opening score journal, scores won't be saved.");
+        }
+        GameServer server = new GameServer(host, port, maxSessions, idleMinutes, journal);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "game-server-stop"));
+        String address = host instanceof Inet6Address ? "[" + host.getHostAddress() + "]" : host.getHostAddress();
+        System.out.println("Cup Memory server on http://" + address + ":" + server.getPort() + "/ ("
+            + server.getRequestThreads() + ")");
+    }
+}
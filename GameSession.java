@@ -0,0 +1,170 @@
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// One player's game on the game server: the same rules as the game window, with no Swing.
+// A session goes REVEAL -> SHUFFLING -> PLAYING -> WON, just like a round in the window.
+// The timed steps (the end of the reveal, each shuffle) run on the server's one shared
+// scheduler instead of a Timer per game, so a session is a few small arrays and no thread.
+//
+// Requests and the scheduler both touch a session, so every method is synchronized.
+// None of them wait on anything, so a lock is only ever held for a moment.
+public class GameSession {
+
+    // Where the round is
+    public static final int REVEAL = 0;     // Correct order shown
+    public static final int SHUFFLING = 1;  // Cups being mixed up
+    public static final int PLAYING = 2;    // Player can add cups and submit
+    public static final int WON = 3;        // Round solved
+    public static final int CLOSED = 4;     // Session ended, nothing more can happen
+
+    private static final String[] STATE_NAMES = {"reveal", "shuffling", "playing", "won", "closed"};
+
+    private final String id;
+    private final GameEngine engine;
+    private final ScheduledExecutorService scheduler;
+
+    // Called once when a round is won (the server saves the score)
+    private final Winner winner;
+
+    private int state;
+    private int shufflesLeft;
+
+    // The next timed step, so it can be cancelled if the round is replaced
+    private ScheduledFuture<?> step;
+
+    // When a request last touched this session (System.nanoTime), for closing idle sessions
+    private volatile long lastUsed;
+
+    // Reused for copying the cups into a response
+    private final int[] cups;
+
+    // Hears about won rounds
+    public interface Winner {
+        void won(GameSession session, long elapsedMillis, int attempts);
+    }
+
+    public GameSession(String id, Difficulty difficulty, ScheduledExecutorService scheduler, Winner winner) {
+        this.id = id;
+        this.engine = new GameEngine(difficulty);
+        this.scheduler = scheduler;
+        this.winner = winner;
+        this.cups = new int[difficulty.getCupCount()];
+        touch();
+        newRound();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    public synchronized int getState() {
+        return state;
+    }
+
+    public static String stateName(int state) {
+        return STATE_NAMES[state];
+    }
+
+    // Start a fresh round (the reveal starts now)
+    public synchronized void newRound() {
+        if (state == CLOSED) return;
+        cancelStep();
+        engine.newRound();
+        state = REVEAL;
+        shufflesLeft = engine.getDifficulty().getShuffleCycles();
+        step = scheduler.schedule(this::nextStep, engine.getDifficulty().getRevealMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Run by the scheduler: end the reveal, or do one more shuffle, or let the player start
+    private synchronized void nextStep() {
+        if (state != REVEAL && state != SHUFFLING) return;
+        if (shufflesLeft == 0) {
+            state = PLAYING;
+            step = null;
+            return;
+        }
+        state = SHUFFLING;
+        engine.shuffleDisplay();
+        shufflesLeft--;
+        step = scheduler.schedule(this::nextStep, CupMemoryGame.SHUFFLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Add a cup to the guess, returns false if it can't be added right now
+    public synchronized boolean add(int color) {
+        if (state != PLAYING || color < 0 || color >= engine.getCupCount()) return false;
+        return engine.addGuess(color);
+    }
+
+    public synchronized boolean undo() {
+        return state == PLAYING && engine.undo();
+    }
+
+    // Check the guess, returns how many cups are right or -1 if it can't be submitted yet
+    public synchronized int submit() {
+        if (state != PLAYING) return -1;
+        int correct = engine.submit();
+        if (engine.isSolved()) {
+            state = WON;
+            winner.won(this, engine.getElapsedMillis(), engine.getAttempts());
+        }
+        return correct;
+    }
+
+    // End the session; any timed step still waiting is dropped
+    public synchronized void close() {
+        cancelStep();
+        state = CLOSED;
+    }
+
+    private void cancelStep() {
+        if (step != null) {
+            step.cancel(false);
+            step = null;
+        }
+    }
+
+    public void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    // Write the session as JSON: its state, the cups on the table and the guess so far
+    // The correct order is only shown during the reveal, like in the game window
+    public synchronized void writeJson(StringBuilder out) {
+        out.append("{\"id\":\"").append(id)
+            .append("\",\"state\":\"").append(STATE_NAMES[state])
+            .append("\",\"difficulty\":\"").append(engine.getDifficulty().getId())
+            .append("\",\"cups\":").append(engine.getCupCount())
+            .append(",\"seed\":\"").append(Long.toHexString(engine.getSeed()))
+            .append("\",\"table\":");
+        if (state == REVEAL) {
+            engine.copyCorrectOrder(cups);
+        } else {
+            engine.copyShuffledOrder(cups);
+        }
+        writeArray(out, cups, engine.getCupCount());
+        out.append(",\"guess\":");
+        writeArray(out, cups, engine.copyGuess(cups));
+        out.append(",\"attempts\":").append(engine.getAttempts())
+            .append(",\"lastCorrect\":").append(engine.getLastCorrect())
+            .append(",\"elapsedMillis\":").append(engine.getElapsedMillis())
+            .append('}');
+    }
+
+    private static void writeArray(StringBuilder out, int[] values, int count) {
+        out.append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) out.append(',');
+            out.append(values[i]);
+        }
+        out.append(']');
+    }
+}
@@ -1,19 +1,42 @@
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import javax.swing.*;
 
+// The main menu. It's built once and kept in the game window (see ScreenManager).
 public class HomeScreen {
 
+    // The level picked last time, so the menu remembers it
+    private static Difficulty lastDifficulty = Difficulty.NORMAL;
+
+    // Whether rounds show each guessed cup right or wrong straight away (practice rounds)
+    private static boolean instantFeedback = false;
+
+    // The logo picture (Assets finds it whatever the case of the name), and its scaled copy
+    private static final String LOGO_FILE = "CupMemoryText.png";
+    private static CompletableFuture<ImageIcon> logo;
+
+    // What Start Game does
+    private static Consumer<Difficulty> startAction;
+
     // Show the main menu screen
-    // onStart is what happens when player clicks Start Game
-    public static void show(Runnable onStart) {
-        // Create the main menu window
-        JFrame homeFrame = new JFrame("Welcome to Cup Memory Game");
-        homeFrame.setSize(600, 400);
-        homeFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        homeFrame.setLocationRelativeTo(null);  // Center the window on screen
-
-        // Main container that holds everything
-        JPanel wrapper = new JPanel(new BorderLayout());
+    // onStart is what happens when player clicks Start Game (it gets the chosen difficulty)
+    public static void show(Consumer<Difficulty> onStart) {
+        CupSprites.preloadAsync(); // Start getting the cup pictures ready in the background
+        startAction = onStart;
+        ScreenManager.show(ScreenManager.HOME, "Welcome to Cup Memory Game", HomeScreen::build);
+    }
+
+    // Make the main menu
+    private static JComponent build() {
+        // Main container that holds everything (it notes when the menu is first drawn)
+        JPanel wrapper = new JPanel(new BorderLayout()) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                Startup.firstFrame();
+            }
+        };
         wrapper.setBackground(new Color(230, 230, 250));  // Light purple background
 
         // Panel that holds the logo and buttons
@@ -21,35 +44,39 @@ public class HomeScreen {
         mainPanel.setBackground(new Color(230, 230, 250));  // Same light purple
         mainPanel.setLayout(new BoxLayout(mainPanel, BoxLayout.Y_AXIS));  // Stacking things top to bottom
 
-        // Game logo image
-        try {
-            ImageIcon logoIcon = new ImageIcon("src/images/cupmemorytext.png");
-            
-            // Make the logo smaller if it's too big
-            int maxWidth = 400;  // Don't let logo be wider than this
-            float scale = (float) maxWidth / logoIcon.getIconWidth();  // How much to shrink it
-            int newWidth = (int) (logoIcon.getIconWidth() * scale);
-            int newHeight = (int) (logoIcon.getIconHeight() * scale);
-
-            // Resize the image to the new size
-            Image scaled = logoIcon.getImage().getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
-            JLabel logoLabel = new JLabel(new ImageIcon(scaled));
-            logoLabel.setAlignmentX(Component.CENTER_ALIGNMENT);  // Center the logo
-            mainPanel.add(Box.createVerticalStrut(20));  // Add space at the top
-            mainPanel.add(logoLabel);  // Add the logo to the panel
-        } catch (Exception e) {
-            // If the logo image doesn't exist, show text instead
-            JLabel fallback = new JLabel("Cup Memory", SwingConstants.CENTER);
-            fallback.setFont(new Font("Segoe UI", Font.BOLD, 28));
-            fallback.setAlignmentX(Component.CENTER_ALIGNMENT);
-            mainPanel.add(fallback);
-        }
+        // Game logo image, read and scaled in the background so the window shows right away
+        // (the title text stands in for it until it's ready)
+        JLabel logoLabel = new JLabel("Cup Memory", SwingConstants.CENTER);
+        logoLabel.setFont(new Font("Segoe UI", Font.BOLD, 28));
+        logoLabel.setAlignmentX(Component.CENTER_ALIGNMENT);  // Center the logo
+        mainPanel.add(Box.createVerticalStrut(20));  // Add space at the top
+        mainPanel.add(logoLabel);  // Add the logo to the panel
+        logo().thenAccept(icon -> SwingUtilities.invokeLater(() -> {
+            if (icon == null) return; // Keep the text if the picture is missing
+            logoLabel.setText(null);
+            logoLabel.setIcon(icon);
+            mainPanel.revalidate();
+        }));
+
+        // Let the player pick how hard the game is
+        JComboBox<Difficulty> difficultyBox = new JComboBox<>(Difficulty.PRESETS);
+        difficultyBox.setSelectedItem(lastDifficulty);
+        difficultyBox.setFont(new Font("Segoe UI", Font.PLAIN, 15));
+        difficultyBox.setMaximumSize(new Dimension(200, 30));
+        difficultyBox.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        // Let the player practice with every cup marked right or wrong as it's clicked
+        JCheckBox instantBox = new JCheckBox("Instant feedback (practice)", instantFeedback);
+        instantBox.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        instantBox.setOpaque(false);
+        instantBox.setAlignmentX(Component.CENTER_ALIGNMENT);
 
         // Create the "Start Game" button
         JButton startButton = createRoundedButton("Start Game", new Color(100, 149, 237));
         startButton.addActionListener(e -> {
-            homeFrame.dispose();  // Close the main menu window
-            onStart.run(); // Start the game
+            lastDifficulty = (Difficulty) difficultyBox.getSelectedItem();
+            instantFeedback = instantBox.isSelected();
+            startAction.accept(lastDifficulty); // Start the game
         });
 
         // Create the "How to Play" button
@@ -58,6 +85,10 @@ public class HomeScreen {
 
         // Add the buttons to the panel with spacing
         mainPanel.add(Box.createVerticalStrut(10)); // Space before first button
+        mainPanel.add(difficultyBox);
+        mainPanel.add(Box.createVerticalStrut(4));
+        mainPanel.add(instantBox);
+        mainPanel.add(Box.createVerticalStrut(8)); // Space between picker and button
         mainPanel.add(startButton);
         mainPanel.add(Box.createVerticalStrut(8)); // Space between buttons
         mainPanel.add(howToPlayButton);
@@ -78,9 +109,31 @@ public class HomeScreen {
         wrapper.add(mainPanel, BorderLayout.CENTER);    // Logo and buttons in the center
         wrapper.add(creditsPanel, BorderLayout.SOUTH);  // Credits at the bottom
 
-        // Set up the window and make it visible
-        homeFrame.setContentPane(wrapper);
-        homeFrame.setVisible(true);
+        return wrapper;
+    }
+
+    // Whether the player asked for instant feedback when they last started a game
+    public static boolean isInstantFeedback() {
+        return instantFeedback;
+    }
+
+    // The logo shrunk to fit the menu, made once on the asset loader threads
+    // (completes with null if the picture is missing)
+    private static synchronized CompletableFuture<ImageIcon> logo() {
+        if (logo == null) {
+            logo = Assets.image(LOGO_FILE).thenCompose(image -> Assets.onLoader(() -> {
+                if (image == null) return null;
+                // Make the logo smaller if it's too big
+                int maxWidth = 400;  // Don't let logo be wider than this
+                float scale = Math.min(1f, (float) maxWidth / image.getWidth());  // How much to shrink it
+                int newWidth = (int) (image.getWidth() * scale);
+                int newHeight = (int) (image.getHeight() * scale);
+                ImageIcon icon = new ImageIcon(CupSprites.scaleSmooth(image, newWidth, newHeight));
+                Assets.release(LOGO_FILE); // Only the small copy is kept
+                return icon;
+            }));
+        }
+        return logo;
     }
 
     // Helper method to create nice-looking rounded buttons
@@ -1,18 +1,19 @@
 import java.awt.*;
 import javax.swing.*;
 
+// The instructions. They're built once and kept in the game window (see ScreenManager).
 public class HowToPlayScreen {
 
-    // Show the instructions window when player clicks "How to Play"
+    // Show the instructions when player clicks "How to Play"
     public static void showInstructions() {
-        // Create a new window for the instructions
-        JFrame helpFrame = new JFrame("How to Play");
-        helpFrame.setSize(480, 320); 
-        helpFrame.setLocationRelativeTo(null); 
-        helpFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE); // Close only this window, not whole program
+        ScreenManager.show(ScreenManager.HELP, "How to Play", HowToPlayScreen::build);
+    }
 
-        // Main panel that holds everything
+    // Make the instructions screen
+    private static JComponent build() {
+        // Main panel that holds everything (kept to a readable size in the middle of the window)
         JPanel panel = new JPanel();
+        panel.setPreferredSize(new Dimension(480, 420));
         panel.setBackground(new Color(245, 245, 255));  
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS)); // Stack things top to bottom
         panel.setBorder(BorderFactory.createEmptyBorder(20, 30, 20, 30)); // Add padding around edges
@@ -31,6 +32,8 @@ public class HowToPlayScreen {
             "1. Watch carefully as the cups shuffle.\n" +
             "2. Click the correct order of cups.\n" +
             "3. If correct, you win! Otherwise, try again.\n\n" +
+            "Practice:\nTick Instant feedback on the menu to see each cup outlined green (right spot) " +
+            "or red (wrong spot) as you click it. Practice times aren't saved.\n\n" +
             "Tip:\nFocus closely and don't blink!"
         );
         
@@ -44,20 +47,30 @@ public class HowToPlayScreen {
 
         panel.add(instructions);  // Add the instructions to the panel
 
-        // Create the Close button
-        JButton closeButton = new JButton("Close");
+        // Show the cups the player will see (small pictures from the shared sprite cache)
+        JPanel cupsRow = new JPanel(new FlowLayout(FlowLayout.CENTER, 6, 0));
+        cupsRow.setBackground(new Color(245, 245, 255));
+        for (int color = 0; color < GameEngine.COLOR_NAMES.length; color++) {
+            cupsRow.add(new JLabel(CupSprites.smallIcon(color)));
+        }
+        cupsRow.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(cupsRow);
+
+        // Create the Back button (goes back to the menu)
+        JButton closeButton = new JButton("Back");
         closeButton.setFont(new Font("Segoe UI", Font.PLAIN, 16)); 
         closeButton.setFocusPainted(false);
         closeButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         closeButton.setMaximumSize(new Dimension(120, 35)); 
-        closeButton.addActionListener(e -> helpFrame.dispose());
+        closeButton.addActionListener(e -> ScreenManager.back());
 
         // Add some space before the button, then add the button
         panel.add(Box.createRigidArea(new Dimension(0, 15)));
         panel.add(closeButton);
 
-        // Put the panel in the window and show it
-        helpFrame.setContentPane(panel);
-        helpFrame.setVisible(true);
+        JPanel centered = new JPanel(new GridBagLayout());
+        centered.setBackground(new Color(245, 245, 255));
+        centered.add(panel);
+        return centered;
     }
 }
\ No newline at end of file
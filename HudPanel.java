@@ -0,0 +1,210 @@
+import java.awt.*;
+import java.util.Map;
+import javax.swing.*;
+
+// The score lines at the top of the game (time, correct, attempts, high score).
+// Each line keeps its text in a reusable char buffer, so updating a number makes no garbage.
+// Only the line that changed is repainted, and nothing is re-laid out.
+public class HudPanel extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    // Which line is which
+    public static final int TIMER = 0;
+    public static final int CORRECT = 1;
+    public static final int ATTEMPTS = 2;
+    public static final int HIGH_SCORE = 3;
+    private static final int LINE_COUNT = 4;
+
+    // Value used for "no time yet" (shown as --:--)
+    public static final int NO_TIME = Integer.MAX_VALUE;
+
+    // Value a line has before anything was shown
+    private static final int UNSET = Integer.MIN_VALUE;
+
+    // The fixed text around each number
+    private static final char[][] PREFIX = {
+        "Time: ".toCharArray(), new char[0], "Attempts: ".toCharArray(), "High Score: ".toCharArray()
+    };
+    private static final char[][] SUFFIX = {
+        new char[0], " Correct".toCharArray(), new char[0], new char[0]
+    };
+
+    // How the number on each line is written
+    private static final int AS_NUMBER = 0;
+    private static final int AS_SECONDS = 1; // mm:ss
+    private static final int AS_MILLIS = 2;  // mm:ss.mmm
+    private static final int[] STYLE = {AS_SECONDS, AS_NUMBER, AS_NUMBER, AS_MILLIS};
+
+    // The text of each line, reused for every update
+    private final char[][] text = new char[LINE_COUNT][40];
+    private final int[] length = new int[LINE_COUNT];
+    private final int[] value = {UNSET, UNSET, UNSET, UNSET};
+
+    // Font smoothing settings from the desktop, so text looks like a normal JLabel
+    private final Map<?, ?> desktopHints;
+
+    // Counters for how many updates were drawn or skipped
+    private long updates = 0;
+    private long skipped = 0;
+
+    public HudPanel() {
+        setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        setForeground(UIManager.getColor("Label.foreground"));
+        setAlignmentX(Component.CENTER_ALIGNMENT);
+        desktopHints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        setTime(0);
+        setCorrect(0);
+        setAttempts(0);
+        setHighScore(NO_TIME);
+    }
+
+    public boolean setTime(int seconds) {
+        return setValue(TIMER, seconds);
+    }
+
+    public boolean setCorrect(int correct) {
+        return setValue(CORRECT, correct);
+    }
+
+    public boolean setAttempts(int attempts) {
+        return setValue(ATTEMPTS, attempts);
+    }
+
+    // Best time in milliseconds (Long.MAX_VALUE for no best time yet)
+    public boolean setHighScore(long millis) {
+        return setValue(HIGH_SCORE, millis >= NO_TIME ? NO_TIME : (int) millis);
+    }
+
+    // Change one line, returns false (and does nothing) if it already shows that value
+    public boolean setValue(int line, int newValue) {
+        if (value[line] == newValue) {
+            skipped++;
+            return false;
+        }
+        value[line] = newValue;
+        format(line);
+        updates++;
+        repaintLine(line);
+        return true;
+    }
+
+    // The text a line shows right now (makes a String, so only for tests and tools)
+    public String getText(int line) {
+        return new String(text[line], 0, length[line]);
+    }
+
+    public long getUpdateCount() {
+        return updates;
+    }
+
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    // Write prefix + number + suffix into the line's buffer
+    private void format(int line) {
+        char[] out = text[line];
+        int pos = copy(PREFIX[line], out, 0);
+        if (STYLE[line] == AS_SECONDS) {
+            pos = writeTime(value[line], out, pos);
+        } else if (STYLE[line] == AS_MILLIS) {
+            pos = writeTimeMillis(value[line], out, pos);
+        } else {
+            pos = writeNumber(value[line], out, pos, 1);
+        }
+        pos = copy(SUFFIX[line], out, pos);
+        length[line] = pos;
+    }
+
+    // Ask Swing to redraw just the strip one line lives in
+    private void repaintLine(int line) {
+        int lineHeight = lineHeight();
+        Insets insets = getInsets();
+        repaint(0, insets.top + line * lineHeight, getWidth(), lineHeight);
+    }
+
+    private int lineHeight() {
+        return getFontMetrics(getFont()).getHeight();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) return super.getPreferredSize();
+        FontMetrics fm = getFontMetrics(getFont());
+        Insets insets = getInsets();
+        // Wide enough for the longest line we expect, so the size never changes
+        int width = fm.stringWidth("High Score: 000:00.000") + insets.left + insets.right;
+        return new Dimension(width, fm.getHeight() * LINE_COUNT + insets.top + insets.bottom);
+    }
+
+    @Override
+    public Dimension getMaximumSize() {
+        Dimension size = getPreferredSize();
+        return new Dimension(Integer.MAX_VALUE, size.height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        if (desktopHints != null) g2.addRenderingHints(desktopHints);
+        g2.setFont(getFont());
+        g2.setColor(getForeground());
+        FontMetrics fm = g2.getFontMetrics();
+        Insets insets = getInsets();
+        int lineHeight = fm.getHeight();
+        Rectangle clip = g2.getClipBounds();
+        for (int line = 0; line < LINE_COUNT; line++) {
+            int top = insets.top + line * lineHeight;
+            if (clip != null && (top + lineHeight <= clip.y || top >= clip.y + clip.height)) continue;
+            int x = (getWidth() - fm.charsWidth(text[line], 0, length[line])) / 2;
+            g2.drawChars(text[line], 0, length[line], x, top + fm.getAscent());
+        }
+    }
+
+    // Write seconds as mm:ss (or --:-- for no time), returns the position after the text
+    static int writeTime(int timeInSeconds, char[] out, int pos) {
+        if (timeInSeconds == NO_TIME) {
+            out[pos++] = '-';
+            out[pos++] = '-';
+            out[pos++] = ':';
+            out[pos++] = '-';
+            out[pos++] = '-';
+            return pos;
+        }
+        pos = writeNumber(timeInSeconds / 60, out, pos, 2);
+        out[pos++] = ':';
+        return writeNumber(timeInSeconds % 60, out, pos, 2);
+    }
+
+    // Write milliseconds as mm:ss.mmm (or --:-- for no time), returns the position after the text
+    static int writeTimeMillis(int millis, char[] out, int pos) {
+        if (millis == NO_TIME) return writeTime(NO_TIME, out, pos);
+        pos = writeTime(millis / 1000, out, pos);
+        out[pos++] = '.';
+        return writeNumber(millis % 1000, out, pos, 3);
+    }
+
+    // Write a number with at least minDigits digits (zero padded), returns the position after it
+    static int writeNumber(int number, char[] out, int pos, int minDigits) {
+        if (number < 0) {
+            out[pos++] = '-';
+            number = -number;
+        }
+        int digits = 1;
+        for (int rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            out[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return pos + digits;
+    }
+
+    private static int copy(char[] from, char[] out, int pos) {
+        System.arraycopy(from, 0, out, pos, from.length);
+        return pos + from.length;
+    }
+}
@@ -0,0 +1,271 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+
+// Fastest times and running stats for every finished round.
+// The top times are kept in a small heap, so adding a round is O(log n).
+// Averages use Welford's running mean/variance and percentiles come from a LogHistogram,
+// so memory stays the same size no matter how many rounds have been played.
+//
+// The score journal is the real record of every round. This class follows it: catchUp()
+// reads only the records added since last time, and save() writes a small index file
+// (one per difficulty, like scores-6c-5s-3000ms.index) holding the stats and how far
+// into the journal they go, so the next start doesn't have to read years of rounds again.
+// Each difficulty has its own leaderboard, since times from different levels can't be compared.
+public class Leaderboard {
+
+    private static final int INDEX_MAGIC = 0x43555049; // "CUPI"
+    private static final int INDEX_VERSION = 1;
+
+    // How many fastest times to keep
+    private final int capacity;
+
+    // Only rounds at this difficulty count (null counts every round)
+    private final Difficulty difficulty;
+
+    // The fastest times as a max-heap: the slowest of the kept times sits at the top,
+    // so a new time only has to beat that one to get in
+    private final long[] heapTimes;
+    private final int[] heapAttempts;
+    private final long[] heapWhen;
+    private int heapSize = 0;
+
+    // Running stats (Welford's method)
+    private long rounds = 0;
+    private double meanTime = 0;
+    private double m2Time = 0;
+    private double meanAttempts = 0;
+    private double m2Attempts = 0;
+
+    // Spread of times and attempts, for percentiles
+    private LogHistogram times = new LogHistogram();
+    private LogHistogram attempts = new LogHistogram();
+
+    // How far into the score journal we've read, and the checksum of the last record read there
+    private long journalOffset = ScoreJournal.HEADER_SIZE;
+    private int lastChecksum = 0;
+
+    public Leaderboard() {
+        this(5, null);
+    }
+
+    public Leaderboard(int capacity, Difficulty difficulty) {
+        this.capacity = capacity;
+        this.difficulty = difficulty;
+        this.heapTimes = new long[capacity];
+        this.heapAttempts = new int[capacity];
+        this.heapWhen = new long[capacity];
+    }
+
+    // Load the saved index (if it still matches the journal), then read any newer rounds
+    public static Leaderboard open(ScoreJournal journal, Path indexFile, int capacity, Difficulty difficulty)
+            throws IOException {
+        Leaderboard board = load(indexFile, capacity, difficulty);
+        if (board == null || !journal.hasRecordEndingAt(board.journalOffset, board.lastChecksum)) {
+            board = new Leaderboard(capacity, difficulty); // Missing or out of date, start from the beginning
+        }
+        board.catchUp(journal);
+        board.save(indexFile);
+        return board;
+    }
+
+    // Read the rounds added to the journal since last time
+    // Returns how many new rounds were found
+    public synchronized long catchUp(ScoreJournal journal) throws IOException {
+        long before = rounds;
+        journalOffset = journal.scan(journalOffset, entry -> {
+            if (difficulty == null || entry.isDifficulty(difficulty)) {
+                add(entry.elapsedMillis, entry.attempts, entry.timestamp);
+            }
+            lastChecksum = entry.checksum;
+        });
+        return rounds - before;
+    }
+
+    // Count one finished round
+    public synchronized void add(long timeMillis, int attemptCount, long timestamp) {
+        rounds++;
+        double delta = timeMillis - meanTime;
+        meanTime += delta / rounds;
+        m2Time += delta * (timeMillis - meanTime);
+        double deltaAttempts = attemptCount - meanAttempts;
+        meanAttempts += deltaAttempts / rounds;
+        m2Attempts += deltaAttempts * (attemptCount - meanAttempts);
+        times.record(timeMillis);
+        attempts.record(attemptCount);
+        offer(timeMillis, attemptCount, timestamp);
+    }
+
+    // Put a time in the heap if it is one of the fastest
+    private void offer(long time, int attemptCount, long when) {
+        if (heapSize < capacity) {
+            int i = heapSize++;
+            set(i, time, attemptCount, when);
+            siftUp(i);
+        } else if (capacity > 0 && time < heapTimes[0]) {
+            set(0, time, attemptCount, when);
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heapTimes[parent] >= heapTimes[i]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int largest = i;
+            if (left < heapSize && heapTimes[left] > heapTimes[largest]) largest = left;
+            if (right < heapSize && heapTimes[right] > heapTimes[largest]) largest = right;
+            if (largest == i) return;
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private void set(int i, long time, int attemptCount, long when) {
+        heapTimes[i] = time;
+        heapAttempts[i] = attemptCount;
+        heapWhen[i] = when;
+    }
+
+    private void swap(int a, int b) {
+        long time = heapTimes[a];
+        int attemptCount = heapAttempts[a];
+        long when = heapWhen[a];
+        set(a, heapTimes[b], heapAttempts[b], heapWhen[b]);
+        set(b, time, attemptCount, when);
+    }
+
+    // Best time in milliseconds (Long.MAX_VALUE if no rounds yet)
+    public synchronized long bestTime() {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < heapSize; i++) {
+            best = Math.min(best, heapTimes[i]);
+        }
+        return best;
+    }
+
+    // The fastest times, fastest first
+    public synchronized long[] topTimes() {
+        long[] top = Arrays.copyOf(heapTimes, heapSize);
+        Arrays.sort(top);
+        return top;
+    }
+
+    // Copy the fastest times, fastest first, with their attempts and when they were played
+    // Returns how many were copied (no more than the arrays hold)
+    public synchronized int copyTop(long[] times, int[] attemptCounts, long[] when) {
+        Integer[] order = new Integer[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(heapTimes[a], heapTimes[b]));
+        int count = Math.min(heapSize, times.length);
+        for (int i = 0; i < count; i++) {
+            times[i] = heapTimes[order[i]];
+            attemptCounts[i] = heapAttempts[order[i]];
+            when[i] = heapWhen[order[i]];
+        }
+        return count;
+    }
+
+    // Where a time would place among the fastest times (1 = best), or 0 if it wouldn't make the list
+    public synchronized int rankOf(long timeMillis) {
+        int faster = 0;
+        for (int i = 0; i < heapSize; i++) {
+            if (heapTimes[i] < timeMillis) faster++;
+        }
+        return faster < capacity ? faster + 1 : 0;
+    }
+
+    public synchronized long getRounds() {
+        return rounds;
+    }
+
+    public synchronized double meanTime() {
+        return meanTime;
+    }
+
+    public synchronized double stdDevTime() {
+        return rounds > 1 ? Math.sqrt(m2Time / (rounds - 1)) : 0;
+    }
+
+    public synchronized double meanAttempts() {
+        return meanAttempts;
+    }
+
+    public synchronized double stdDevAttempts() {
+        return rounds > 1 ? Math.sqrt(m2Attempts / (rounds - 1)) : 0;
+    }
+
+    public synchronized long percentileTime(double percent) {
+        return times.percentile(percent);
+    }
+
+    public synchronized long percentileAttempts(double percent) {
+        return attempts.percentile(percent);
+    }
+
+    // Write the index file (to a temp file first, so a crash never leaves half an index)
+    public synchronized void save(Path indexFile) throws IOException {
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(journalOffset);
+            out.writeInt(lastChecksum);
+            out.writeLong(rounds);
+            out.writeDouble(meanTime);
+            out.writeDouble(m2Time);
+            out.writeDouble(meanAttempts);
+            out.writeDouble(m2Attempts);
+            out.writeInt(heapSize);
+            for (int i = 0; i < heapSize; i++) {
+                out.writeLong(heapTimes[i]);
+                out.writeInt(heapAttempts[i]);
+                out.writeLong(heapWhen[i]);
+            }
+            times.write(out);
+            attempts.write(out);
+        }
+        try {
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Read an index file, or return null if it is missing or unreadable
+    static Leaderboard load(Path indexFile, int capacity, Difficulty difficulty) {
+        if (!Files.exists(indexFile)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) return null;
+            Leaderboard board = new Leaderboard(capacity, difficulty);
+            board.journalOffset = in.readLong();
+            board.lastChecksum = in.readInt();
+            board.rounds = in.readLong();
+            board.meanTime = in.readDouble();
+            board.m2Time = in.readDouble();
+            board.meanAttempts = in.readDouble();
+            board.m2Attempts = in.readDouble();
+            int saved = in.readInt();
+            for (int i = 0; i < saved; i++) {
+                board.offer(in.readLong(), in.readInt(), in.readLong());
+            }
+            board.times = LogHistogram.read(in);
+            board.attempts = LogHistogram.read(in);
+            return board;
+        } catch (IOException e) {
+            System.out.println("Score index unreadable, rebuilding it.");
+            return null;
+        }
+    }
+}
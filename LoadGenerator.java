@@ -0,0 +1,305 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Plays lots of games against a GameServer at once and reports how fast it answers.
+// Each made-up player is a small state machine driven by HTTP callbacks: start a session,
+// wait out the reveal and shuffles, then play the round with the hint solver's guesses
+// (one request per cup, then a submit) until it's won, and start the next round. Boards too big
+// for the solver are solved by swapping two cups at a time and keeping swaps that score better.
+// No player ever holds a thread while it waits, so tens of thousands fit in one program.
+//
+// Run with: java LoadGenerator [--players 1000] [--seconds 30] [--difficulty normal]
+//                              [--click-millis 0] [--url http://localhost:8080]
+// Without --url it starts a server in this program on a free port (scores aren't saved).
+public class LoadGenerator {
+
+    private final HttpClient client;
+    private final String base;
+    private final Difficulty difficulty;
+    private final long clickMillis;
+    private volatile boolean stopping = false;
+
+    // Results, shared by every player
+    private final LogHistogram latencyMicros = new LogHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+
+    public LoadGenerator(String base, Difficulty difficulty, long clickMillis, ExecutorService executor) {
+        this.base = base;
+        this.difficulty = difficulty;
+        this.clickMillis = clickMillis;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(executor)
+            .build();
+    }
+
+    // One made-up player
+    private final class Player {
+        private String id;
+        private final PermutationSolver solver;
+        private final int cups = difficulty.getCupCount();
+        private final int[] guess = new int[cups];
+        private int added;
+
+        // Big boards: the swap being tried (cups at swapFirst and swapSecond) and the score of
+        // the order without it (-1 before the first guess of a round)
+        private int swapFirst;
+        private int swapSecond;
+        private int score;
+
+        Player() {
+            solver = cups <= PermutationSolver.MAX_CUPS ? new PermutationSolver(cups) : null;
+        }
+
+        void start() {
+            active.incrementAndGet();
+            send("POST", "/session?difficulty=" + difficulty.getId(), body -> {
+                id = field(body, "id");
+                roundStarted();
+            });
+        }
+
+        // Wait until the cups stop moving (plus a little, so the first check usually finds them ready)
+        void roundStarted() {
+            if (solver != null) {
+                solver.reset();
+            } else {
+                for (int i = 0; i < cups; i++) {
+                    guess[i] = i;
+                }
+                swapFirst = 0;
+                swapSecond = 0;
+                score = -1;
+            }
+            long wait = difficulty.getRevealMillis()
+                + (long) difficulty.getShuffleCycles() * CupMemoryGame.SHUFFLE_MILLIS + 50;
+            later(wait, this::checkReady);
+        }
+
+        void checkReady() {
+            send("GET", "/session/" + id, body -> {
+                if (field(body, "state").equals("playing")) {
+                    nextGuess();
+                } else {
+                    later(CupMemoryGame.SHUFFLE_MILLIS, this::checkReady);
+                }
+            });
+        }
+
+        // Pick the next whole guess, then click its cups one request at a time
+        void nextGuess() {
+            if (solver != null) {
+                solver.suggest(guess);
+            } else if (score >= 0) {
+                nextSwap();
+            }
+            added = 0;
+            addNext();
+        }
+
+        void addNext() {
+            if (added == cups) {
+                submit();
+                return;
+            }
+            int cup = guess[added++];
+            Runnable next = clickMillis > 0 ? () -> later(clickMillis, this::addNext) : this::addNext;
+            send("POST", "/session/" + id + "/add?cup=" + cup, body -> next.run());
+        }
+
+        void submit() {
+            send("POST", "/session/" + id + "/submit", body -> {
+                int correct = Integer.parseInt(field(body, "correct"));
+                if (correct == cups) {
+                    wins.incrementAndGet();
+                    if (stopping) {
+                        send("DELETE", "/session/" + id, done -> active.decrementAndGet());
+                    } else {
+                        send("POST", "/session/" + id + "/new", done -> roundStarted());
+                    }
+                } else {
+                    if (solver != null) {
+                        solver.update(guess, correct);
+                    } else {
+                        swapChecked(correct);
+                    }
+                    nextGuess();
+                }
+            });
+        }
+
+        // Big boards: try swapping the next pair of cups
+        // Every cup from swapFirst on is swapped with swapFirst in turn, so swapFirst's own cup is
+        // found before moving on, and the board is solved after at most cups * (cups - 1) / 2 tries
+        void nextSwap() {
+            if (++swapSecond >= cups) {
+                swapFirst++;
+                swapSecond = swapFirst + 1;
+                if (swapSecond >= cups) {
+                    // Shouldn't happen, but go round again rather than give up
+                    swapFirst = 0;
+                    swapSecond = 1;
+                }
+            }
+            swap(swapFirst, swapSecond);
+        }
+
+        // Big boards: keep the swap just tried if it put more cups in the right spot, else undo it
+        void swapChecked(int correct) {
+            if (score < 0) {
+                score = correct; // The starting order, nothing was swapped
+            } else if (correct > score) {
+                score = correct;
+            } else {
+                swap(swapFirst, swapSecond);
+            }
+        }
+
+        private void swap(int a, int b) {
+            int cup = guess[a];
+            guess[a] = guess[b];
+            guess[b] = cup;
+        }
+
+        // Send a request; on a good answer run `then` with the body, otherwise count an error
+        // and drop this player
+        void send(String method, String path, Consumer<String> then) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(30))
+                .build();
+            long start = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                long micros = (System.nanoTime() - start) / 1000;
+                requests.incrementAndGet();
+                synchronized (latencyMicros) {
+                    latencyMicros.record(micros);
+                }
+                if (error != null || response.statusCode() >= 400) {
+                    errors.incrementAndGet();
+                    active.decrementAndGet();
+                    return;
+                }
+                try {
+                    then.accept(response.body());
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                    active.decrementAndGet();
+                }
+            });
+        }
+
+        void later(long millis, Runnable step) {
+            CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS).execute(step);
+        }
+    }
+
+    // Read one top-level field out of a small JSON answer (strings lose their quotes)
+    static String field(String json, String name) {
+        String key = "\"" + name + "\":";
+        int at = json.indexOf(key);
+        if (at < 0) throw new IllegalArgumentException("No " + name + " in " + json);
+        int start = at + key.length();
+        if (json.charAt(start) == '"') {
+            return json.substring(start + 1, json.indexOf('"', start + 1));
+        }
+        int end = start;
+        while (end < json.length() && (json.charAt(end) == '-' || Character.isDigit(json.charAt(end)))) end++;
+        return json.substring(start, end);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = 1000;
+        int seconds = 30;
+        long clickMillis = 0;
+        Difficulty difficulty = Difficulty.NORMAL;
+        String url = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--players":
+                    players = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(value);
+                    break;
+                case "--difficulty":
+                    difficulty = Difficulty.parse(value);
+                    break;
+                case "--click-millis":
+                    clickMillis = Long.parseLong(value);
+                    break;
+                case "--url":
+                    url = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        GameServer server = null;
+        if (url == null) {
+            server = new GameServer(0, Math.max(100_000, players), 10, null);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+            System.out.println("Started a server on " + url + " (" + server.getRequestThreads() + ")");
+        }
+
+        ExecutorService executor = GameServer.virtualThreadExecutor();
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "load-client");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        LoadGenerator load = new LoadGenerator(url, difficulty, clickMillis, executor);
+        System.out.printf(Locale.ROOT, "%d players on %s for %d s%n", players, difficulty.getId(), seconds);
+        long start = System.nanoTime();
+        // Start the players spread over a second, so they don't all click in step
+        for (int i = 0; i < players; i++) {
+            Player player = load.new Player();
+            player.later(i * 1000L / players, player::start);
+        }
+        long lastRequests = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(1000);
+            long now = load.requests.get();
+            if (s % 5 == 0 || s == seconds) {
+                System.out.printf(Locale.ROOT, "%3d s: %7d requests/s, %6d players, %7d wins, %d errors%n",
+                    s, now - lastRequests, load.active.get(), load.wins.get(), load.errors.get());
+            }
+            lastRequests = now;
+        }
+        // Let every player finish the round it's in, then close its session
+        load.stopping = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (load.active.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        synchronized (load.latencyMicros) {
+            System.out.printf(Locale.ROOT,
+                "%d requests in %.1f s (%.0f/s), %d wins, %d errors; latency p50 %d us, p99 %d us, max %d us%n",
+                load.requests.get(), elapsed, load.requests.get() / elapsed, load.wins.get(), load.errors.get(),
+                load.latencyMicros.percentile(50), load.latencyMicros.percentile(99),
+                load.latencyMicros.getMax());
+        }
+        if (server != null) server.stop();
+        executor.shutdownNow();
+    }
+}
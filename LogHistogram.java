@@ -0,0 +1,142 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Counts values in buckets that get wider as values get bigger (like HdrHistogram).
+// Values below 64 get their own bucket; above that each bucket is at most about 3% wide.
+// Memory stays small no matter how many values are recorded, and percentiles are quick to read.
+public class LogHistogram {
+
+    // 2^SUB_BITS buckets for small values, then 2^(SUB_BITS-1) buckets per power of two
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+
+    // Bucket counts, grown only as far as the largest value seen
+    private long[] counts = new long[SUB_COUNT];
+    private long total = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    // Count one value (negative values count as 0)
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    // Count a value several times
+    public void record(long value, long times) {
+        if (value < 0) value = 0;
+        int index = indexOf(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        }
+        counts[index] += times;
+        total += times;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    // Add all the counts from another histogram into this one
+    public void add(LogHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMin() {
+        return total == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return total == 0 ? 0 : max;
+    }
+
+    // The value below which `percent` percent of the counted values fall (0 if nothing counted)
+    public long percentile(double percent) {
+        if (total == 0) return 0;
+        long wanted = Math.max(1, (long) Math.ceil(total * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.max(min, Math.min(max, highestValueIn(i)));
+            }
+        }
+        return max;
+    }
+
+    // How many values fell in the same bucket as this value
+    public long countAt(long value) {
+        int index = indexOf(Math.max(0, value));
+        return index < counts.length ? counts[index] : 0;
+    }
+
+    // Save the counts (only the non-empty buckets)
+    public void write(DataOutput out) throws IOException {
+        int used = 0;
+        for (long count : counts) {
+            if (count != 0) used++;
+        }
+        out.writeLong(total);
+        out.writeLong(min);
+        out.writeLong(max);
+        out.writeInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.writeInt(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    // Load counts saved with write()
+    public static LogHistogram read(DataInput in) throws IOException {
+        LogHistogram histogram = new LogHistogram();
+        histogram.total = in.readLong();
+        histogram.min = in.readLong();
+        histogram.max = in.readLong();
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            int index = in.readInt();
+            if (index >= histogram.counts.length) {
+                histogram.counts = Arrays.copyOf(histogram.counts, index + 1);
+            }
+            histogram.counts[index] = in.readLong();
+        }
+        return histogram;
+    }
+
+    // Which bucket a value goes in
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - (SUB_BITS - 1);
+        return (shift + 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+    }
+
+    // The largest value that goes in a bucket
+    static long highestValueIn(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = index / HALF_COUNT - 1;
+        long lowest = (long) (index % HALF_COUNT + HALF_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
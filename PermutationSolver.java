@@ -0,0 +1,312 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+// Works out the best next guess from the "N correct" feedback, like a Mastermind solver.
+// Every order of the cups (permutation) has a number (its rank in dictionary order), and the
+// orders that still fit all the feedback so far are kept as a bitset over those numbers:
+// 720 bits for 6 cups, 3.6 million for 10. Each submit clears the orders that would have
+// given a different count. The suggested guess is the one that leaves the fewest orders
+// on average (or in the worst case) whatever the feedback turns out to be.
+//
+// Orders are packed 4 bits per position into a long, so comparing two of them is one XOR
+// and a bit count. Big boards are pruned and scored in parallel on the common fork/join pool.
+//
+// Run with: java PermutationSolver [cups] [rounds]   (plays rounds against itself and prints stats)
+public class PermutationSolver {
+
+    // Largest board the solver handles (10! orders = 450 KB of bits)
+    public static final int MAX_CUPS = 10;
+
+    // Ways to pick the next guess
+    public static final int EXPECTED = 0;   // Fewest orders left on average
+    public static final int WORST_CASE = 1; // Fewest orders left in the worst case
+
+    // Most (guess, order) pairs to score for one suggestion; above this, both are sampled
+    // so a suggestion always fits in a frame
+    private static final int PAIR_BUDGET = 1 << 21;
+    private static final int MAX_SCORED_ORDERS = 4096;
+
+    // Below this many ranks, pruning isn't worth splitting across threads
+    private static final int PARALLEL_RANKS = 1 << 16;
+
+    // Ranks per parallel pruning task (a multiple of 64, so tasks never share a word)
+    private static final int RANKS_PER_TASK = 1 << 14;
+
+    private static final long[] FACTORIAL = new long[MAX_CUPS + 1];
+
+    static {
+        FACTORIAL[0] = 1;
+        for (int i = 1; i <= MAX_CUPS; i++) {
+            FACTORIAL[i] = FACTORIAL[i - 1] * i;
+        }
+    }
+
+    private final int cups;
+    private final int total;
+    private final long[] bits;
+    private int remaining;
+    private int strategy = EXPECTED;
+
+    // Sampling for big candidate sets (fixed seed, so the same feedback gives the same hint)
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    public PermutationSolver(int cups) {
+        if (cups < 1 || cups > MAX_CUPS) {
+            throw new IllegalArgumentException("Solver handles 1 to " + MAX_CUPS + " cups: " + cups);
+        }
+        this.cups = cups;
+        this.total = (int) FACTORIAL[cups];
+        this.bits = new long[(total + 63) / 64];
+        reset();
+    }
+
+    // Forget all feedback (new round)
+    public void reset() {
+        Arrays.fill(bits, -1L);
+        int extra = bits.length * 64 - total;
+        if (extra > 0) bits[bits.length - 1] = -1L >>> extra;
+        remaining = total;
+    }
+
+    public void setStrategy(int strategy) {
+        this.strategy = strategy;
+    }
+
+    public int getCupCount() {
+        return cups;
+    }
+
+    // How many orders still fit the feedback
+    public int getCandidateCount() {
+        return remaining;
+    }
+
+    // Whether this order still fits the feedback
+    public boolean isCandidate(int[] order) {
+        int rank = (int) rank(order, cups);
+        return (bits[rank >>> 6] & (1L << rank)) != 0;
+    }
+
+    // Keep only the orders that would have scored `correct` against this guess
+    // Returns how many are left
+    public int update(int[] guess, int correct) {
+        long packedGuess = pack(guess, cups);
+        if (total < PARALLEL_RANKS) {
+            remaining = prune(packedGuess, correct, 0, total, new int[cups]);
+        } else {
+            int tasks = (total + RANKS_PER_TASK - 1) / RANKS_PER_TASK;
+            remaining = IntStream.range(0, tasks).parallel()
+                .map(t -> prune(packedGuess, correct, t * RANKS_PER_TASK,
+                    Math.min(total, (t + 1) * RANKS_PER_TASK), new int[cups]))
+                .sum();
+        }
+        return remaining;
+    }
+
+    // Clear the orders in [from, to) that don't score `correct`, returns how many are kept
+    // Neighbouring ranks are reached with nextPermutation instead of unranking each one
+    private int prune(long packedGuess, int correct, int from, int to, int[] order) {
+        int kept = 0;
+        long at = Long.MIN_VALUE / 2; // Rank that `order` holds right now (none yet)
+        for (int word = from >>> 6; word < (to + 63) >>> 6; word++) {
+            long w = bits[word];
+            long left = w;
+            while (left != 0) {
+                int rank = word * 64 + Long.numberOfTrailingZeros(left);
+                left &= left - 1;
+                if (rank - at > 0 && rank - at <= 8) {
+                    while (at < rank) {
+                        nextPermutation(order);
+                        at++;
+                    }
+                } else {
+                    unrank(rank, order, cups);
+                    at = rank;
+                }
+                if (matches(pack(order, cups), packedGuess, cups) == correct) {
+                    kept++;
+                } else {
+                    w &= ~(1L << rank);
+                }
+            }
+            bits[word] = w;
+        }
+        return kept;
+    }
+
+    // Put the best next guess into `into` (at least cups long)
+    public void suggest(int[] into) {
+        if (remaining == 0) {
+            // The feedback doesn't fit any order (it came from a different round), start over
+            reset();
+        }
+        if (remaining == total || remaining <= 2) {
+            // Before any feedback every guess is as good as any other, and with 1 or 2 left
+            // guessing one of them is best
+            unrank(nextSetBit(0), into, cups);
+            return;
+        }
+        long[] orders = sample(Math.min(remaining, MAX_SCORED_ORDERS));
+        long[] guesses = orders.length == remaining && (long) remaining * remaining <= PAIR_BUDGET
+            ? orders : sample(Math.max(1, Math.min(remaining, PAIR_BUDGET / orders.length)));
+        int n = cups;
+        int mode = strategy;
+        // Score = sum of squared group sizes (expected) or biggest group (worst case), lower is better;
+        // the guess index goes in the low bits so the min also picks the guess
+        long best = IntStream.range(0, guesses.length).parallel().mapToLong(g -> {
+            int[] groups = new int[n + 1];
+            long guess = guesses[g];
+            for (long order : orders) {
+                groups[matches(guess, order, n)]++;
+            }
+            long score = 0;
+            for (int count : groups) {
+                score = mode == WORST_CASE ? Math.max(score, count) : score + (long) count * count;
+            }
+            return (score << 24) | g;
+        }).min().getAsLong();
+        unpack(guesses[(int) (best & 0xFFFFFF)], into, cups);
+    }
+
+    // Pick `count` candidate orders (all of them if count == remaining), packed
+    private long[] sample(int count) {
+        long[] out = new long[count];
+        int[] order = new int[cups];
+        if (count == remaining) {
+            int i = 0;
+            for (int rank = nextSetBit(0); rank >= 0; rank = nextSetBit(rank + 1)) {
+                unrank(rank, order, cups);
+                out[i++] = pack(order, cups);
+            }
+            return out;
+        }
+        for (int i = 0; i < count; i++) {
+            // First candidate at or after a random rank (close enough to uniform for hints)
+            int rank = nextSetBit(random.nextInt(total));
+            if (rank < 0) rank = nextSetBit(0);
+            unrank(rank, order, cups);
+            out[i] = pack(order, cups);
+        }
+        return out;
+    }
+
+    private int nextSetBit(int from) {
+        if (from >= total) return -1;
+        int word = from >>> 6;
+        long w = bits[word] & (-1L << from);
+        while (true) {
+            if (w != 0) return word * 64 + Long.numberOfTrailingZeros(w);
+            if (++word == bits.length) return -1;
+            w = bits[word];
+        }
+    }
+
+    // How many positions two packed orders agree on
+    static int matches(long a, long b, int n) {
+        long x = a ^ b;
+        x |= x >>> 1;
+        x |= x >>> 2;
+        x &= 0x1111111111111111L & ((1L << (4 * n)) - 1);
+        return n - Long.bitCount(x);
+    }
+
+    static long pack(int[] order, int n) {
+        long packed = 0;
+        for (int i = 0; i < n; i++) {
+            packed |= (long) order[i] << (4 * i);
+        }
+        return packed;
+    }
+
+    static void unpack(long packed, int[] into, int n) {
+        for (int i = 0; i < n; i++) {
+            into[i] = (int) (packed >>> (4 * i)) & 0xF;
+        }
+    }
+
+    // Position of an order in dictionary order (Lehmer code)
+    static long rank(int[] order, int n) {
+        long rank = 0;
+        for (int i = 0; i < n; i++) {
+            int smaller = 0;
+            for (int j = i + 1; j < n; j++) {
+                if (order[j] < order[i]) smaller++;
+            }
+            rank += smaller * FACTORIAL[n - 1 - i];
+        }
+        return rank;
+    }
+
+    // The order at a position in dictionary order
+    static void unrank(long rank, int[] into, int n) {
+        int unused = (1 << n) - 1;
+        for (int i = 0; i < n; i++) {
+            long f = FACTORIAL[n - 1 - i];
+            int skip = (int) (rank / f);
+            rank %= f;
+            int pick = unused;
+            for (int k = 0; k < skip; k++) {
+                pick &= pick - 1; // Drop the lowest unused number
+            }
+            int value = Integer.numberOfTrailingZeros(pick);
+            into[i] = value;
+            unused &= ~(1 << value);
+        }
+    }
+
+    // Step to the next order in dictionary order
+    static void nextPermutation(int[] order) {
+        int i = order.length - 2;
+        while (i >= 0 && order[i] >= order[i + 1]) i--;
+        if (i < 0) return;
+        int j = order.length - 1;
+        while (order[j] <= order[i]) j--;
+        int t = order[i];
+        order[i] = order[j];
+        order[j] = t;
+        for (int a = i + 1, b = order.length - 1; a < b; a++, b--) {
+            t = order[a];
+            order[a] = order[b];
+            order[b] = t;
+        }
+    }
+
+    // Analysis mode: let the solver play rounds against the real engine and report
+    // how many attempts it needs and how long each suggestion takes
+    public static void main(String[] args) {
+        int cups = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Difficulty difficulty = Difficulty.of(cups, Difficulty.NORMAL.getShuffleCycles(),
+            Difficulty.NORMAL.getRevealMillis());
+        for (int strategy : new int[] {EXPECTED, WORST_CASE}) {
+            GameEngine engine = new GameEngine(difficulty, new SplittableRandom(7), GameEngine.DEFAULT_ALGORITHM,
+                System::nanoTime);
+            PermutationSolver solver = new PermutationSolver(cups);
+            solver.setStrategy(strategy);
+            LogHistogram attempts = new LogHistogram();
+            LogHistogram suggestMicros = new LogHistogram();
+            int[] guess = new int[cups];
+            for (int r = 0; r < rounds; r++) {
+                engine.newRound();
+                solver.reset();
+                while (!engine.isSolved()) {
+                    long start = System.nanoTime();
+                    solver.suggest(guess);
+                    suggestMicros.record((System.nanoTime() - start) / 1000);
+                    for (int i = 0; i < cups; i++) {
+                        engine.addGuess(guess[i]);
+                    }
+                    solver.update(guess, engine.submit());
+                }
+                attempts.record(engine.getAttempts());
+            }
+            System.out.printf(Locale.ROOT,
+                "%d cups, %s: attempts p50 %d, p90 %d, max %d; suggestion time p50 %d us, p99 %d us, max %d us%n",
+                cups, strategy == EXPECTED ? "expected" : "worst case", attempts.percentile(50),
+                attempts.percentile(90), attempts.getMax(), suggestMicros.percentile(50),
+                suggestMicros.percentile(99), suggestMicros.getMax());
+        }
+    }
+}
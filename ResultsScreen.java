@@ -0,0 +1,64 @@
+import java.awt.*;
+import javax.swing.*;
+
+// The screen shown when a round is won: the time, attempts and stats, with flashing stars.
+// It's built once and kept in the game window (see ScreenManager); each win only changes the text.
+public class ResultsScreen {
+
+    // The win message, the flashing stars, and what Play Again does for the game just won
+    private static JLabel message;
+    private static JLabel animation;
+    private static Runnable playAgain;
+
+    // Turns the stars on and off (the Animator stops it when another screen is shown)
+    private static final Runnable flash = () -> animation.setVisible(!animation.isVisible());
+    private static int flashAnimation = -1;
+
+    // Show the results screen with this message (HTML)
+    // onPlayAgain is what happens when player clicks Play Again
+    public static void show(String text, Runnable onPlayAgain) {
+        playAgain = onPlayAgain;
+        ScreenManager.show(ScreenManager.RESULTS, "Congratulations!", ResultsScreen::build);
+        message.setText(text);
+        animation.setVisible(true);
+        Animator.shared().cancel(flashAnimation);
+        flashAnimation = Animator.shared().repeat(message, 500, flash); // Not the stars: they hide
+    }
+
+    private static JComponent build() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createEmptyBorder(80, 20, 80, 20));
+
+        // Victory message with time and attempts
+        message = new JLabel("", SwingConstants.CENTER);
+        message.setFont(new Font("Arial", Font.BOLD, 16));
+        panel.add(message, BorderLayout.CENTER);
+
+        // Flashing stars animation
+        animation = new JLabel("✨✨✨", SwingConstants.CENTER);
+        animation.setFont(new Font("Arial", Font.PLAIN, 24));
+        panel.add(animation, BorderLayout.NORTH);
+
+        // Button to play again
+        JButton playAgainButton = new JButton("Play Again");
+        playAgainButton.setForeground(Color.BLACK);
+        playAgainButton.setFocusPainted(false);
+        playAgainButton.setOpaque(true);
+        playAgainButton.setBorderPainted(false);
+        playAgainButton.addActionListener(e -> playAgain.run());
+
+        // Button to go back to the main menu
+        JButton homeButton = new JButton("Home");
+        homeButton.setForeground(Color.BLACK);
+        homeButton.setFocusPainted(false);
+        homeButton.setOpaque(true);
+        homeButton.setBorderPainted(false);
+        homeButton.addActionListener(e -> HomeScreen.show(CupMemoryGame::play));
+
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(playAgainButton);
+        buttonPanel.add(homeButton);
+        panel.add(buttonPanel, BorderLayout.SOUTH);
+        return panel;
+    }
+}
@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+// Keeps a record of everything the player did in each round, so a round can be played back
+// (see RoundReplay) to check a suspicious score or see what went wrong.
+// Each game window has a Recorder that collects its round's events in memory; when the round
+// ends the recorder hands its buffer to a background thread and carries on with a spare one,
+// and the background thread adds the whole round to the end of the file in one write (locking
+// the file can wait on another program, so the Swing thread never does it). Recording an event
+// only puts a few bytes in a reused buffer, so it never makes garbage.
+//
+// File layout:
+//   header: magic "CUPL" (4 bytes), version (4 bytes)
+//   round:  length (varint), events, CRC32C of the events (4)
+//   START:  tag, seed (8), cup count, shuffle cycles, reveal ms (varints),
+//           algorithm name (1 byte length + ASCII), start time in ms since 1970 (varint)
+//   others: tag, microseconds since the previous event (varint), then the event's value if it has one
+// Varints use 7 bits per byte, low bits first, with the top bit set on every byte but the last.
+public class RoundLog {
+
+    public static final int FILE_MAGIC = 0x4355504C; // "CUPL"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+
+    // Event tags
+    public static final byte START = 1;    // Round made from a seed
+    public static final byte SHUFFLE = 2;  // One shuffle of the shown cups
+    public static final byte READY = 3;    // Shuffling done, player can click
+    public static final byte ADD = 4;      // Cup added to the guess (value: color)
+    public static final byte UNDO = 5;     // Last cup taken off the guess
+    public static final byte SUBMIT = 6;   // Guess checked (value: cups in the right spot)
+    public static final byte PAUSE = 7;    // Round clock paused (a message box is open)
+    public static final byte RESUME = 8;   // Round clock running again
+    public static final byte WIN = 9;      // Round solved, ends the round (value: round time in ms)
+    public static final byte RESET = 10;   // Player started over, ends the round
+    public static final byte QUIT = 11;    // Player left the game, ends the round
+
+    // One log object per file, shared by every window in this program
+    private static final Map<Path, RoundLog> open = new HashMap<>();
+
+    private final Path path;
+
+    // The file (null until it has been opened), and whether opening it failed
+    private FileChannel channel;
+    private volatile boolean unusable;
+
+    // Reused buffer for framing a round before it is written
+    private ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.BIG_ENDIAN);
+    private final CRC32C crc = new CRC32C();
+
+    // Finished rounds waiting to be written, and written ones' buffers for recorders to reuse
+    private final BlockingQueue<ByteBuffer> pending = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ByteBuffer> spare = new LinkedBlockingQueue<>();
+
+    // One background thread does all the writing, in the order rounds ended
+    private final ExecutorService io;
+
+    private RoundLog(Path path) {
+        this.path = path;
+        io = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "round-log");
+            t.setDaemon(true);
+            return t;
+        });
+        // Make sure rounds that ended as the window closed reach the file
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "round-log-flush"));
+    }
+
+    // Open (or create) the round log at this path
+    public static synchronized RoundLog open(Path path) throws IOException {
+        RoundLog log = forPath(path);
+        log.openFile();
+        return log;
+    }
+
+    // Like open(), but the file is opened on the log's background thread, so the caller never
+    // waits on another program's lock; recorders can be used right away (their rounds are
+    // written once it's open, or dropped with one message if it can't be)
+    public static synchronized RoundLog openInBackground(Path path) {
+        RoundLog log = forPath(path);
+        log.io.execute(log::openQuietly);
+        return log;
+    }
+
+    private static RoundLog forPath(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        RoundLog log = open.get(key);
+        if (log == null) {
+            log = new RoundLog(key);
+            open.put(key, log);
+        }
+        return log;
+    }
+
+    // Open the file, writing the header if it is new
+    private synchronized void openFile() throws IOException {
+        if (channel != null) return;
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            FileLock lock = file.lock();
+            try {
+                if (file.size() == 0) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putInt(FILE_MAGIC).putInt(VERSION).flip();
+                    file.write(header, 0);
+                } else {
+                    checkHeader(file);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        channel = file;
+    }
+
+    // Open the file on the background thread
+    private void openQuietly() {
+        try {
+            openFile();
+        } catch (IOException e) {
+            unusable = true;
+            System.out.println("Error opening round log, rounds won't be logged.");
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Make a recorder for one game window
+    public Recorder recorder() {
+        return new Recorder(this);
+    }
+
+    // A recorder that keeps nothing (for when the log file can't be opened)
+    public static Recorder noRecorder() {
+        return new Recorder(null);
+    }
+
+    // Throw if the file doesn't start with a round log header
+    static void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.position() < HEADER_SIZE || header.getInt(0) != FILE_MAGIC) {
+            throw new IOException("Not a round log");
+        }
+        if (header.getInt(4) > VERSION) {
+            throw new IOException("Round log is from a newer version (" + header.getInt(4) + ")");
+        }
+    }
+
+    // Add one finished round (the bytes from position to limit) to the end of the file
+    synchronized void write(ByteBuffer round) throws IOException {
+        openFile();
+        int length = round.remaining();
+        if (out.capacity() < length + 9) {
+            out = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2, length + 9));
+        }
+        crc.reset();
+        crc.update(round.duplicate());
+        out.clear();
+        putVarLong(out, length);
+        out.put(round);
+        out.putInt((int) crc.getValue());
+        out.flip();
+        FileLock lock = channel.lock();
+        try {
+            long position = channel.size();
+            while (out.hasRemaining()) {
+                position += channel.write(out, position);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Queue a finished round (position to limit) for the background thread; the buffer
+    // belongs to the log now and comes back through spareBuffer() once it is written
+    void submit(ByteBuffer round) {
+        pending.add(round);
+        io.execute(this::writePending);
+    }
+
+    // A written round's buffer, cleared, or a new one if none are free
+    ByteBuffer spareBuffer() {
+        ByteBuffer buffer = spare.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(1024).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    // Wait until every round queued so far is in the file
+    public void flush() {
+        try {
+            io.submit(this::writePending).get();
+        } catch (Exception e) {
+            System.out.println("Error saving round log.");
+        }
+    }
+
+    // Write the queued rounds (on the background thread)
+    private void writePending() {
+        ByteBuffer round;
+        while ((round = pending.poll()) != null) {
+            if (!unusable) {
+                try {
+                    write(round);
+                } catch (IOException e) {
+                    System.out.println("Error saving round log.");
+                }
+            }
+            round.clear();
+            spare.add(round);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            io.submit(this::writePending).get(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // Shutting down anyway
+        }
+    }
+
+    // Write a number as a varint
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Collects the events of one window's current round
+    // Only use it from one thread (the Swing thread in the game)
+    public static final class Recorder {
+
+        private final RoundLog log;
+        private ByteBuffer round;
+
+        // The round being recorded, and the time of its last event in microseconds
+        // Times come from the engine's clock, and events that start, stop, pause or resume
+        // the clock use the exact time the clock saw, so a replay gets the same round time
+        private GameEngine engine;
+        private long lastMicros;
+
+        // Whether a round has started and not ended yet
+        private boolean recording = false;
+
+        // The algorithm name as bytes, made once for the engine it was last used with
+        private String algorithm;
+        private byte[] algorithmBytes;
+
+        private Recorder(RoundLog log) {
+            this.log = log;
+            round = log != null ? log.spareBuffer() : null;
+        }
+
+        // A new round was made; ends any round still being recorded as a reset
+        public void started(GameEngine engine) {
+            if (log == null) return;
+            if (recording) reset();
+            if (!engine.getAlgorithm().equals(algorithm)) {
+                algorithm = engine.getAlgorithm();
+                algorithmBytes = algorithm.getBytes(StandardCharsets.US_ASCII);
+            }
+            Difficulty difficulty = engine.getDifficulty();
+            round.clear();
+            round.put(START);
+            round.putLong(engine.getSeed());
+            putVarLong(round, difficulty.getCupCount());
+            putVarLong(round, difficulty.getShuffleCycles());
+            putVarLong(round, difficulty.getRevealMillis());
+            round.put((byte) algorithmBytes.length);
+            round.put(algorithmBytes);
+            putVarLong(round, System.currentTimeMillis());
+            this.engine = engine;
+            lastMicros = engine.getClock().lastChangeNanos() / 1000;
+            recording = true;
+        }
+
+        public void shuffled() {
+            event(SHUFFLE, -1, now());
+        }
+
+        public void ready() {
+            event(READY, -1, now());
+        }
+
+        public void added(int color) {
+            event(ADD, color, now());
+        }
+
+        public void undone() {
+            event(UNDO, -1, now());
+        }
+
+        // Call after engine.submit(); a winning submit stopped the clock, so use that time
+        public void submitted(int correct) {
+            event(SUBMIT, correct, engine.isSolved() ? clockChange() : now());
+        }
+
+        // Call after the clock was paused
+        public void paused() {
+            event(PAUSE, -1, clockChange());
+        }
+
+        // Call after the clock was resumed
+        public void resumed() {
+            event(RESUME, -1, clockChange());
+        }
+
+        public void won(long elapsedMillis) {
+            end(WIN, elapsedMillis, clockChange());
+        }
+
+        public void reset() {
+            end(RESET, -1, now());
+        }
+
+        public void quit() {
+            end(QUIT, -1, now());
+        }
+
+        private long now() {
+            return engine != null ? engine.getClock().now() : 0;
+        }
+
+        // When the clock last changed (never before the last event, for nested pauses)
+        private long clockChange() {
+            return engine != null ? Math.max(lastMicros * 1000, engine.getClock().lastChangeNanos()) : 0;
+        }
+
+        // Add an event (value -1 means it has none) that happened at this clock time
+        private void event(byte tag, long value, long nanos) {
+            if (!recording) return;
+            if (round.remaining() < 32) {
+                // Long rounds are rare, so growing the buffer now and then is fine
+                ByteBuffer bigger = ByteBuffer.allocate(round.capacity() * 2).order(ByteOrder.BIG_ENDIAN);
+                round.flip();
+                bigger.put(round);
+                round = bigger;
+            }
+            long now = nanos / 1000;
+            round.put(tag);
+            putVarLong(round, now - lastMicros);
+            if (value >= 0) putVarLong(round, value);
+            lastMicros = now;
+        }
+
+        // Add the last event and hand the round to the log's background thread
+        private void end(byte tag, long value, long nanos) {
+            if (!recording) return;
+            event(tag, value, nanos);
+            recording = false;
+            round.flip();
+            log.submit(round);
+            round = log.spareBuffer();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Gets the next round's reveal ready while the current round is being played. The next seed is
+// picked on the Swing thread, then on the round pipeline thread the round's correct order is
+// worked out and drawn (by a CupPainter, not a Swing component) into a picture the size of the
+// reveal row (in screen pixels, so it's sharp on HiDPI screens too). When the round starts the
+// game still deals it from the seed, which is quick, but the reveal is one picture copy instead
+// of drawing every cup, which is what used to make the start of a round hitch on big boards.
+//
+// If the next round isn't ready yet when it's asked for (a very quick Reset), take() returns
+// null and the game deals a random round and draws its reveal the old way; the Swing thread
+// never waits for it.
+public class RoundPipeline {
+
+    // A round made ahead of time
+    public static final class Round {
+        final long seed;
+        final int cupCount;
+        final BufferedImage reveal; // The correct order drawn as the reveal row shows it
+
+        Round(long seed, int cupCount, BufferedImage reveal) {
+            this.seed = seed;
+            this.cupCount = cupCount;
+            this.reveal = reveal;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public BufferedImage getReveal() {
+            return reveal;
+        }
+
+        // Whether the engine dealt this round (same seed and board, so the picture shows its cups)
+        public boolean matches(GameEngine engine) {
+            return engine.getSeed() == seed && engine.getCupCount() == cupCount;
+        }
+    }
+
+    // One background thread for every game screen's pipeline (not the asset loaders: drawing cups
+    // can wait for the sprites, which are made on the loaders, so it mustn't take one of them up)
+    private static ExecutorService thread;
+
+    private final Difficulty difficulty;
+    private final String algorithm;
+
+    // The next round, being made or ready (null if none has been asked for)
+    private CompletableFuture<Round> next;
+
+    // Deals rounds on the pipeline thread (a different engine from the game's, only used there)
+    private GameEngine dealer;
+
+    public RoundPipeline(Difficulty difficulty, String algorithm) {
+        this.difficulty = difficulty;
+        this.algorithm = algorithm;
+    }
+
+    // Start making the next round (Swing thread only)
+    // seed is the round's seed and `row` the reveal row, whose size and look the picture copies
+    public void prepare(long seed, CupRow row) {
+        if (next != null) next.cancel(false);
+        // A painter laid out like the row, which only the pipeline thread uses from here on
+        // (it makes cup pictures there and then, instead of asking the row to repaint)
+        CupPainter painter = new CupPainter(null);
+        painter.setSize(row.getWidth(), row.getHeight(), row.getInsets());
+        painter.setBackground(row.isOpaque() ? row.getBackground() : null);
+        double scale = row.displayScale();
+        next = CompletableFuture.supplyAsync(() -> make(seed, painter, scale), thread());
+    }
+
+    // The next round if it's ready, or null; either way it's handed over only once (Swing thread only)
+    public Round take() {
+        CompletableFuture<Round> ready = next;
+        next = null;
+        if (ready == null) return null;
+        if (!ready.isDone() || ready.isCompletedExceptionally()) {
+            ready.cancel(false);
+            return null;
+        }
+        return ready.join();
+    }
+
+    // The pipeline thread, started the first time it's needed
+    private static synchronized ExecutorService thread() {
+        if (thread == null) {
+            thread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "round-pipeline");
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1); // Clicks and animation come first
+                return t;
+            });
+        }
+        return thread;
+    }
+
+    // Deal the round and draw its reveal (on the pipeline thread)
+    private synchronized Round make(long seed, CupPainter painter, double scale) {
+        if (dealer == null) dealer = new GameEngine(difficulty, new SplittableRandom(), algorithm, System::nanoTime);
+        dealer.newRound(seed);
+        int[] order = new int[dealer.getCupCount()];
+        dealer.copyCorrectOrder(order);
+        return new Round(seed, order.length, painter.renderStill(order, order.length, scale));
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32C;
+
+// Plays round logs (see RoundLog) back through the game rules with no window, and checks
+// that every logged round really happened the way the log says.
+// A round passes when the engine accepts every click, gives the same correct count for every
+// submit, and (for a win) ends solved with the same round time, measured with a clock that
+// only moves by the logged time gaps.
+//
+// Run with: java RoundReplay rounds.log [more.log...]
+public class RoundReplay {
+
+    // Stop collecting problem descriptions after this many (they are still counted)
+    private static final int MAX_PROBLEMS = 100;
+
+    // Smallest and largest round lengths; anything else is damage
+    private static final int MIN_ROUND = 1 + 8 + 3 + 1 + 1;
+    private static final int MAX_ROUND = 64 * 1024 * 1024;
+
+    // What a replay found
+    public static final class Result {
+        public long rounds;        // Rounds read
+        public long events;        // Events played back
+        public long wins;          // Rounds that ended solved
+        public long failed;        // Rounds that didn't match their log
+        public long damagedBytes;  // Bytes skipped because they weren't a good round
+        public final List<String> problems = new ArrayList<>();
+    }
+
+    // Engines by difficulty and algorithm, reused from round to round
+    private final Map<String, GameEngine> engines = new HashMap<>();
+    private GameEngine engine;
+
+    // Time shown to the engine's clock, moved only by the logged gaps
+    private long nowNanos;
+
+    // Reused read buffer, checksum and holder for readVarLong's value
+    private byte[] data = new byte[1 << 20];
+    private final CRC32C crc = new CRC32C();
+    private final long[] varValue = new long[1];
+
+    // Replay every round in a log file
+    public Result replay(Path file) throws IOException {
+        Result result = new Result();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            RoundLog.checkHeader(channel);
+            long filePosition = RoundLog.HEADER_SIZE;
+            int start = 0;
+            int end = 0;
+            while (true) {
+                // Move what's left to the front and fill the rest of the buffer from the file
+                System.arraycopy(data, start, data, 0, end - start);
+                end -= start;
+                start = 0;
+                int read = channel.read(ByteBuffer.wrap(data, end, data.length - end), filePosition);
+                if (read > 0) {
+                    filePosition += read;
+                    end += read;
+                }
+                boolean atEnd = read <= 0;
+                int before = start;
+                start = replayRounds(data, start, end, atEnd, result);
+                if (atEnd) break; // Everything left has been used or skipped
+                if (start == before && end == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2); // A round bigger than the buffer
+                }
+            }
+            result.damagedBytes += end - start;
+        }
+        return result;
+    }
+
+    // Replay the whole rounds in data[pos..end), returns where the first unfinished round starts
+    // atEnd means no more of the file is coming, so an unfinished round is damage
+    private int replayRounds(byte[] data, int pos, int end, boolean atEnd, Result result) {
+        while (pos < end) {
+            int p = readVarLong(data, pos, end, varValue);
+            if (p < 0 && end - pos < 10 && !atEnd) return pos; // Length not all here yet
+            long length = varValue[0];
+            if (p < 0 || length < MIN_ROUND || length > MAX_ROUND) {
+                pos++; // Not a round here, look for the next one
+                result.damagedBytes++;
+                continue;
+            }
+            if (p + length + 4 > end) {
+                if (!atEnd) return pos; // Round not all here yet
+                pos++;
+                result.damagedBytes++;
+                continue;
+            }
+            int roundEnd = p + (int) length;
+            crc.reset();
+            crc.update(data, p, (int) length);
+            int stored = ((data[roundEnd] & 0xFF) << 24) | ((data[roundEnd + 1] & 0xFF) << 16)
+                | ((data[roundEnd + 2] & 0xFF) << 8) | (data[roundEnd + 3] & 0xFF);
+            if ((int) crc.getValue() != stored) {
+                pos++;
+                result.damagedBytes++;
+                continue;
+            }
+            result.rounds++;
+            String problem = replayRound(data, p, roundEnd, result);
+            if (problem != null) {
+                result.failed++;
+                if (result.problems.size() < MAX_PROBLEMS) {
+                    result.problems.add("Round " + result.rounds + ": " + problem);
+                }
+            }
+            pos = roundEnd + 4;
+        }
+        return pos;
+    }
+
+    // Play one round back, returns null if it matches the log or what went wrong
+    private String replayRound(byte[] data, int p, int end, Result result) {
+        if (data[p] != RoundLog.START || p + 9 > end) return "doesn't start with START";
+        long seed = 0;
+        for (int i = 1; i <= 8; i++) {
+            seed = (seed << 8) | (data[p + i] & 0xFF);
+        }
+        p += 9;
+        long[] value = varValue;
+        p = readVarLong(data, p, end, value);
+        int cups = (int) value[0];
+        p = readVarLong(data, p, end, value);
+        int shuffles = (int) value[0];
+        p = readVarLong(data, p, end, value);
+        int reveal = (int) value[0];
+        if (p < 0 || p >= end) return "START is cut short";
+        int nameLength = data[p++] & 0xFF;
+        if (p + nameLength > end) return "START is cut short";
+        String problem = useEngine(cups, shuffles, reveal, data, p, nameLength);
+        if (problem != null) return problem;
+        p = readVarLong(data, p + nameLength, end, value); // Start time, not needed to check the round
+        if (p < 0) return "START is cut short";
+
+        nowNanos = 0;
+        engine.newRound(seed);
+        result.events++;
+        GameClock clock = engine.getClock();
+        while (p < end) {
+            byte tag = data[p++];
+            p = readVarLong(data, p, end, value);
+            if (p < 0) return "event cut short";
+            nowNanos += value[0] * 1000;
+            long arg = -1;
+            if (tag == RoundLog.ADD || tag == RoundLog.SUBMIT || tag == RoundLog.WIN) {
+                p = readVarLong(data, p, end, value);
+                if (p < 0) return "event cut short";
+                arg = value[0];
+            }
+            result.events++;
+            switch (tag) {
+                case RoundLog.SHUFFLE:
+                    engine.shuffleDisplay();
+                    break;
+                case RoundLog.READY:
+                    break;
+                case RoundLog.ADD:
+                    if (arg >= engine.getCupCount() || !engine.addGuess((int) arg)) {
+                        return "cup " + arg + " couldn't be added";
+                    }
+                    break;
+                case RoundLog.UNDO:
+                    if (!engine.undo()) return "undo with nothing to undo";
+                    break;
+                case RoundLog.SUBMIT: {
+                    int correct = engine.submit();
+                    if (correct != arg) return "submit gave " + correct + " correct, log says " + arg;
+                    break;
+                }
+                case RoundLog.PAUSE:
+                    clock.pause();
+                    break;
+                case RoundLog.RESUME:
+                    clock.resume();
+                    break;
+                case RoundLog.WIN: {
+                    if (!engine.isSolved()) return "win logged but the guess wasn't right";
+                    long elapsed = engine.getElapsedMillis();
+                    if (Math.abs(elapsed - arg) > 1) return "round time " + arg + " ms, replay says " + elapsed + " ms";
+                    result.wins++;
+                    return p == end ? null : "events after the end of the round";
+                }
+                case RoundLog.RESET:
+                case RoundLog.QUIT:
+                    return p == end ? null : "events after the end of the round";
+                default:
+                    return "unknown event " + tag;
+            }
+        }
+        return "round has no end";
+    }
+
+    // Read a varint into value[0], returns the position after it or -1 if it runs past end
+    private static int readVarLong(byte[] data, int p, int end, long[] value) {
+        if (p < 0) return -1;
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (p >= end) return -1;
+            byte b = data[p++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                value[0] = result;
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    // Pick (or make) an engine for this difficulty and algorithm, returns a problem or null
+    private String useEngine(int cups, int shuffles, int reveal, byte[] data, int nameStart, int nameLength) {
+        if (engine != null && engine.getDifficulty().sameSettings(cups, shuffles, reveal)
+                && sameName(engine.getAlgorithm(), data, nameStart, nameLength)) {
+            return null; // Same as last round, the usual case
+        }
+        String algorithm = new String(data, nameStart, nameLength, StandardCharsets.US_ASCII);
+        String key = cups + "/" + shuffles + "/" + reveal + "/" + algorithm;
+        GameEngine found = engines.get(key);
+        if (found == null) {
+            try {
+                found = new GameEngine(Difficulty.of(cups, shuffles, reveal), new SplittableRandom(0), algorithm,
+                    () -> nowNanos);
+            } catch (IllegalArgumentException e) {
+                return e.getMessage();
+            }
+            engines.put(key, found);
+        }
+        engine = found;
+        return null;
+    }
+
+    private static boolean sameName(String name, byte[] data, int start, int length) {
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != data[start + i]) return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java RoundReplay rounds.log [more.log...]");
+            return;
+        }
+        RoundReplay replay = new RoundReplay();
+        boolean allGood = true;
+        for (String name : args) {
+            long start = System.nanoTime();
+            Result result = replay.replay(Paths.get(name));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %d rounds, %d wins, %d events in %.3f s (%.1f M events/s), %d failed, %d damaged bytes%n",
+                name, result.rounds, result.wins, result.events, seconds, result.events / seconds / 1e6,
+                result.failed, result.damagedBytes);
+            for (String problem : result.problems) {
+                System.out.println("  " + problem);
+            }
+            allGood &= result.failed == 0 && result.damagedBytes == 0;
+        }
+        if (!allGood) System.exit(1);
+    }
+}
@@ -0,0 +1,483 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+
+// Keeps every finished round in an append-only binary file.
+// Records are only ever added at the end, each with its own checksum, so a crash while
+// writing can at worst lose the record being written. A file lock lets several game
+// windows (or programs) share the same file. All file work happens on a background thread.
+//
+// File layout:
+//   header: magic "CUPJ" (4 bytes), version (4 bytes), created time (8 bytes)
+//   record: magic "CUPR" (4), payload length (2), payload, CRC32C of length + payload (4)
+//   payload: finished time (8), round time in ms (8), attempts (4), correct cups (4), seed (8),
+//            cup count (4), shuffle cycles (4), reveal time in ms (4)
+// Version 1 records stop after the seed; they were all Normal rounds.
+// Newer versions may make the payload longer; readers skip fields they don't know.
+public class ScoreJournal {
+
+    public static final int FILE_MAGIC = 0x4355504A;   // "CUPJ"
+    public static final int RECORD_MAGIC = 0x43555052; // "CUPR"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 16;
+    static final int RECORD_OVERHEAD = 4 + 2 + 4;
+    private static final int PAYLOAD_V1_SIZE = 8 + 8 + 4 + 4 + 8;
+    private static final int PAYLOAD_SIZE = PAYLOAD_V1_SIZE + 4 + 4 + 4;
+    private static final int MAX_PAYLOAD = 1024;
+
+    // Force data to disk after this many records, or when the queue runs dry
+    private static final int FSYNC_BATCH = 32;
+
+    // Check for damaged bytes and rewrite the file after this many appends
+    private static final int COMPACT_EVERY = 1024;
+
+    // One finished round
+    // Scans reuse one Entry for every record, so copy it if you need to keep it
+    public static final class Entry {
+        public long timestamp;      // When the round finished (ms since 1970)
+        public long elapsedMillis;  // How long the round took
+        public int attempts;        // How many submits it took
+        public int correct;         // Cups in the right spot on the final submit
+        public long seed;           // Seed the round was made from
+        public int cupCount;        // Difficulty the round was played at
+        public int shuffleCycles;
+        public int revealMillis;
+        public int checksum;        // The record's CRC (filled in by scans)
+
+        public Entry() {
+        }
+
+        public Entry(long timestamp, long elapsedMillis, int attempts, int correct, long seed) {
+            this(timestamp, elapsedMillis, attempts, correct, seed, Difficulty.NORMAL);
+        }
+
+        public Entry(long timestamp, long elapsedMillis, int attempts, int correct, long seed, Difficulty difficulty) {
+            this.timestamp = timestamp;
+            this.elapsedMillis = elapsedMillis;
+            this.attempts = attempts;
+            this.correct = correct;
+            this.seed = seed;
+            this.cupCount = difficulty.getCupCount();
+            this.shuffleCycles = difficulty.getShuffleCycles();
+            this.revealMillis = difficulty.getRevealMillis();
+        }
+
+        public Entry copy() {
+            Entry copy = new Entry();
+            copy.timestamp = timestamp;
+            copy.elapsedMillis = elapsedMillis;
+            copy.attempts = attempts;
+            copy.correct = correct;
+            copy.seed = seed;
+            copy.cupCount = cupCount;
+            copy.shuffleCycles = shuffleCycles;
+            copy.revealMillis = revealMillis;
+            copy.checksum = checksum;
+            return copy;
+        }
+
+        // Whether this round was played at that difficulty
+        public boolean isDifficulty(Difficulty difficulty) {
+            return difficulty.sameSettings(cupCount, shuffleCycles, revealMillis);
+        }
+    }
+
+    // Something that wants to see every record in the file
+    public interface Visitor {
+        void visit(Entry entry);
+    }
+
+    // One journal object per file, shared by every window in this program
+    // (two channels in one program can't both lock the same file)
+    private static final Map<Path, ScoreJournal> open = new HashMap<>();
+
+    private final Path path;
+    private FileChannel channel;
+    private Object fileKey;
+
+    // The background thread that does all reads and writes
+    private final ExecutorService io;
+    private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+
+    // Reused buffers so writing doesn't make garbage
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(FSYNC_BATCH * (RECORD_OVERHEAD + PAYLOAD_SIZE))
+        .order(ByteOrder.BIG_ENDIAN);
+    private final CRC32C crc = new CRC32C();
+
+    private int appendsSinceCompact = 0;
+    private volatile long damagedBytes = 0;
+
+    // Makes the journal without touching the file (see openFile())
+    private ScoreJournal(Path path) {
+        this.path = path;
+        io = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "score-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        // Make sure queued records reach the disk when the program closes
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "score-journal-flush"));
+    }
+
+    // Open (or create) the journal at this path
+    public static synchronized ScoreJournal open(Path path) throws IOException {
+        ScoreJournal journal = openLater(path);
+        journal.openFile();
+        return journal;
+    }
+
+    // The journal at this path, with its file not opened yet: call openFile() on its background
+    // thread (with onIoThread) so nobody else waits on the file lock
+    public static synchronized ScoreJournal openLater(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        ScoreJournal journal = open.get(key);
+        if (journal == null) {
+            journal = new ScoreJournal(key);
+            open.put(key, journal);
+        }
+        return journal;
+    }
+
+    // Open (or create) and check the file, if that hasn't been done yet
+    public synchronized void openFile() throws IOException {
+        if (channel == null) openChannel();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Queue a finished round to be written on the background thread
+    public void append(Entry entry) {
+        pending.add(entry.copy());
+        io.execute(this::writePending);
+    }
+
+    // Wait until everything queued so far is on disk
+    public void flush() throws IOException {
+        try {
+            io.submit(this::writePending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // Run a task on the journal's background thread, after every record queued so far is written
+    public <T> CompletableFuture<T> onIoThread(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        io.execute(() -> {
+            writePending();
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Find the best (lowest) time with one pass over the mapped file
+    public long loadBestTime() throws IOException {
+        long[] best = {Long.MAX_VALUE};
+        scan(HEADER_SIZE, entry -> {
+            if (entry.elapsedMillis < best[0]) best[0] = entry.elapsedMillis;
+        });
+        return best[0];
+    }
+
+    // Whether a good record with this checksum ends exactly at this position
+    // (used to check that a saved position from an earlier scan still points to the same place)
+    public synchronized boolean hasRecordEndingAt(long offset, int checksum) throws IOException {
+        reopenIfReplaced();
+        if (offset == HEADER_SIZE) return true;
+        if (offset < HEADER_SIZE + RECORD_OVERHEAD + PAYLOAD_V1_SIZE || offset > channel.size()) return false;
+        ByteBuffer stored = ByteBuffer.allocate(4);
+        channel.read(stored, offset - 4);
+        return stored.getInt(0) == checksum;
+    }
+
+    // Number of damaged bytes found by the last scan
+    public long getDamagedBytes() {
+        return damagedBytes;
+    }
+
+    // Show every good record from `from` onward to the visitor
+    // Returns the file position after the last good record, so a later scan can carry on from there
+    public synchronized long scan(long from, Visitor visitor) throws IOException {
+        reopenIfReplaced();
+        long size = channel.size();
+        if (size <= from) return Math.max(from, HEADER_SIZE);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return scan(map, (int) Math.max(from, HEADER_SIZE), visitor);
+    }
+
+    // Walk the records in a buffer, skipping over damaged bytes
+    // (the buffer's position and limit are used as scratch space, so pass a buffer nobody else reads)
+    private long scan(ByteBuffer map, int position, Visitor visitor) {
+        Entry entry = new Entry();
+        CRC32C check = new CRC32C();
+        long damaged = 0;
+        long end = position;
+        int limit = map.limit();
+        while (position + RECORD_OVERHEAD <= limit) {
+            int length = readRecord(map, position, entry, check);
+            if (length < 0) {
+                // Not a good record here, look for the next one
+                position++;
+                damaged++;
+                continue;
+            }
+            visitor.visit(entry);
+            position += RECORD_OVERHEAD + length;
+            end = position;
+        }
+        damagedBytes = damaged + (limit - position);
+        return end;
+    }
+
+    // Read one record at a position into the entry, returns its payload length or -1 if it isn't valid
+    // The buffer's limit is put back afterwards, its position is not
+    static int readRecord(ByteBuffer map, int position, Entry entry, CRC32C check) {
+        if (map.getInt(position) != RECORD_MAGIC) return -1;
+        int length = map.getShort(position + 4) & 0xFFFF;
+        if (length < PAYLOAD_V1_SIZE || length > MAX_PAYLOAD) return -1;
+        int limit = map.limit();
+        if (position + RECORD_OVERHEAD + length > limit) return -1;
+        check.reset();
+        map.limit(position + 6 + length).position(position + 4);
+        check.update(map);
+        map.limit(limit);
+        if ((int) check.getValue() != map.getInt(position + 6 + length)) return -1;
+        int p = position + 6;
+        entry.timestamp = map.getLong(p);
+        entry.elapsedMillis = map.getLong(p + 8);
+        entry.attempts = map.getInt(p + 16);
+        entry.correct = map.getInt(p + 20);
+        entry.seed = map.getLong(p + 24);
+        if (length >= PAYLOAD_SIZE) {
+            entry.cupCount = map.getInt(p + 32);
+            entry.shuffleCycles = map.getInt(p + 36);
+            entry.revealMillis = map.getInt(p + 40);
+        } else {
+            entry.cupCount = Difficulty.NORMAL.getCupCount();
+            entry.shuffleCycles = Difficulty.NORMAL.getShuffleCycles();
+            entry.revealMillis = Difficulty.NORMAL.getRevealMillis();
+        }
+        entry.checksum = map.getInt(position + 6 + length);
+        return length;
+    }
+
+    // Write everything in the queue with one lock and one fsync per batch
+    private void writePending() {
+        try {
+            List<Entry> batch = new ArrayList<>(FSYNC_BATCH);
+            while (pending.drainTo(batch, FSYNC_BATCH) > 0) {
+                appendNow(batch);
+                batch.clear();
+            }
+            if (appendsSinceCompact >= COMPACT_EVERY) {
+                appendsSinceCompact = 0;
+                compact();
+            }
+        } catch (IOException e) {
+            System.out.println("Error saving high score.");
+        }
+    }
+
+    // Write some records at the end of the file and force them to disk
+    synchronized void appendNow(List<Entry> batch) throws IOException {
+        writeBuffer.clear();
+        for (Entry entry : batch) {
+            encode(entry, writeBuffer);
+        }
+        writeBuffer.flip();
+        FileLock lock = lockCurrentFile();
+        try {
+            long position = channel.size();
+            while (writeBuffer.hasRemaining()) {
+                position += channel.write(writeBuffer, position);
+            }
+            channel.force(false);
+        } finally {
+            lock.release();
+        }
+        appendsSinceCompact += batch.size();
+    }
+
+    // Put one record into the buffer
+    private void encode(Entry entry, ByteBuffer out) {
+        int start = out.position();
+        out.putInt(RECORD_MAGIC);
+        out.putShort((short) PAYLOAD_SIZE);
+        out.putLong(entry.timestamp);
+        out.putLong(entry.elapsedMillis);
+        out.putInt(entry.attempts);
+        out.putInt(entry.correct);
+        out.putLong(entry.seed);
+        out.putInt(entry.cupCount);
+        out.putInt(entry.shuffleCycles);
+        out.putInt(entry.revealMillis);
+        ByteBuffer covered = out.duplicate();
+        covered.limit(out.position()).position(start + 4);
+        crc.reset();
+        crc.update(covered);
+        out.putInt((int) crc.getValue());
+    }
+
+    // Rewrite the file without any damaged bytes (for example a record cut off by a crash)
+    public synchronized void compact() throws IOException {
+        FileLock lock = lockCurrentFile();
+        try {
+            long size = channel.size();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            List<int[]> good = new ArrayList<>();
+            Entry entry = new Entry();
+            CRC32C check = new CRC32C();
+            int position = HEADER_SIZE;
+            long damaged = 0;
+            while (position + RECORD_OVERHEAD <= size) {
+                int length = readRecord(map, position, entry, check);
+                if (length < 0) {
+                    position++;
+                    damaged++;
+                    continue;
+                }
+                good.add(new int[] {position, RECORD_OVERHEAD + length});
+                position += RECORD_OVERHEAD + length;
+            }
+            damaged += size - position;
+            if (damaged == 0) return; // Nothing to fix
+
+            // Copy the good records to a new file, then swap it in
+            Path temp = path.resolveSibling(path.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = map.duplicate();
+                header.limit(HEADER_SIZE).position(0);
+                out.write(header);
+                for (int[] record : good) {
+                    ByteBuffer slice = map.duplicate();
+                    slice.limit(record[0] + record[1]).position(record[0]);
+                    out.write(slice);
+                }
+                out.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            damagedBytes = 0;
+            System.out.println("Score journal compacted, removed " + damaged + " damaged bytes.");
+        } catch (AtomicMoveNotSupportedException e) {
+            System.out.println("Score journal can't be compacted on this file system.");
+        } finally {
+            lock.release();
+        }
+        openChannel();
+    }
+
+    // Lock the file for writing; if another program swapped in a compacted file, switch to that one
+    private FileLock lockCurrentFile() throws IOException {
+        while (true) {
+            FileLock lock = channel.lock();
+            if (sameFileAsPath()) return lock;
+            lock.release();
+            openChannel();
+        }
+    }
+
+    private void reopenIfReplaced() throws IOException {
+        if (!sameFileAsPath()) openChannel();
+    }
+
+    private boolean sameFileAsPath() throws IOException {
+        if (fileKey == null) return true; // This file system can't tell files apart
+        try {
+            return fileKey.equals(Files.readAttributes(path, BasicFileAttributes.class).fileKey());
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+    }
+
+    // Open the file, writing the header if it is new
+    private void openChannel() throws IOException {
+        if (channel != null) channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        FileLock lock = channel.lock();
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(FILE_MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+                channel.write(header, 0);
+                channel.force(true);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(4);
+                channel.read(header, 0);
+                if (header.getInt(0) != FILE_MAGIC) {
+                    throw new IOException("Not a score journal: " + path);
+                }
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            io.submit(this::writePending).get(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // Shutting down anyway
+        }
+    }
+
+    // If the journal is empty, copy in the best time from an old highscore.txt
+    public void importLegacyHighScore(File file) throws IOException {
+        if (!file.exists()) return;
+        long[] records = {0};
+        scan(HEADER_SIZE, entry -> records[0]++);
+        if (records[0] > 0) return;
+        long best = readLegacyHighScore(file);
+        if (best == Long.MAX_VALUE) return;
+        List<Entry> batch = new ArrayList<>();
+        batch.add(new Entry(file.lastModified(), best, 0, GameEngine.COLOR_NAMES.length, 0));
+        appendNow(batch);
+    }
+
+    // Read a best time in milliseconds from an old highscore.txt (Long.MAX_VALUE if there isn't one)
+    // It holds seconds like "42.125"; the oldest versions saved whole seconds like "42"
+    static long readLegacyHighScore(File file) {
+        if (file.exists()) {
+            try (Scanner sc = new Scanner(file)) {
+                if (sc.hasNext()) {
+                    return parseSeconds(sc.next());
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Error loading high score.");
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    // Turn "42" or "42.5" or "42.125" into milliseconds
+    private static long parseSeconds(String text) {
+        int dot = text.indexOf('.');
+        if (dot < 0) {
+            return Long.parseLong(text) * 1000;
+        }
+        String fraction = (text.substring(dot + 1) + "000").substring(0, 3);
+        return Long.parseLong(text.substring(0, dot)) * 1000 + Integer.parseInt(fraction);
+    }
+}
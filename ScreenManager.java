@@ -0,0 +1,98 @@
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.swing.*;
+
+// The game's one window. Every screen (home, how to play, each game, results) is a card in it,
+// built the first time it's shown and kept after that, so moving between screens only swaps
+// which card is visible: no new windows, no rebuilt buttons, no pictures read again.
+// Kiosks run for days, and making and closing a window each time used to churn native resources.
+//
+// The window can be resized (the cup rows grow and shrink with it) and starts at a size that
+// suits the screen, so a 4K kiosk display doesn't get a tiny 800x700 window in the middle.
+//
+// Screens find out when they're left or shown again with a ComponentListener
+// (componentHidden / componentShown), which Swing calls as the cards change.
+public class ScreenManager {
+
+    // Names of the screens there is only one of (each difficulty's game is named after it)
+    public static final String HOME = "home";
+    public static final String HELP = "help";
+    public static final String RESULTS = "results";
+
+    // The window's size on an ordinary screen, and the smallest it can be made
+    private static final int BASE_WIDTH = 800;
+    private static final int BASE_HEIGHT = 700;
+    private static final int MIN_WIDTH = 640;
+    private static final int MIN_HEIGHT = 560;
+
+    // How much of a big screen the window takes up when it opens
+    private static final double SCREEN_SHARE = 0.75;
+
+    private static JFrame frame;
+    private static CardLayout cards;
+    private static JPanel deck;
+
+    // Screens built so far, and their window titles
+    private static final Map<String, JComponent> screens = new HashMap<>();
+    private static final Map<String, String> titles = new HashMap<>();
+
+    // The screen showing now and the one before it (for Back)
+    private static String current;
+    private static String previous;
+
+    // This class only has static helpers
+    private ScreenManager() {
+    }
+
+    // The game window, made the first time it's needed (Swing thread only)
+    public static JFrame frame() {
+        if (frame == null) {
+            frame = new JFrame("Cup Memory Game");
+            frame.setSize(startSize());
+            frame.setMinimumSize(new Dimension(MIN_WIDTH, MIN_HEIGHT));
+            frame.setResizable(true);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setLocationRelativeTo(null);  // Center the window on screen
+            cards = new CardLayout();
+            deck = new JPanel(cards);
+            frame.setContentPane(deck);
+        }
+        return frame;
+    }
+
+    // 800x700, made bigger (keeping its shape) on screens where that would look small
+    private static Dimension startSize() {
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        double grow = Math.min(screen.width * SCREEN_SHARE / BASE_WIDTH, screen.height * SCREEN_SHARE / BASE_HEIGHT);
+        grow = Math.max(1, grow);
+        return new Dimension((int) (BASE_WIDTH * grow), (int) (BASE_HEIGHT * grow));
+    }
+
+    // Show a screen, building it with `build` if it hasn't been shown before
+    public static void show(String name, String title, Supplier<? extends JComponent> build) {
+        JFrame window = frame();
+        if (!screens.containsKey(name)) {
+            JComponent screen = build.get();
+            screens.put(name, screen);
+            deck.add(screen, name);
+        }
+        titles.put(name, title);
+        if (!name.equals(current)) {
+            previous = current;
+            current = name;
+        }
+        cards.show(deck, name);
+        window.setTitle(title);
+        if (!window.isVisible()) window.setVisible(true);
+    }
+
+    // Go back to the screen shown before this one (the home screen if there wasn't one)
+    public static void back() {
+        String to = previous != null && screens.containsKey(previous) ? previous : HOME;
+        show(to, titles.get(to), () -> {
+            throw new IllegalStateException("No screen called " + to);
+        });
+    }
+}
@@ -0,0 +1,380 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// The fastest times for each difficulty, in a small file that every game program on this
+// computer maps into memory at once (kiosks run several games from the same folder).
+// A finished round is published straight into the shared memory, so every other running
+// game sees a new best time within a tick of the clock, without reading any files.
+// The score journal is still the real record; this only holds what the screens show live.
+//
+// There are no locks between programs. A writer takes a slot by setting its owner field from 0
+// to its process id with compare-and-set, then bumps the slot's sequence number from even to
+// odd, writes, bumps it to even again and sets the owner back to 0. Readers copy the slot and
+// check the number didn't change (and wasn't odd) while they copied, and try again if it did.
+// A game that dies halfway through a write leaves its id in the slot; once the slot has been
+// busy for STALE_MILLIS, the next writer checks whether that process is still running, and
+// only if it isn't takes the slot over and tidies its list. A slow writer (a long GC pause, a
+// suspended kiosk) keeps its slot however long it takes.
+//
+// File layout (little-endian, 8-byte fields on 8-byte boundaries):
+//   header (64 bytes): magic "CUPS" (4), version (4), slot count (4), times per slot (4),
+//                      change count (8), unused
+//   slot (320 bytes each): sequence (8), difficulty key (8, 0 = unused), rounds (8), time count (8),
+//                          then TOP times fastest first: round time in ms (8), attempts (8), finished at (8),
+//                          then the writing process's id (8, 0 = nobody is writing)
+public class SharedLeaderboard {
+
+    private static final int MAGIC = 0x43555053; // "CUPS"
+    private static final int VERSION = 2;
+
+    // How many difficulties fit, and how many times each keeps
+    static final int SLOTS = 32;
+    static final int TOP = 10;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int CHANGES = 16;
+    private static final int SLOT_SIZE = 320;
+    private static final int SEQUENCE = 0;
+    private static final int KEY = 8;
+    private static final int ROUNDS = 16;
+    private static final int COUNT = 24;
+    private static final int TIMES = 32;
+    private static final int TIME_SIZE = 24;
+    private static final int OWNER = TIMES + TOP * TIME_SIZE;
+    static final int FILE_SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    // A write takes microseconds, so a slot busy this long is worth checking for a dead writer
+    private static final long STALE_MILLIS = 500;
+
+    // This program's id, written into slots while it writes them
+    private static final long PID = ProcessHandle.current().pid();
+
+    // Atomic 8-byte reads and writes on the mapped file
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+        ByteOrder.LITTLE_ENDIAN);
+
+    // One per file in this program (two channels in one program can't both lock the same file)
+    private static final Map<Path, SharedLeaderboard> open = new HashMap<>();
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+
+    private SharedLeaderboard(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    // Open (or create) the shared leaderboard file
+    public static synchronized SharedLeaderboard open(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        SharedLeaderboard board = open.get(key);
+        if (board == null) {
+            board = new SharedLeaderboard(key, map(key));
+            open.put(key, board);
+        }
+        return board;
+    }
+
+    // Map the file, setting it up first if it's new (or from an older layout)
+    // Only this part uses a file lock, so two games starting at once don't both set it up
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE)) {
+            channel.lock(); // Let go of when the channel closes
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getInt(8) != SLOTS || buffer.getInt(12) != TOP) {
+                for (int i = 0; i < FILE_SIZE; i += 8) {
+                    buffer.putLong(i, 0);
+                }
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, SLOTS);
+                buffer.putInt(12, TOP);
+                buffer.putInt(0, MAGIC); // Last, so the header is only valid once it's all there
+                buffer.force();
+            }
+            return buffer; // The mapping stays valid after the channel is closed
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Goes up every time any program publishes a round; reading it is one memory read,
+    // so games can check it every clock tick and only read times when it moved
+    public long changes() {
+        return (long) LONGS.getVolatile(buffer, CHANGES);
+    }
+
+    // Add a finished round (on any thread, in any program)
+    // Returns false if there's no room for another difficulty
+    public boolean publish(Difficulty difficulty, long timeMillis, int attempts, long finishedAt) {
+        int slot = slot(difficulty, true);
+        if (slot < 0) return false;
+        long sequence = lock(slot);
+        boolean kept;
+        try {
+            LONGS.set(buffer, slot + ROUNDS, (long) LONGS.get(buffer, slot + ROUNDS) + 1);
+            insert(slot, timeMillis, attempts, finishedAt);
+        } finally {
+            kept = unlock(slot, sequence);
+        }
+        if (!kept) return false; // The slot was taken from us, so the write doesn't count
+        LONGS.getAndAdd(buffer, CHANGES, 1L);
+        return true;
+    }
+
+    // Bring in the fastest times of a leaderboard read from the journal (times already here are
+    // skipped, since every program reads the same journal), keeping the larger round count
+    public boolean merge(Difficulty difficulty, Leaderboard board) {
+        long[] times = new long[TOP];
+        int[] attempts = new int[TOP];
+        long[] when = new long[TOP];
+        int count = board.copyTop(times, attempts, when);
+        int slot = slot(difficulty, true);
+        if (slot < 0) return false;
+        long sequence = lock(slot);
+        boolean kept;
+        try {
+            LONGS.set(buffer, slot + ROUNDS, Math.max((long) LONGS.get(buffer, slot + ROUNDS), board.getRounds()));
+            for (int i = 0; i < count; i++) {
+                insert(slot, times[i], attempts[i], when[i]);
+            }
+        } finally {
+            kept = unlock(slot, sequence);
+        }
+        if (!kept) return false;
+        LONGS.getAndAdd(buffer, CHANGES, 1L);
+        return true;
+    }
+
+    // Best time for this difficulty in ms (Long.MAX_VALUE if there isn't one yet)
+    public long bestTime(Difficulty difficulty) {
+        int slot = slot(difficulty, false);
+        if (slot < 0) return Long.MAX_VALUE;
+        long start = System.nanoTime();
+        for (int spins = 0; ; spins++) {
+            long sequence = (long) LONGS.getAcquire(buffer, slot + SEQUENCE);
+            if ((sequence & 1) == 0) {
+                long count = (long) LONGS.get(buffer, slot + COUNT);
+                long best = (long) LONGS.get(buffer, slot + TIMES);
+                VarHandle.loadLoadFence();
+                if ((long) LONGS.get(buffer, slot + SEQUENCE) == sequence) {
+                    return count > 0 ? best : Long.MAX_VALUE;
+                }
+            } else if (stale(start)) {
+                return Long.MAX_VALUE; // A writer died mid-write; the next publish will tidy up
+            }
+            pause(spins);
+        }
+    }
+
+    // Copy this difficulty's fastest times (fastest first) into the arrays
+    // Returns how many there are (0 if none), and the round count in rounds[0] if rounds isn't null
+    public int read(Difficulty difficulty, long[] times, int[] attempts, long[] when, long[] rounds) {
+        int slot = slot(difficulty, false);
+        if (slot < 0) return 0;
+        long start = System.nanoTime();
+        for (int spins = 0; ; spins++) {
+            long sequence = (long) LONGS.getAcquire(buffer, slot + SEQUENCE);
+            if ((sequence & 1) == 0) {
+                int count = (int) Math.max(0, Math.min(TOP, (long) LONGS.get(buffer, slot + COUNT)));
+                count = Math.min(count, times.length);
+                for (int i = 0; i < count; i++) {
+                    int at = slot + TIMES + i * TIME_SIZE;
+                    times[i] = (long) LONGS.get(buffer, at);
+                    if (attempts != null) attempts[i] = (int) (long) LONGS.get(buffer, at + 8);
+                    if (when != null) when[i] = (long) LONGS.get(buffer, at + 16);
+                }
+                long roundCount = (long) LONGS.get(buffer, slot + ROUNDS);
+                VarHandle.loadLoadFence();
+                if ((long) LONGS.get(buffer, slot + SEQUENCE) == sequence) {
+                    if (rounds != null) rounds[0] = roundCount;
+                    return count;
+                }
+            } else if (stale(start)) {
+                return 0;
+            }
+            pause(spins);
+        }
+    }
+
+    // Where this difficulty's slot starts, or -1 if it has none (and `claim` is false, or the file is full)
+    // Slots are found by open addressing on a 64-bit hash of the difficulty's settings
+    private int slot(Difficulty difficulty, boolean claim) {
+        long key = key(difficulty);
+        int first = (int) ((key >>> 1) % SLOTS);
+        for (int probe = 0; probe < SLOTS; probe++) {
+            int slot = HEADER_SIZE + ((first + probe) % SLOTS) * SLOT_SIZE;
+            long found = (long) LONGS.getVolatile(buffer, slot + KEY);
+            if (found == key) return slot;
+            if (found == 0) {
+                if (!claim) return -1;
+                // Another program may claim it at the same moment; whoever loses looks again
+                if (LONGS.compareAndSet(buffer, slot + KEY, 0L, key)) return slot;
+                if ((long) LONGS.getVolatile(buffer, slot + KEY) == key) return slot;
+            }
+        }
+        return -1;
+    }
+
+    // FNV-1a over the cup count, shuffles and reveal time (never 0, since 0 marks an unused slot)
+    static long key(Difficulty difficulty) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ difficulty.getCupCount()) * 0x100000001b3L;
+        hash = (hash ^ difficulty.getShuffleCycles()) * 0x100000001b3L;
+        hash = (hash ^ difficulty.getRevealMillis()) * 0x100000001b3L;
+        return hash == 0 ? 1 : hash;
+    }
+
+    // Take a slot for writing; returns the (odd) sequence number it now has
+    private long lock(int slot) {
+        long seen = -1;
+        long since = 0;
+        for (int spins = 0; ; spins++) {
+            long owner = (long) LONGS.getVolatile(buffer, slot + OWNER);
+            if (owner == 0) {
+                if (LONGS.compareAndSet(buffer, slot + OWNER, 0L, PID)) return begin(slot);
+                continue;
+            }
+            // Someone else is writing. If they've had the slot a long time, see whether their
+            // program is still running; only a dead program's slot is taken over
+            long now = System.nanoTime();
+            if (owner != seen) {
+                seen = owner;
+                since = now;
+            } else if (now - since > STALE_MILLIS * 1_000_000 && owner != PID && !alive(owner)
+                    && LONGS.compareAndSet(buffer, slot + OWNER, owner, PID)) {
+                return begin(slot);
+            }
+            pause(spins);
+        }
+    }
+
+    // Make the owned slot's sequence odd, tidying the list first if a dead writer left it odd
+    private long begin(int slot) {
+        long sequence = (long) LONGS.getVolatile(buffer, slot + SEQUENCE);
+        if ((sequence & 1) == 0) {
+            LONGS.setVolatile(buffer, slot + SEQUENCE, sequence + 1);
+            return sequence + 1;
+        }
+        LONGS.setVolatile(buffer, slot + SEQUENCE, sequence + 2);
+        repair(slot);
+        return sequence + 2;
+    }
+
+    private static boolean alive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    // Wait a moment for a writer to finish; after a while give up the CPU, in case the
+    // writer is a program that isn't getting to run
+    private static void pause(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    // Finish writing a slot; returns false (and leaves the slot alone) if it was taken over meanwhile
+    private boolean unlock(int slot, long sequence) {
+        if (!LONGS.compareAndSet(buffer, slot + SEQUENCE, sequence, sequence + 1)) return false;
+        LONGS.compareAndSet(buffer, slot + OWNER, PID, 0L);
+        return true;
+    }
+
+    private static boolean stale(long startNanos) {
+        return System.nanoTime() - startNanos > STALE_MILLIS * 1_000_000;
+    }
+
+    // Put a time in the slot's list if it's one of the fastest (slot must be locked)
+    private void insert(int slot, long timeMillis, int attempts, long finishedAt) {
+        int count = (int) (long) LONGS.get(buffer, slot + COUNT);
+        // Find where it goes, and skip it if it's already there
+        int at = count;
+        for (int i = 0; i < count; i++) {
+            int entry = slot + TIMES + i * TIME_SIZE;
+            long time = (long) LONGS.get(buffer, entry);
+            if (time == timeMillis && (long) LONGS.get(buffer, entry + 16) == finishedAt) return;
+            if (time > timeMillis && at == count) at = i;
+        }
+        if (at >= TOP) return; // Not fast enough
+        // Move the slower times down one place (the slowest drops off a full list)
+        int last = Math.min(count, TOP - 1);
+        for (int i = last; i > at; i--) {
+            copyTime(slot, i - 1, i);
+        }
+        setTime(slot, at, timeMillis, attempts, finishedAt);
+        if (count < TOP) LONGS.set(buffer, slot + COUNT, (long) count + 1);
+    }
+
+    // Sort the slot's list again and drop nonsense left by a program that died mid-write
+    private void repair(int slot) {
+        long count = (long) LONGS.get(buffer, slot + COUNT);
+        int kept = 0;
+        for (int i = 0; i < Math.max(0, Math.min(TOP, count)); i++) {
+            int entry = slot + TIMES + i * TIME_SIZE;
+            if ((long) LONGS.get(buffer, entry) > 0) {
+                if (kept != i) copyTime(slot, i, kept);
+                kept++;
+            }
+        }
+        // Insertion sort (at most TOP times)
+        for (int i = 1; i < kept; i++) {
+            long time = (long) LONGS.get(buffer, slot + TIMES + i * TIME_SIZE);
+            long attempts = (long) LONGS.get(buffer, slot + TIMES + i * TIME_SIZE + 8);
+            long when = (long) LONGS.get(buffer, slot + TIMES + i * TIME_SIZE + 16);
+            int j = i;
+            while (j > 0 && (long) LONGS.get(buffer, slot + TIMES + (j - 1) * TIME_SIZE) > time) {
+                copyTime(slot, j - 1, j);
+                j--;
+            }
+            setTime(slot, j, time, (int) attempts, when);
+        }
+        LONGS.set(buffer, slot + COUNT, (long) kept);
+    }
+
+    private void copyTime(int slot, int from, int to) {
+        int a = slot + TIMES + from * TIME_SIZE;
+        int b = slot + TIMES + to * TIME_SIZE;
+        LONGS.set(buffer, b, (long) LONGS.get(buffer, a));
+        LONGS.set(buffer, b + 8, (long) LONGS.get(buffer, a + 8));
+        LONGS.set(buffer, b + 16, (long) LONGS.get(buffer, a + 16));
+    }
+
+    private void setTime(int slot, int index, long timeMillis, int attempts, long finishedAt) {
+        int entry = slot + TIMES + index * TIME_SIZE;
+        LONGS.set(buffer, entry, timeMillis);
+        LONGS.set(buffer, entry + 8, (long) attempts);
+        LONGS.set(buffer, entry + 16, finishedAt);
+    }
+
+    // Print every difficulty's live times (java SharedLeaderboard [leaderboard.shm])
+    public static void main(String[] args) throws IOException {
+        SharedLeaderboard board = open(Path.of(args.length > 0 ? args[0] : "leaderboard.shm"));
+        long[] times = new long[TOP];
+        int[] attempts = new int[TOP];
+        long[] rounds = new long[1];
+        System.out.println(board.getPath() + ": " + board.changes() + " changes");
+        for (Difficulty difficulty : Difficulty.PRESETS) {
+            int count = board.read(difficulty, times, attempts, null, rounds);
+            if (count == 0) continue;
+            System.out.println(difficulty.getName() + " (" + rounds[0] + " rounds):");
+            for (int i = 0; i < count; i++) {
+                System.out.println("  " + (i + 1) + ". " + CupMemoryGame.formatTime(times[i])
+                    + " in " + attempts[i] + " attempts");
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Plays lots of rounds with made-up players to see how hard each difficulty setting is.
+// Rounds are split into chunks and run on a fork/join pool, one engine and one random
+// number generator per chunk, so threads share nothing while they work. Chunk results
+// (histograms of attempts and round times) are added together at the end.
+// Every chunk's generator comes from the main seed and the chunk number, so the same
+// seed gives the same numbers however many threads there are.
+//
+// Run with: java Simulator [--rounds N] [--threads N] [--seed N] [--model name,...] [--difficulty name,...]
+// Models: decay, partial, random. Difficulties: the preset names, or "6c-5s-3000ms" style ids.
+public class Simulator {
+
+    // Rounds per fork/join task; small enough to balance across cores, big enough to be worth a task
+    private static final int CHUNK = 2048;
+
+    // Give up on a round after this many submits (random guessing on a big board never finishes)
+    private static final int MAX_ATTEMPTS = 2000;
+
+    // How long a made-up player takes to click one cup, and to think before each submit
+    private static final int CLICK_MILLIS = 600;
+    private static final int THINK_MILLIS = 1500;
+
+    // Memory-decay player: reveal time needed per cup to learn it, and how much each shuffle makes it forget
+    private static final double ENCODE_MILLIS_PER_CUP = 500;
+    private static final double FORGET_PER_SHUFFLE = 0.06;
+
+    // A made-up player: decides which cups it remembers after the reveal
+    // Players that remember nothing of a position fill it in randomly, then use the
+    // "N correct" feedback to fix their guess by swapping cups (see Worker.solve)
+    public interface PlayerModel {
+        String name();
+
+        // Whether the player still remembers the cup at this position when the shuffling stops
+        boolean remembers(int position, Difficulty difficulty, SplittableRandom random);
+
+        // Whether the player uses feedback (false means every guess is a fresh random order)
+        default boolean learns() {
+            return true;
+        }
+    }
+
+    // Remembers each cup with a chance that grows with reveal time per cup and
+    // shrinks with every shuffle watched
+    public static final PlayerModel MEMORY_DECAY = new PlayerModel() {
+        public String name() {
+            return "decay";
+        }
+
+        public boolean remembers(int position, Difficulty difficulty, SplittableRandom random) {
+            double encoded = 1 - Math.exp(-difficulty.getRevealMillis()
+                / (ENCODE_MILLIS_PER_CUP * difficulty.getCupCount()));
+            double kept = Math.exp(-FORGET_PER_SHUFFLE * difficulty.getShuffleCycles());
+            return random.nextDouble() < encoded * kept;
+        }
+    };
+
+    // Remembers the first few cups and the last one (the ones people recall best)
+    // and nothing in the middle; more reveal time lets it hold more, more shuffles fewer
+    public static final PlayerModel PARTIAL_RECALL = new PlayerModel() {
+        public String name() {
+            return "partial";
+        }
+
+        public boolean remembers(int position, Difficulty difficulty, SplittableRandom random) {
+            int span = Math.max(1, 2 + difficulty.getRevealMillis() / 1500 - difficulty.getShuffleCycles() / 5);
+            return position < span || position == difficulty.getCupCount() - 1;
+        }
+    };
+
+    // Remembers nothing and never learns, just tries random orders
+    public static final PlayerModel RANDOM_GUESS = new PlayerModel() {
+        public String name() {
+            return "random";
+        }
+
+        public boolean remembers(int position, Difficulty difficulty, SplittableRandom random) {
+            return false;
+        }
+
+        public boolean learns() {
+            return false;
+        }
+    };
+
+    public static final PlayerModel[] MODELS = {MEMORY_DECAY, PARTIAL_RECALL, RANDOM_GUESS};
+
+    // What a batch of rounds came to
+    public static final class Stats {
+        public long rounds;
+        public long solved;
+        public long attemptSum;
+        public final LogHistogram attempts = new LogHistogram();
+        public final LogHistogram timeMillis = new LogHistogram();
+
+        void add(Stats other) {
+            rounds += other.rounds;
+            solved += other.solved;
+            attemptSum += other.attemptSum;
+            attempts.add(other.attempts);
+            timeMillis.add(other.timeMillis);
+        }
+    }
+
+    // Play `rounds` rounds of one difficulty with one player model on the pool
+    public static Stats simulate(ForkJoinPool pool, Difficulty difficulty, PlayerModel model, long rounds, long seed) {
+        return pool.invoke(new Batch(difficulty, model, seed, 0, rounds));
+    }
+
+    // A range of rounds, split in half until it is one chunk
+    private static final class Batch extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+
+        private final Difficulty difficulty;
+        private final PlayerModel model;
+        private final long seed;
+        private final long from;
+        private final long to;
+
+        Batch(Difficulty difficulty, PlayerModel model, long seed, long from, long to) {
+            this.difficulty = difficulty;
+            this.model = model;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= CHUNK) {
+                return new Worker(difficulty, model, seed, from).play(to - from);
+            }
+            // Split on a chunk boundary so each chunk always gets the same seed
+            long middle = from + ((to - from) / 2 / CHUNK) * CHUNK;
+            if (middle == from) middle = from + CHUNK;
+            Batch left = new Batch(difficulty, model, seed, from, middle);
+            left.fork();
+            Stats stats = new Batch(difficulty, model, seed, middle, to).compute();
+            stats.add(left.join());
+            return stats;
+        }
+    }
+
+    // Plays rounds on one thread with its own engine, clock and random numbers
+    private static final class Worker {
+        private final Difficulty difficulty;
+        private final PlayerModel model;
+        private final SplittableRandom random;
+        private final GameEngine engine;
+        private final int cups;
+
+        // Fake time the engine's clock reads, moved forward by what the player does
+        private long nowNanos;
+
+        // The player's current guess, which positions it is sure of, and scratch space
+        private final int[] guess;
+        private final boolean[] sure;
+        private final int[] unsure;
+        private final int[] leftover;
+
+        Worker(Difficulty difficulty, PlayerModel model, long seed, long firstRound) {
+            this.difficulty = difficulty;
+            this.model = model;
+            this.random = new SplittableRandom(seed ^ (firstRound * 0x9E3779B97F4A7C15L));
+            this.engine = new GameEngine(difficulty, random.split(), GameEngine.DEFAULT_ALGORITHM, () -> nowNanos);
+            this.cups = difficulty.getCupCount();
+            this.guess = new int[cups];
+            this.sure = new boolean[cups];
+            this.unsure = new int[cups];
+            this.leftover = new int[cups];
+        }
+
+        Stats play(long rounds) {
+            Stats stats = new Stats();
+            for (long i = 0; i < rounds; i++) {
+                nowNanos = 0;
+                engine.newRound();
+                // The reveal and the shuffle animation happen on the round clock too
+                advance(difficulty.getRevealMillis()
+                    + (long) difficulty.getShuffleCycles() * CupMemoryGame.SHUFFLE_MILLIS);
+                boolean solved = solve();
+                stats.rounds++;
+                stats.attemptSum += engine.getAttempts();
+                stats.attempts.record(engine.getAttempts());
+                if (solved) {
+                    stats.solved++;
+                    stats.timeMillis.record(engine.getElapsedMillis());
+                }
+            }
+            return stats;
+        }
+
+        // Play one round to the end (or until MAX_ATTEMPTS), returns whether it was solved
+        private boolean solve() {
+            firstGuess();
+            int score = submit();
+            if (!model.learns()) {
+                while (score != cups && engine.getAttempts() < MAX_ATTEMPTS) {
+                    for (int i = 0; i < cups; i++) {
+                        sure[i] = false;
+                    }
+                    fillUnsure();
+                    score = submit();
+                }
+                return score == cups;
+            }
+            // Swap two cups the player isn't sure of and see what the correct count does:
+            // +2 means both are right now, -2 means both were right before, +1 keeps the swap,
+            // and 0 or -1 puts them back
+            while (score != cups && engine.getAttempts() < MAX_ATTEMPTS) {
+                int unsureCount = 0;
+                for (int i = 0; i < cups; i++) {
+                    if (!sure[i]) unsure[unsureCount++] = i;
+                }
+                if (unsureCount < 2) break; // Can't happen with a true memory, but never loop forever
+                int first = random.nextInt(unsureCount);
+                int second = random.nextInt(unsureCount - 1);
+                if (second >= first) second++;
+                int a = unsure[first];
+                int b = unsure[second];
+                swap(a, b);
+                int next = submit();
+                int change = next - score;
+                if (change == 2) {
+                    sure[a] = true;
+                    sure[b] = true;
+                } else if (change == -2) {
+                    swap(a, b);
+                    sure[a] = true;
+                    sure[b] = true;
+                    continue; // The old guess's score is still right
+                } else if (change <= 0) {
+                    swap(a, b);
+                    continue;
+                }
+                score = next;
+            }
+            return score == cups;
+        }
+
+        // Put remembered cups where they go and the rest in random order
+        private void firstGuess() {
+            for (int i = 0; i < cups; i++) {
+                sure[i] = model.remembers(i, difficulty, random);
+                if (sure[i]) guess[i] = engine.correctAt(i);
+            }
+            fillUnsure();
+        }
+
+        // Fill every position the player isn't sure of with the unused colors, shuffled
+        private void fillUnsure() {
+            int count = 0;
+            for (int color = 0; color < cups; color++) {
+                leftover[count++] = color;
+            }
+            for (int i = 0; i < cups; i++) {
+                if (sure[i]) leftover[guess[i]] = -1;
+            }
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (leftover[i] >= 0) leftover[kept++] = leftover[i];
+            }
+            for (int i = kept - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = leftover[i];
+                leftover[i] = leftover[j];
+                leftover[j] = t;
+            }
+            int next = 0;
+            for (int i = 0; i < cups; i++) {
+                if (!sure[i]) guess[i] = leftover[next++];
+            }
+        }
+
+        // Click the whole guess into the engine and submit it, like a player would
+        private int submit() {
+            for (int i = 0; i < cups; i++) {
+                engine.addGuess(guess[i]);
+                advance(CLICK_MILLIS);
+            }
+            advance(THINK_MILLIS);
+            return engine.submit();
+        }
+
+        private void swap(int a, int b) {
+            int t = guess[a];
+            guess[a] = guess[b];
+            guess[b] = t;
+        }
+
+        private void advance(long millis) {
+            nowNanos += millis * 1_000_000L;
+        }
+    }
+
+    public static void main(String[] args) {
+        long rounds = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        List<PlayerModel> models = new ArrayList<>(List.of(MODELS));
+        List<Difficulty> difficulties = new ArrayList<>(List.of(Difficulty.EASY, Difficulty.NORMAL,
+            Difficulty.HARD, Difficulty.EXPERT));
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--rounds":
+                    rounds = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--model":
+                    models.clear();
+                    for (String name : value.split(",")) {
+                        models.add(modelByName(name));
+                    }
+                    break;
+                case "--difficulty":
+                    difficulties.clear();
+                    for (String name : value.split(",")) {
+                        difficulties.add(Difficulty.parse(name));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.printf(Locale.ROOT, "%d rounds per setting on %d threads, seed %d%n%n", rounds, threads, seed);
+        System.out.printf(Locale.ROOT, "%-22s %-8s %7s %9s %6s %6s %6s %9s %9s %9s %10s%n", "Difficulty", "Model",
+            "Solved", "Attempts", "p50", "p90", "p99", "Time p50", "Time p90", "Time p99", "Rounds/s");
+        for (Difficulty difficulty : difficulties) {
+            for (PlayerModel model : models) {
+                long start = System.nanoTime();
+                Stats stats = simulate(pool, difficulty, model, rounds, seed);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf(Locale.ROOT, "%-22s %-8s %6.1f%% %9.1f %6d %6d %6d %9s %9s %9s %10.0f%n",
+                    difficulty.getName() + " (" + difficulty.getId() + ")", model.name(),
+                    100.0 * stats.solved / stats.rounds, (double) stats.attemptSum / stats.rounds,
+                    stats.attempts.percentile(50), stats.attempts.percentile(90), stats.attempts.percentile(99),
+                    CupMemoryGame.formatTime(stats.timeMillis.percentile(50)),
+                    CupMemoryGame.formatTime(stats.timeMillis.percentile(90)),
+                    CupMemoryGame.formatTime(stats.timeMillis.percentile(99)),
+                    stats.rounds / seconds);
+            }
+        }
+        pool.shutdown();
+    }
+
+    private static PlayerModel modelByName(String name) {
+        for (PlayerModel model : MODELS) {
+            if (model.name().equalsIgnoreCase(name)) return model;
+        }
+        throw new IllegalArgumentException("Unknown player model: " + name);
+    }
+
+}
@@ -0,0 +1,466 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+// Plays the game's sound effects with as little delay as possible.
+// Every sound is decoded once, when the engine starts, into 16-bit PCM in memory (cheer.wav for
+// the win, the short blips for clicks and the rest are made right here). One mixer thread adds
+// the playing sounds together a few milliseconds at a time and writes them to a single output,
+// so starting a sound is just noting it down: no stream is opened, nothing is decoded and
+// nothing is allocated, and the Swing thread never waits on the sound card.
+//
+// The output can be the speakers, or a "null" device that throws the sound away at the speed it
+// would have played (and can save it to a .wav file), so everything also runs with no sound card.
+//
+// Run with: java SoundEngine [--line | --null | --wav out.wav] [--triggers 200]
+// (starts sounds at random and prints how long each took from play() to coming out)
+public class SoundEngine {
+
+    // The sounds
+    public static final int CLICK = 0;    // A cup was clicked
+    public static final int UNDO = 1;     // The last cup was taken back
+    public static final int SHUFFLE = 2;  // The cups slid to new places
+    public static final int WRONG = 3;    // A submit that wasn't right
+    public static final int WIN = 4;      // The round was solved
+    private static final int SOUND_COUNT = 5;
+
+    private static final String[] SOUND_NAMES = {"click", "undo", "shuffle", "wrong", "win"};
+
+    // What everything is mixed to: CD quality, 16-bit stereo (the same as cheer.wav)
+    public static final AudioFormat FORMAT = new AudioFormat(44_100f, 16, 2, true, false);
+    private static final int RATE = 44_100;
+
+    // Frames mixed per step (about 5.8 ms), and most sounds playing at once
+    private static final int PERIOD_FRAMES = 256;
+    private static final int MAX_VOICES = 16;
+
+    // Most sounds that can be waiting for the next step (more are dropped)
+    private static final int MAX_PENDING = 64;
+
+    // Where mixed sound goes
+    public interface Output {
+        // Write mixed bytes, waiting while the device is full
+        void write(byte[] data, int length) throws IOException;
+
+        // How many frames have come out of the device so far
+        long playedFrames();
+
+        void close();
+    }
+
+    // Each sound as interleaved stereo samples
+    private final short[][] clips = new short[SOUND_COUNT][];
+
+    private final Output output;
+
+    // Sounds started since the mixer last looked, and when each was started (System.nanoTime)
+    // Guarded by `pending`; the mixer copies them out and lets go straight away
+    private final Object pending = new Object();
+    private final int[] pendingSound = new int[MAX_PENDING];
+    private final long[] pendingNanos = new long[MAX_PENDING];
+    private int pendingCount = 0;
+    private long dropped = 0;
+
+    // Mixer thread only: the copies it took, the playing voices and its buffers
+    private final int[] takenSound = new int[MAX_PENDING];
+    private final long[] takenNanos = new long[MAX_PENDING];
+    private final int[] voiceSound = new int[MAX_VOICES];    // -1 = free
+    private final int[] voicePosition = new int[MAX_VOICES]; // Next sample to play
+    private final int[] mix = new int[PERIOD_FRAMES * 2];
+    private final byte[] out = new byte[PERIOD_FRAMES * 4];
+    private long framesWritten = 0;
+
+    // Time from play() until the sound's first sample comes out of the device
+    private final LogHistogram latencyMicros = new LogHistogram();
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // The engine the game plays through (null until it has started)
+    private static volatile SoundEngine shared;
+    private static boolean sharedStarting = false;
+
+    public SoundEngine(Output output) {
+        this.output = output;
+        Arrays.fill(voiceSound, -1);
+        clips[CLICK] = tone(1400, 900, 0.035, 0.30, 0);
+        clips[UNDO] = tone(700, 420, 0.080, 0.28, 0);
+        clips[SHUFFLE] = noise(0.120, 0.12);
+        clips[WRONG] = tone(190, 150, 0.280, 0.30, 0.5);
+        clips[WIN] = loadClip("cheer.wav");
+        if (clips[WIN] == null) clips[WIN] = tone(880, 1320, 0.400, 0.30, 0);
+    }
+
+    // Start the mixer thread
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::run, "sound-mixer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    // Stop the mixer and close the output
+    public void close() {
+        Thread mixer;
+        synchronized (this) {
+            running = false;
+            mixer = thread;
+        }
+        if (mixer != null) {
+            try {
+                mixer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        output.close();
+    }
+
+    // Start a sound; safe from any thread, never waits on the device and allocates nothing
+    public void play(int sound) {
+        long now = System.nanoTime();
+        synchronized (pending) {
+            if (pendingCount == MAX_PENDING) {
+                dropped++;
+                return;
+            }
+            pendingSound[pendingCount] = sound;
+            pendingNanos[pendingCount] = now;
+            pendingCount++;
+        }
+    }
+
+    // Latency percentile in microseconds (play() until the first sample is out)
+    public long latencyMicros(double percent) {
+        synchronized (latencyMicros) {
+            return latencyMicros.percentile(percent);
+        }
+    }
+
+    public long latencyCount() {
+        synchronized (latencyMicros) {
+            return latencyMicros.getCount();
+        }
+    }
+
+    public long droppedCount() {
+        synchronized (pending) {
+            return dropped;
+        }
+    }
+
+    // Start the game's engine on a background thread (opening the sound card can take a while)
+    // With no sound card (or a busy one) the game just stays quiet
+    public static synchronized void startShared() {
+        if (sharedStarting) return;
+        sharedStarting = true;
+        Thread starter = new Thread(() -> {
+            try {
+                SoundEngine engine = new SoundEngine(lineOutput(PERIOD_FRAMES * 4));
+                engine.start();
+                shared = engine;
+            } catch (LineUnavailableException | IllegalArgumentException e) {
+                System.out.println("No sound output, playing without sound.");
+            }
+        }, "sound-start");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    // Play a sound on the game's engine (does nothing until it has started)
+    public static void playShared(int sound) {
+        SoundEngine engine = shared;
+        if (engine != null) engine.play(sound);
+    }
+
+    // The mixer thread: take new sounds, mix one step, write it, repeat
+    private void run() {
+        try {
+            while (running) {
+                mixPeriod();
+                output.write(out, out.length);
+            }
+        } catch (IOException e) {
+            System.out.println("Sound output stopped: " + e.getMessage());
+        }
+    }
+
+    void mixPeriod() {
+        int taken;
+        synchronized (pending) {
+            taken = pendingCount;
+            System.arraycopy(pendingSound, 0, takenSound, 0, taken);
+            System.arraycopy(pendingNanos, 0, takenNanos, 0, taken);
+            pendingCount = 0;
+        }
+        if (taken > 0) {
+            // This step comes out after everything already written to the device
+            long now = System.nanoTime();
+            long queuedNanos = Math.max(0, framesWritten - output.playedFrames()) * 1_000_000_000L / RATE;
+            synchronized (latencyMicros) {
+                for (int i = 0; i < taken; i++) {
+                    startVoice(takenSound[i]);
+                    latencyMicros.record((now - takenNanos[i] + queuedNanos) / 1000);
+                }
+            }
+        }
+
+        Arrays.fill(mix, 0);
+        for (int v = 0; v < MAX_VOICES; v++) {
+            int sound = voiceSound[v];
+            if (sound < 0) continue;
+            short[] clip = clips[sound];
+            int position = voicePosition[v];
+            int count = Math.min(mix.length, clip.length - position);
+            for (int i = 0; i < count; i++) {
+                mix[i] += clip[position + i];
+            }
+            voicePosition[v] = position + count;
+            if (voicePosition[v] >= clip.length) voiceSound[v] = -1; // Finished
+        }
+        for (int i = 0; i < mix.length; i++) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+            out[2 * i] = (byte) sample;
+            out[2 * i + 1] = (byte) (sample >> 8);
+        }
+        framesWritten += PERIOD_FRAMES;
+    }
+
+    // Give a sound a free voice, or the voice that has played longest if none are free
+    private void startVoice(int sound) {
+        if (sound < 0 || sound >= SOUND_COUNT || clips[sound].length == 0) return;
+        int best = 0;
+        for (int v = 0; v < MAX_VOICES; v++) {
+            if (voiceSound[v] < 0) {
+                best = v;
+                break;
+            }
+            if (voicePosition[v] > voicePosition[best]) best = v;
+        }
+        voiceSound[best] = sound;
+        voicePosition[best] = 0;
+    }
+
+    // A sliding sine tone that fades out; buzz > 0 mixes in a square wave for a harsher sound
+    private static short[] tone(double fromHz, double toHz, double seconds, double volume, double buzz) {
+        int frames = (int) (seconds * RATE);
+        short[] clip = new short[frames * 2];
+        double phase = 0;
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / frames;
+            phase += 2 * Math.PI * (fromHz + (toHz - fromHz) * t) / RATE;
+            double wave = Math.sin(phase) * (1 - buzz) + Math.signum(Math.sin(phase)) * buzz;
+            double fade = Math.min(1, i / (RATE * 0.002)) * (1 - t) * (1 - t); // 2 ms fade in, then out
+            short sample = (short) (wave * fade * volume * Short.MAX_VALUE);
+            clip[2 * i] = sample;
+            clip[2 * i + 1] = sample;
+        }
+        return clip;
+    }
+
+    // A soft "swish": noise that swells and fades (the same every time)
+    private static short[] noise(double seconds, double volume) {
+        int frames = (int) (seconds * RATE);
+        short[] clip = new short[frames * 2];
+        SplittableRandom random = new SplittableRandom(7);
+        double smooth = 0;
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / frames;
+            smooth += (random.nextDouble(-1, 1) - smooth) * 0.25; // Take the hiss off the top
+            double swell = Math.sin(Math.PI * t);
+            short sample = (short) (smooth * swell * volume * Short.MAX_VALUE);
+            clip[2 * i] = sample;
+            clip[2 * i + 1] = sample;
+        }
+        return clip;
+    }
+
+    // Decode a sound file into samples in FORMAT, from the asset bundle or src/sounds
+    // Returns null if it isn't there or can't be turned into FORMAT
+    private static short[] loadClip(String name) {
+        try (InputStream in = openSound(name)) {
+            if (in == null) return null;
+            AudioInputStream source = AudioSystem.getAudioInputStream(in);
+            AudioInputStream pcm = source.getFormat().matches(FORMAT) ? source
+                : AudioSystem.getAudioInputStream(FORMAT, source);
+            byte[] bytes = pcm.readAllBytes();
+            short[] clip = new short[bytes.length / 2];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(clip);
+            return clip;
+        } catch (IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+            System.out.println("Error loading sound: " + name);
+            return null;
+        }
+    }
+
+    private static InputStream openSound(String name) throws IOException {
+        AssetBundle bundle = AssetBundle.shared();
+        ByteBuffer data = bundle != null ? bundle.data(name) : null;
+        if (data != null) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return new ByteArrayInputStream(bytes);
+        }
+        InputStream resource = SoundEngine.class.getClassLoader().getResourceAsStream("src/sounds/" + name);
+        if (resource != null) return new BufferedInputStream(resource);
+        Path file = Paths.get("src/sounds", name);
+        return Files.isRegularFile(file) ? new BufferedInputStream(Files.newInputStream(file)) : null;
+    }
+
+    // The speakers, with room for bufferFrames frames (less room = less delay, more risk of gaps)
+    public static Output lineOutput(int bufferFrames) throws LineUnavailableException {
+        SourceDataLine line = AudioSystem.getSourceDataLine(FORMAT);
+        line.open(FORMAT, bufferFrames * FORMAT.getFrameSize());
+        line.start();
+        return new Output() {
+            public void write(byte[] data, int length) {
+                line.write(data, 0, length);
+            }
+
+            public long playedFrames() {
+                return line.getLongFramePosition();
+            }
+
+            public void close() {
+                line.stop();
+                line.close();
+            }
+        };
+    }
+
+    // A device that plays nothing, at the speed a sound card would (a couple of steps ahead),
+    // saving what it "played" to a .wav file if one is given
+    public static Output nullOutput(Path wav) {
+        return new TimedOutput(wav);
+    }
+
+    private static final class TimedOutput implements Output {
+
+        // How far ahead of "now" writing may get, like a sound card's buffer
+        private static final long AHEAD_FRAMES = PERIOD_FRAMES * 2;
+
+        private final long startNanos = System.nanoTime();
+        private long written = 0;
+        private FileChannel file;
+        private ByteBuffer buffer;
+
+        TimedOutput(Path wav) {
+            if (wav == null) return;
+            try {
+                file = FileChannel.open(wav, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                file.write(ByteBuffer.allocate(44)); // Header, filled in on close
+                buffer = ByteBuffer.allocate(PERIOD_FRAMES * 4 * 4);
+            } catch (IOException e) {
+                System.out.println("Error opening " + wav + ", sound won't be saved.");
+                file = null;
+            }
+        }
+
+        public void write(byte[] data, int length) throws IOException {
+            long frames = length / FORMAT.getFrameSize();
+            // Wait until the device would have room
+            while (written + frames - playedFrames() > AHEAD_FRAMES) {
+                long waitFrames = written + frames - playedFrames() - AHEAD_FRAMES;
+                LockSupport.parkNanos(waitFrames * 1_000_000_000L / RATE);
+            }
+            if (file != null) {
+                if (buffer.remaining() < length) flush();
+                buffer.put(data, 0, length);
+            }
+            written += frames;
+        }
+
+        public long playedFrames() {
+            return (System.nanoTime() - startNanos) * RATE / 1_000_000_000L;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void close() {
+            if (file == null) return;
+            try {
+                flush();
+                int dataBytes = (int) Math.min(Integer.MAX_VALUE - 36, written * FORMAT.getFrameSize());
+                ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(0x46464952).putInt(36 + dataBytes).putInt(0x45564157); // "RIFF", size, "WAVE"
+                header.putInt(0x20746D66).putInt(16).putShort((short) 1).putShort((short) 2); // "fmt ", PCM, stereo
+                header.putInt(RATE).putInt(RATE * 4).putShort((short) 4).putShort((short) 16);
+                header.putInt(0x61746164).putInt(dataBytes); // "data"
+                header.flip();
+                file.write(header, 0);
+                file.close();
+            } catch (IOException e) {
+                System.out.println("Error saving sound file.");
+            }
+            file = null;
+        }
+    }
+
+    // Demo and latency check: start sounds at random times and report the delays
+    public static void main(String[] args) throws Exception {
+        String device = "null";
+        Path wav = null;
+        int triggers = 200;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--line":
+                case "--null":
+                    device = args[i].substring(2);
+                    break;
+                case "--wav":
+                    wav = Paths.get(args[++i]);
+                    break;
+                case "--triggers":
+                    triggers = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Output output = device.equals("line") ? lineOutput(PERIOD_FRAMES * 4) : nullOutput(wav);
+        SoundEngine engine = new SoundEngine(output);
+        engine.start();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < triggers; i++) {
+            Thread.sleep(random.nextInt(5, 60));
+            engine.play(i % 25 == 24 ? WIN : random.nextInt(WIN));
+        }
+        Thread.sleep(300); // Let the last sounds start
+        engine.close();
+        System.out.printf(Locale.ROOT, "%s output, %d sounds (%d dropped): play-to-output latency p50 %.1f ms, "
+                + "p99 %.1f ms, max %.1f ms%n", wav != null ? "wav" : device, engine.latencyCount(),
+            engine.droppedCount(), engine.latencyMicros(50) / 1000.0, engine.latencyMicros(99) / 1000.0,
+            engine.latencyMicros(100) / 1000.0);
+        for (int i = 0; i < SOUND_COUNT; i++) {
+            System.out.printf(Locale.ROOT, "  %-8s %5d ms%n", SOUND_NAMES[i],
+                engine.clips[i].length / 2 * 1000 / RATE);
+        }
+    }
+}
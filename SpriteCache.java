@@ -0,0 +1,189 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+// Cup pictures made smooth at the exact size they're drawn: for boards that have grown or shrunk
+// with the window, and for HiDPI screens, where a cup 60 units wide covers 120 or more pixels and
+// the 60x90 atlas cup would look blurry stretched over them.
+// Pictures are kept by (color, width, height, screen scale). Once they take up more than the
+// memory cap, the ones used least recently are dropped first.
+//
+// Making a picture takes too long to do for every cup while the window is being dragged bigger,
+// so it's done on a background thread: until it's ready, get() returns null and the row draws the
+// atlas cup stretched (quick, a bit soft), then the requester is told to repaint with the smooth
+// one. Pictures are made a moment after they're asked for, and sizes the row has moved on from by
+// then are skipped, so dragging the window edge doesn't make a picture for every size on the way.
+public class SpriteCache {
+
+    // Bytes of pictures kept before the least recently used are dropped
+    public static final long MEMORY_CAP = 48L << 20;
+
+    // How long after a picture is asked for it's made (if it's still wanted then)
+    private static final int SETTLE_MILLIS = 100;
+
+    // Whoever asked for a picture that wasn't ready
+    public interface Requester {
+        // Whether a picture this size (in pixels) is still wanted (called on the background thread)
+        boolean wants(int width, int height);
+
+        // The picture is in the cache now (called on the Swing thread)
+        void ready();
+    }
+
+    private static SpriteCache shared;
+
+    // One background thread for making pictures (not the asset loaders: making a cup can wait
+    // for the atlas, which is built on the loaders, so it mustn't take one of them up)
+    private static ScheduledExecutorService thread;
+
+    private final long cap;
+
+    // Pictures by key, least recently used first
+    private final LinkedHashMap<Long, BufferedImage> pictures = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    // Pictures being made, and who is waiting for each
+    private final Map<Long, List<Requester>> pending = new HashMap<>();
+
+    // Counters so we can see how well the cache works
+    private long hits;
+    private long misses;
+    private long made;
+    private long skipped;
+    private long evicted;
+
+    // The game's cache
+    public static synchronized SpriteCache shared() {
+        if (shared == null) shared = new SpriteCache(MEMORY_CAP);
+        return shared;
+    }
+
+    public SpriteCache(long cap) {
+        this.cap = cap;
+    }
+
+    // The cup picture for a color, `width` x `height` pixels, for a screen with this scale
+    // If it isn't ready yet, it's made in the background and null is returned (requester.ready()
+    // runs once it's in); with no requester it's made right here instead (not on the Swing thread)
+    public BufferedImage get(int color, int width, int height, double scale, Requester requester) {
+        long key = key(color, width, height, scale);
+        synchronized (this) {
+            BufferedImage picture = pictures.get(key);
+            if (picture != null) {
+                hits++;
+                return picture;
+            }
+            misses++;
+            if (requester != null) {
+                List<Requester> waiting = pending.get(key);
+                if (waiting == null) {
+                    waiting = new ArrayList<>(2);
+                    pending.put(key, waiting);
+                    thread().schedule(() -> make(key, color, width, height),
+                        SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (!waiting.contains(requester)) waiting.add(requester);
+                return null;
+            }
+        }
+        BufferedImage picture = CupSprites.render(color, width, height);
+        synchronized (this) {
+            made++;
+            put(key, picture);
+        }
+        return picture;
+    }
+
+    // Make a picture someone asked for (on the background thread)
+    private void make(long key, int color, int width, int height) {
+        synchronized (this) {
+            boolean wanted = false;
+            for (Requester requester : pending.get(key)) {
+                wanted |= requester.wants(width, height);
+            }
+            if (!wanted) {
+                // The window was resized again before we got to it
+                pending.remove(key);
+                skipped++;
+                return;
+            }
+        }
+        BufferedImage picture = null;
+        try {
+            picture = CupSprites.render(color, width, height);
+        } catch (RuntimeException e) {
+            System.out.println("Error making a cup picture: " + e);
+        }
+        List<Requester> waiting;
+        synchronized (this) {
+            waiting = pending.remove(key);
+            if (picture == null) return; // Rows keep the stretched cup
+            made++;
+            put(key, picture);
+        }
+        SwingUtilities.invokeLater(() -> {
+            for (Requester requester : waiting) {
+                requester.ready();
+            }
+        });
+    }
+
+    // Add a picture, dropping the least recently used ones if that goes over the cap
+    private void put(long key, BufferedImage picture) {
+        BufferedImage old = pictures.put(key, picture);
+        if (old != null) bytes -= sizeOf(old);
+        bytes += sizeOf(picture);
+        Iterator<BufferedImage> oldest = pictures.values().iterator();
+        while (bytes > cap && pictures.size() > 1) {
+            bytes -= sizeOf(oldest.next());
+            oldest.remove();
+            evicted++;
+        }
+    }
+
+    private static long sizeOf(BufferedImage picture) {
+        return 4L * picture.getWidth() * picture.getHeight();
+    }
+
+    // Everything that makes a picture different, packed into one number (16 bits each)
+    private static long key(int color, int width, int height, double scale) {
+        long hundredths = Math.round(scale * 100);
+        return ((long) (color & 0xFFFF) << 48) | ((long) (width & 0xFFFF) << 32)
+            | ((long) (height & 0xFFFF) << 16) | (hundredths & 0xFFFF);
+    }
+
+    public synchronized int size() {
+        return pictures.size();
+    }
+
+    public synchronized long byteCount() {
+        return bytes;
+    }
+
+    // Short summary of the cache counters
+    public synchronized String stats() {
+        return "pictures=" + pictures.size() + " kb=" + bytes / 1024 + " hits=" + hits + " misses=" + misses
+            + " made=" + made + " skipped=" + skipped + " evicted=" + evicted;
+    }
+
+    // The background thread, started the first time it's needed
+    private static synchronized ScheduledExecutorService thread() {
+        if (thread == null) {
+            thread = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "sprite-resampler");
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1); // Clicks and animation come first
+                return t;
+            });
+        }
+        return thread;
+    }
+}
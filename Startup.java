@@ -0,0 +1,63 @@
+import java.time.Instant;
+import java.util.Locale;
+
+// Times how long the game takes to start, and prints it once it's known:
+//   first frame: the home screen has been painted for the first time
+//   playable:    the home screen is up and every picture is read and the cup sprites are built,
+//                so Start opens the game without waiting on anything
+// Both are measured from when the Java process started (or from main, if the system
+// doesn't say when the process started).
+public class Startup {
+
+    // Wall-clock times in ms (0 = hasn't happened yet)
+    private static long mainMillis;
+    private static long firstFrameMillis;
+    private static long assetsMillis;
+    private static long spritesMillis;
+    private static int imageCount;
+    private static boolean reported = false;
+
+    // This class only has static helpers
+    private Startup() {
+    }
+
+    // Call first thing in main
+    public static synchronized void mainStarted() {
+        if (mainMillis == 0) mainMillis = System.currentTimeMillis();
+    }
+
+    public static synchronized void firstFrame() {
+        if (firstFrameMillis != 0) return;
+        firstFrameMillis = System.currentTimeMillis();
+        reportIfReady();
+    }
+
+    public static synchronized void assetsLoaded(int images) {
+        if (assetsMillis != 0) return;
+        assetsMillis = System.currentTimeMillis();
+        imageCount = images;
+        reportIfReady();
+    }
+
+    public static synchronized void spritesBuilt() {
+        if (spritesMillis != 0) return;
+        spritesMillis = System.currentTimeMillis();
+        reportIfReady();
+    }
+
+    // Print the startup times once everything has happened
+    private static void reportIfReady() {
+        if (reported || mainMillis == 0 || firstFrameMillis == 0 || assetsMillis == 0 || spritesMillis == 0) return;
+        reported = true;
+        long start = processStartMillis();
+        long playable = Math.max(firstFrameMillis, Math.max(assetsMillis, spritesMillis));
+        System.out.printf(Locale.ROOT,
+            "Startup: first frame %d ms, playable %d ms (%d images read, main started at %d ms)%n",
+            firstFrameMillis - start, playable - start, imageCount, mainMillis - start);
+    }
+
+    // When this process started, or when main started if that isn't known
+    private static long processStartMillis() {
+        return ProcessHandle.current().info().startInstant().map(Instant::toEpochMilli).orElse(mainMillis);
+    }
+}